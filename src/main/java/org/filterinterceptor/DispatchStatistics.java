@@ -0,0 +1,141 @@
+package org.filterinterceptor;
+
+import org.filterinterceptor.metrics.StripedCounter;
+import org.filterinterceptor.metrics.StripedHistogram;
+
+/**
+ * Counters of the calls dispatched by {@link FilterService} and of the
+ * configuration rebuilds
+ * <p>
+ * Calls are counted by {@link FilterService#invoke(Object, boolean,
+ * java.lang.reflect.Method, Object...)} and by the proxies keeping their
+ * targets (dynamic and bytecode proxies, call sites). A call costs one striped
+ * counter update. Bytecode proxies count and sample only their filtered calls:
+ * they call the real service directly.
+ * <p>
+ * Sampled calls (see {@link FilterService#setOverheadSamplingRate(int)}) are
+ * measured in two phases: the lookup, added by the filter service or the
+ * proxy, and the call of the invoker on the object found.
+ */
+public class DispatchStatistics {
+
+	private final StripedCounter filterCalls = new StripedCounter();
+	private final StripedCounter serviceCalls = new StripedCounter();
+	private final StripedCounter fallbacks = new StripedCounter();
+	private final StripedCounter rebuilds = new StripedCounter();
+	private final StripedCounter rebuildNanos = new StripedCounter();
+	private final StripedHistogram lookupLatencies = new StripedHistogram();
+	private final StripedHistogram callLatencies = new StripedHistogram();
+
+	/**
+	 * Get the number of calls routed to a filter implementation
+	 *
+	 * @return the number of filtered calls
+	 */
+	public long getFilterCallCount() {
+		return filterCalls.get();
+	}
+
+	/**
+	 * Get the number of calls routed to the real service, with or without
+	 * filter search
+	 *
+	 * @return the number of real service calls
+	 */
+	public long getServiceCallCount() {
+		return serviceCalls.get();
+	}
+
+	/**
+	 * Get the number of filter searches which failed with an exception: the
+	 * real service was called
+	 *
+	 * @return the number of fallbacks to the real service
+	 */
+	public long getFallbackCount() {
+		return fallbacks.get();
+	}
+
+	/**
+	 * Get the number of configurations built and published: filters loaded,
+	 * activated, rolled back, or changed of status or priority
+	 *
+	 * @return the number of configuration rebuilds
+	 */
+	public long getRebuildCount() {
+		return rebuilds.get();
+	}
+
+	/**
+	 * Get the time spent to build and publish the configurations
+	 *
+	 * @return the total duration of the rebuilds, in nanoseconds
+	 */
+	public long getRebuildNanos() {
+		return rebuildNanos.get();
+	}
+
+	/**
+	 * Get the durations of the lookup phase of the sampled calls: search of
+	 * the object to call, i.e. the overhead of the filter service
+	 *
+	 * @return the histogram, in nanoseconds
+	 */
+	public StripedHistogram getLookupLatencies() {
+		return lookupLatencies;
+	}
+
+	/**
+	 * Get the durations of the call phase of the sampled calls: invocation of
+	 * the filter implementation or of the real service, with the time of the
+	 * called method itself
+	 *
+	 * @return the histogram, in nanoseconds
+	 */
+	public StripedHistogram getCallLatencies() {
+		return callLatencies;
+	}
+
+	/**
+	 * Set all counters and histograms to zero
+	 */
+	public void reset() {
+		filterCalls.reset();
+		serviceCalls.reset();
+		fallbacks.reset();
+		rebuilds.reset();
+		rebuildNanos.reset();
+		lookupLatencies.reset();
+		callLatencies.reset();
+	}
+
+	/**
+	 * Count a call routed to a filter implementation, by a proxy calling its
+	 * target itself
+	 */
+	public void filterCall() {
+		filterCalls.increment();
+	}
+
+	/**
+	 * Count a call routed to the real service, by a proxy calling its target
+	 * itself
+	 */
+	public void serviceCall() {
+		serviceCalls.increment();
+	}
+
+	void fallback() {
+		fallbacks.increment();
+	}
+
+	void sample(long lookupNanos, long callNanos) {
+		lookupLatencies.record(lookupNanos);
+		callLatencies.record(callNanos);
+	}
+
+	void rebuild(long nanos) {
+		rebuilds.increment();
+		rebuildNanos.add(nanos);
+	}
+}
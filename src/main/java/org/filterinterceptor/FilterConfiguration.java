@@ -0,0 +1,152 @@
+package org.filterinterceptor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.filterinterceptor.cache.CachedFilterMap;
+import org.filterinterceptor.dispatch.DispatchTable;
+import org.filterinterceptor.spi.Filter;
+
+/**
+ * Snapshot of the filters configuration used by {@link FilterService}
+ * <p>
+ * A configuration is never modified (except its cache): a new one is built
+ * and published when filters change, so it can be read without any lock.
+ */
+final class FilterConfiguration {
+
+	/**
+	 * Filters in a list to manage activation
+	 */
+	private final List<Filter<?>> allFilters;
+
+	/**
+	 * Active filters in a map to access to used Filter quickly, by service
+	 * method (with parameter types)
+	 */
+	private final Map<String, Filter<?>> activeFilters;
+
+	/**
+	 * Active filters in a map by service method name only (overloaded methods
+	 * are not distinguished)
+	 */
+	private final Map<String, Filter<?>> activeFiltersByName;
+
+	/**
+	 * Active filters by method identity, used by invocation
+	 */
+	private final DispatchTable dispatchTable;
+
+	/**
+	 * Cache of filtered services, kept by the configurations built after the
+	 * change of one filter
+	 */
+	private final CachedFilterMap cache;
+
+	/**
+	 * Number of the configuration, increased on each change
+	 */
+	private final long generation;
+
+	/**
+	 * Invokers of the current invocation mode
+	 */
+	private final Invokers invokers;
+
+	/**
+	 * Create an empty configuration
+	 *
+	 * @param cache
+	 *            an empty cache
+	 * @param invokers
+	 *            the invokers to use
+	 */
+	FilterConfiguration(CachedFilterMap cache, Invokers invokers) {
+		this(Collections.<Filter<?>> emptyList(), Collections.<String, Filter<?>> emptyMap(), Collections
+				.<String, Filter<?>> emptyMap(), cache, 0, invokers);
+	}
+
+	/**
+	 * Constructor with fields, collections must be unmodifiable
+	 *
+	 * @param allFilters
+	 *            all filters sorted
+	 * @param activeFilters
+	 *            active filters by service method
+	 * @param activeFiltersByName
+	 *            active filters by service method name
+	 * @param cache
+	 *            an empty cache
+	 * @param generation
+	 *            the number of the configuration
+	 * @param invokers
+	 *            the invokers to use
+	 */
+	FilterConfiguration(List<Filter<?>> allFilters, Map<String, Filter<?>> activeFilters,
+			Map<String, Filter<?>> activeFiltersByName, CachedFilterMap cache, long generation, Invokers invokers) {
+		this(allFilters, activeFilters, activeFiltersByName, new DispatchTable(activeFilters), cache, generation,
+				invokers);
+	}
+
+	/**
+	 * Constructor with fields and a dispatch table built for the active
+	 * filters, collections must be unmodifiable
+	 *
+	 * @see DispatchTable#update(Map, java.util.Collection)
+	 */
+	FilterConfiguration(List<Filter<?>> allFilters, Map<String, Filter<?>> activeFilters,
+			Map<String, Filter<?>> activeFiltersByName, DispatchTable dispatchTable, CachedFilterMap cache,
+			long generation, Invokers invokers) {
+		this.allFilters = allFilters;
+		this.activeFilters = activeFilters;
+		this.activeFiltersByName = activeFiltersByName;
+		this.dispatchTable = dispatchTable;
+		this.cache = cache;
+		this.generation = generation;
+		this.invokers = invokers;
+	}
+
+	/**
+	 * Copy a configuration with another number or other invokers: the
+	 * dispatch table (and what it already resolved) and the cache are shared
+	 *
+	 * @param generation
+	 *            the number of the configuration
+	 * @param invokers
+	 *            the invokers to use
+	 * @return the configuration to publish
+	 */
+	FilterConfiguration withGeneration(long generation, Invokers invokers) {
+		return new FilterConfiguration(allFilters, activeFilters, activeFiltersByName, dispatchTable, cache,
+				generation, invokers);
+	}
+
+	List<Filter<?>> getAllFilters() {
+		return allFilters;
+	}
+
+	Map<String, Filter<?>> getActiveFilters() {
+		return activeFilters;
+	}
+
+	Map<String, Filter<?>> getActiveFiltersByName() {
+		return activeFiltersByName;
+	}
+
+	DispatchTable getDispatchTable() {
+		return dispatchTable;
+	}
+
+	CachedFilterMap getCache() {
+		return cache;
+	}
+
+	long getGeneration() {
+		return generation;
+	}
+
+	Invokers getInvokers() {
+		return invokers;
+	}
+}
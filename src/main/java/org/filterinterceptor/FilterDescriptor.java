@@ -0,0 +1,140 @@
+package org.filterinterceptor;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.filterinterceptor.dispatch.DispatchTable;
+import org.filterinterceptor.index.FilterIndex;
+import org.filterinterceptor.spi.Filter;
+import org.filterinterceptor.spi.FilteredMethod;
+
+/**
+ * Immutable description of a loaded filter: its service class, the class of
+ * its service implementation and the service methods it overrides (methods
+ * with {@link FilteredMethod} annotation)
+ * <p>
+ * Read once when the filter is loaded (from the {@link FilterIndex} if the
+ * filter is indexed), the access collections of
+ * {@link FilterService} are built from descriptors only.
+ */
+final class FilterDescriptor {
+
+	private final String serviceClassName;
+	private final String wrapperClassName;
+
+	/**
+	 * Filtered methods: name and parameter types (see
+	 * {@link DispatchTable#getSignature(Method)})
+	 */
+	private final List<String> signatures;
+
+	/**
+	 * Keys of the filtered methods, with parameter types
+	 */
+	private final List<String> keys;
+
+	/**
+	 * Keys of the filtered methods, without parameter types, each one once
+	 */
+	private final List<String> nameKeys;
+
+	/**
+	 * Constructor with fields
+	 *
+	 * @param serviceClassName
+	 *            the name of the service class
+	 * @param wrapperClassName
+	 *            the name of the class of the service implementation
+	 * @param signatures
+	 *            the signatures of the filtered methods
+	 */
+	FilterDescriptor(String serviceClassName, String wrapperClassName, List<String> signatures) {
+		this.serviceClassName = serviceClassName;
+		this.wrapperClassName = wrapperClassName;
+		this.signatures = Collections.unmodifiableList(new ArrayList<String>(signatures));
+
+		List<String> keys = new ArrayList<String>(signatures.size());
+		List<String> nameKeys = new ArrayList<String>(signatures.size());
+		for (String signature : signatures) {
+			keys.add(serviceClassName + "." + signature);
+			String nameKey = serviceClassName + "." + signature.substring(0, signature.indexOf('('));
+			if (!nameKeys.contains(nameKey))
+				nameKeys.add(nameKey);
+		}
+		this.keys = Collections.unmodifiableList(keys);
+		this.nameKeys = Collections.unmodifiableList(nameKeys);
+	}
+
+	/**
+	 * Read the description of a filter: its service implementation is created
+	 * once to find its class
+	 *
+	 * @param filter
+	 *            the filter
+	 * @return the descriptor of the filter
+	 */
+	static FilterDescriptor of(Filter<?> filter) {
+		Class<?> wrapperClass = filter.getFilterServiceImpl(null).getClass();
+		List<String> signatures = new ArrayList<String>();
+		for (Method method : wrapperClass.getDeclaredMethods())
+			if (method.getAnnotation(FilteredMethod.class) != null)
+				signatures.add(DispatchTable.getSignature(method));
+		return new FilterDescriptor(filter.getService().getName(), wrapperClass.getName(), signatures);
+	}
+
+	/**
+	 * Get the description of an indexed filter, no class is loaded
+	 *
+	 * @param entry
+	 *            the index entry of the filter
+	 * @return the descriptor of the filter
+	 */
+	static FilterDescriptor of(FilterIndex.Entry entry) {
+		return new FilterDescriptor(entry.getServiceClassName(), entry.getImplementationClassName(),
+				entry.getSignatures());
+	}
+
+	/**
+	 * @return the name of the service class
+	 */
+	String getServiceClassName() {
+		return serviceClassName;
+	}
+
+	/**
+	 * @return the name of the class of the service implementation
+	 */
+	String getWrapperClassName() {
+		return wrapperClassName;
+	}
+
+	/**
+	 * @return the signatures of the filtered methods, unmodifiable
+	 */
+	List<String> getSignatures() {
+		return signatures;
+	}
+
+	/**
+	 * @return the keys of the filtered methods with parameter types,
+	 *         unmodifiable
+	 */
+	List<String> getKeys() {
+		return keys;
+	}
+
+	/**
+	 * @return the keys of the filtered methods without parameter types,
+	 *         unmodifiable
+	 */
+	List<String> getNameKeys() {
+		return nameKeys;
+	}
+
+	@Override
+	public String toString() {
+		return serviceClassName + " filtered by " + wrapperClassName + ": " + signatures;
+	}
+}
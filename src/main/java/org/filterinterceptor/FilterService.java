@@ -1,28 +1,44 @@
 package org.filterinterceptor;
 
 import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
+import java.lang.invoke.SwitchPoint;
 import java.lang.reflect.Method;
-import java.net.URL;
-import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
-import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.filterinterceptor.cache.CacheStatistics;
 import org.filterinterceptor.cache.CachedFilter;
 import org.filterinterceptor.cache.CachedFilterMap;
+import org.filterinterceptor.dispatch.DispatchTable;
+import org.filterinterceptor.dispatch.InvocationMode;
+import org.filterinterceptor.dispatch.MethodInvoker;
+import org.filterinterceptor.dispatch.SignatureSwitchPoints;
+import org.filterinterceptor.dispatch.TypeHierarchy;
+import org.filterinterceptor.index.FilterIndex;
+import org.filterinterceptor.loader.FilterLoader;
+import org.filterinterceptor.loader.JarClassLoader;
+import org.filterinterceptor.loader.JarFolder;
+import org.filterinterceptor.metrics.FilterMetrics;
 import org.filterinterceptor.spi.Filter;
-import org.filterinterceptor.spi.FilteredMethod;
+import org.filterinterceptor.spi.IndexedFilter;
+import org.filterinterceptor.spi.LazyFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,31 +58,79 @@ public class FilterService extends Observable {
 
 	private static final Logger logger = LoggerFactory.getLogger(FilterService.class);
 
+	/**
+	 * Order of all filters, the one of {@link Filter#compareTo(Filter)}:
+	 * description, then priority
+	 */
+	private static final Comparator<Filter<?>> BY_DESCRIPTION = new Comparator<Filter<?>>() {
+		@Override
+		public int compare(Filter<?> filter1, Filter<?> filter2) {
+			int ret = filter1.getDescription().compareTo(filter2.getDescription());
+			return ret != 0 ? ret : Integer.compare(filter1.getPriority(), filter2.getPriority());
+		}
+	};
+
 	/**
 	 * The place of JAR to load
 	 */
 	private final String jarFolder;
 
 	/**
-	 * Set of filters
+	 * Current configuration: collections for fast access and cache
+	 * <p>
+	 * Read without lock, replaced as a whole when filters change
+	 */
+	private volatile FilterConfiguration configuration;
+
+	/**
+	 * Object use to lock configuration changes (readers are never locked)
+	 */
+	private final Lock configurationLock = new ReentrantLock();
+
+	/**
+	 * Number of the last configuration built, guarded by configurationLock
+	 */
+	private long generation;
+
+	/**
+	 * JAR files of the folder, created on first load
+	 */
+	private JarFolder jars;
+
+	/**
+	 * Loaded filters of the current configuration, guarded by
+	 * configurationLock
+	 */
+	private FilterSet filterSet = new FilterSet();
+
+	/**
+	 * Filters loaded by {@link #stageFilters()} and not activated yet, null if
+	 * none, guarded by configurationLock
 	 */
-	private final Set<Filter<?>> loadedFilters = new HashSet<Filter<?>>();
+	private FilterSet stagedFilterSet;
 
 	/**
-	 * Active filters in a map to access to used Filter quickly
+	 * Configuration prepared for the staged filters, guarded by
+	 * configurationLock
 	 */
-	private Map<String, Filter<?>> activeFilters;
+	private FilterConfiguration stagedConfiguration;
+
+	/**
+	 * Filters active before the last activation, kept for
+	 * {@link #rollbackFilters()}, null if none, guarded by configurationLock
+	 */
+	private FilterSet previousFilterSet;
+
 	/**
-	 * Filters in a list to manage activation
+	 * Indicate if indexed filters are instantiated on first use
 	 */
-	private List<Filter<?>> allFilters;
+	private volatile boolean isLazyLoading;
 
 	/**
-	 * Object use to lock access to collections for fast access
+	 * Number of threads loading JAR files and filters, 1 to load them on the
+	 * caller thread
 	 */
-	private final ReadWriteLock lockToFilterFastAccessCollections = new ReentrantReadWriteLock();
-	private final Lock readLockToFilterFastAccessCollections = lockToFilterFastAccessCollections.readLock();
-	private final Lock writeLockToFilterFastAccessCollections = lockToFilterFastAccessCollections.writeLock();
+	private volatile int loadingParallelism = 1;
 
 	/*
 	 * CACHE
@@ -74,12 +138,62 @@ public class FilterService extends Observable {
 	/**
 	 * Indicate if cache of filtered services is active
 	 */
-	private boolean isCacheActive;
+	private volatile boolean isCacheActive;
 
 	/**
-	 * Cache of filtered services
+	 * Maximum number of entries of the cache
 	 */
-	private final CachedFilterMap cacheFilteredServices = new CachedFilterMap();
+	private volatile int cacheMaxSize = CachedFilterMap.DEFAULT_MAX_SIZE;
+
+	/**
+	 * Cache counters, shared by the caches of all configurations
+	 */
+	private final CacheStatistics cacheStatistics = new CacheStatistics();
+
+	/**
+	 * Filter implementation created last by each thread, reused when the
+	 * cache is off
+	 */
+	private final RecentTargets recentTargets = new RecentTargets();
+
+	/*
+	 * STATISTICS
+	 */
+	/**
+	 * Counters of the calls dispatched and of the configuration rebuilds
+	 */
+	private final DispatchStatistics dispatchStatistics = new DispatchStatistics();
+
+	/**
+	 * 1 call of {@link #invoke(Object, boolean, Method, Object...)} in N is
+	 * measured, 0 to measure none
+	 */
+	private volatile int overheadSamplingRate;
+
+	/*
+	 * SEARCH
+	 */
+	/**
+	 * Indicate if a subclass declares getActiveFilter(Class, String): the
+	 * default getActiveFilter(Class, Method) delegates to it
+	 */
+	private final boolean isSearchByNameOverridden;
+
+	/**
+	 * Indicate if a subclass declares one of the getActiveFilter methods: the
+	 * filters are searched with them on each call instead of the dispatch
+	 * table
+	 */
+	private final boolean isActiveFilterOverridden;
+
+	/*
+	 * INVOCATION
+	 */
+	/**
+	 * Switch points of the call sites bound by proxies, invalidated when the
+	 * active filter of their methods change
+	 */
+	private final SignatureSwitchPoints switchPoints = new SignatureSwitchPoints();
 
 	/*
 	 * CONSTRUCTORS
@@ -91,7 +205,7 @@ public class FilterService extends Observable {
 	 *            the folder of JAR containing Filters to load
 	 */
 	public FilterService(String jarFolder) {
-		this.jarFolder = jarFolder;
+		this(jarFolder, false);
 	}
 
 	/**
@@ -105,6 +219,9 @@ public class FilterService extends Observable {
 	public FilterService(String jarFolder, boolean isCacheActive) {
 		this.jarFolder = jarFolder;
 		this.isCacheActive = isCacheActive;
+		this.configuration = new FilterConfiguration(newCache(), new Invokers(InvocationMode.REFLECTION));
+		this.isSearchByNameOverridden = isDeclaredBySubclass(String.class);
+		this.isActiveFilterOverridden = isSearchByNameOverridden || isDeclaredBySubclass(Method.class);
 	}
 
 	/*
@@ -131,12 +248,191 @@ public class FilterService extends Observable {
 			clearCache();
 	}
 
+	/**
+	 * Get the folder of JAR containing Filters to load
+	 * 
+	 * @return the folder path, as given at creation
+	 */
+	public String getJarFolder() {
+		return jarFolder;
+	}
+
+	/**
+	 * Indicate if indexed filters are instantiated on first use
+	 * 
+	 * @return true if filters are loaded lazily, false by default
+	 */
+	public boolean isLazyLoading() {
+		return isLazyLoading;
+	}
+
+	/**
+	 * Activate or desactivate the lazy loading of filters, used by next
+	 * filters load
+	 * <p>
+	 * When active, filters listed in a filter index (see {@link IndexedFilter})
+	 * are not loaded nor instantiated by {@link #initFilters()}: they are
+	 * represented by a {@link LazyFilter} which instantiates the filter when a
+	 * service method it filters is called. Other filters are instantiated at
+	 * load.
+	 * 
+	 * @param isLazyLoading
+	 *            a boolean to set the lazy loading status
+	 */
+	public void setLazyLoading(boolean isLazyLoading) {
+		this.isLazyLoading = isLazyLoading;
+	}
+
+	/**
+	 * Get the number of threads loading JAR files and filters
+	 * 
+	 * @return the number of threads, 1 (caller thread only) by default
+	 */
+	public int getLoadingParallelism() {
+		return loadingParallelism;
+	}
+
+	/**
+	 * Change the number of threads loading JAR files and filters, used by
+	 * next filters load
+	 * <p>
+	 * With more than one thread, JAR files are hashed, and their filters
+	 * loaded and read, in a fork-join pool of this size, created for each
+	 * load. Filters are registered in the same order as on the caller
+	 * thread: the loaded filters are the same.
+	 * 
+	 * @param loadingParallelism
+	 *            the number of threads, at least 1
+	 */
+	public void setLoadingParallelism(int loadingParallelism) {
+		if (loadingParallelism < 1)
+			throw new IllegalArgumentException("Loading parallelism must be positive: " + loadingParallelism);
+		this.loadingParallelism = loadingParallelism;
+	}
+
+	/**
+	 * Get the way methods of filters and services are called
+	 * 
+	 * @return the invocation mode, {@link InvocationMode#REFLECTION} by
+	 *         default
+	 */
+	public InvocationMode getInvocationMode() {
+		return configuration.getInvokers().getMode();
+	}
+
+	/**
+	 * Change the way methods of filters and services are called
+	 * <p>
+	 * The mode is published with the configuration: a call started before
+	 * ends with the previous mode. Call sites are bound again
+	 * 
+	 * @param invocationMode
+	 *            the invocation mode to use
+	 */
+	public void setInvocationMode(InvocationMode invocationMode) {
+		if (invocationMode == null)
+			throw new IllegalArgumentException("Invocation mode can't be null");
+		configurationLock.lock();
+		try {
+			FilterConfiguration current = configuration;
+			if (current.getInvokers().getMode() != invocationMode) {
+				configuration = current.withGeneration(current.getGeneration(), new Invokers(invocationMode));
+				switchPoints.invalidateAll();
+			}
+		} finally {
+			configurationLock.unlock();
+		}
+	}
+
+	/**
+	 * Get the maximum number of entries of the filtered service cache
+	 * 
+	 * @return the maximum number of entries
+	 */
+	public int getCacheMaxSize() {
+		return cacheMaxSize;
+	}
+
+	/**
+	 * Change the maximum number of entries of the filtered service cache
+	 * <p>
+	 * Oldest entries are evicted on next cache updates if the cache is bigger
+	 * 
+	 * @param cacheMaxSize
+	 *            the maximum number of entries, must be positive
+	 */
+	public void setCacheMaxSize(int cacheMaxSize) {
+		configuration.getCache().setMaxSize(cacheMaxSize);
+		this.cacheMaxSize = cacheMaxSize;
+	}
+
+	/**
+	 * Get the current number of entries of the filtered service cache
+	 * 
+	 * @return the number of entries
+	 */
+	public int getCacheSize() {
+		return configuration.getCache().size();
+	}
+
+	/**
+	 * Get the counters of the filtered service cache
+	 * 
+	 * @return the cache statistics
+	 */
+	public CacheStatistics getCacheStatistics() {
+		return cacheStatistics;
+	}
+
+	/**
+	 * Get the counters of the calls dispatched by
+	 * {@link #invoke(Object, boolean, Method, Object...)} and by the proxies,
+	 * and of the configuration rebuilds
+	 * 
+	 * @return the dispatch statistics
+	 */
+	public DispatchStatistics getDispatchStatistics() {
+		return dispatchStatistics;
+	}
+
+	/**
+	 * Get the sampling rate of the overhead measure
+	 * 
+	 * @return N if 1 call in N is measured, 0 if no call is measured
+	 *         (default)
+	 * @see #setOverheadSamplingRate(int)
+	 */
+	public int getOverheadSamplingRate() {
+		return overheadSamplingRate;
+	}
+
+	/**
+	 * Measure the overhead of {@link #invoke(Object, boolean, Method, Object...)}
+	 * and of the proxies on 1 call in N, chosen at random
+	 * <p>
+	 * The time to find the object to call (configuration, cache or binding,
+	 * filter search, invoker) and the time of the call of the invoker (with
+	 * the called method) are recorded separately in
+	 * {@link #getDispatchStatistics()}. Without sampling, a call only reads
+	 * the rate.
+	 * 
+	 * @param samplingRate
+	 *            N, 1 to measure all calls, 0 to measure none
+	 * @throws IllegalArgumentException
+	 *             if the rate is negative
+	 */
+	public void setOverheadSamplingRate(int samplingRate) {
+		if (samplingRate < 0)
+			throw new IllegalArgumentException("Overhead sampling rate can't be negative: " + samplingRate);
+		this.overheadSamplingRate = samplingRate;
+	}
+
 	/**
 	 * Clear the filtered service cache
 	 */
 
 	public void clearCache() {
-		cacheFilteredServices.clear();
+		configuration.getCache().clear();
 	}
 
 	/**
@@ -145,27 +441,70 @@ public class FilterService extends Observable {
 	 * @return a set of cache keys
 	 */
 	public Set<String> getCacheKeys() {
-		return cacheFilteredServices.keySet();
+		return configuration.getCache().keySet();
 	}
 
 	/**
-	 * Get the active filter for one param of one method on one service
+	 * Get the active filter for one method on one service
+	 * <p>
+	 * Overloaded methods are not distinguished: the filter with the highest
+	 * priority on all methods with this name is returned. The filters of
+	 * invoked methods are searched with this method if a subclass overrides
+	 * it.
 	 * 
 	 * @param serviceClass
 	 *            the service class
 	 * @param methodName
 	 *            the method name
 	 * @return the active filter with the highest priority
+	 * @see #getActiveFilter(Class, Method)
 	 */
 	public Filter<?> getActiveFilter(Class<?> serviceClass, String methodName) {
-		readLockToFilterFastAccessCollections.lock();
-		try {
-			String key = getKey(serviceClass.getName(), methodName);
-			logger.trace("Access to key {}", key);
-			return activeFilters.get(key);
-		} finally {
-			readLockToFilterFastAccessCollections.unlock();
-		}
+		String key = getKey(serviceClass.getName(), methodName);
+		logger.trace("Access to key {}", key);
+		return configuration.getActiveFiltersByName().get(key);
+	}
+
+	/**
+	 * Get the active filter for one method on one service
+	 * <p>
+	 * The method is found by its name and its parameter types, the result is
+	 * kept by method identity so next calls do not compute any key. If a
+	 * subclass overrides {@link #getActiveFilter(Class, String)}, the filter is
+	 * searched by method name with it.
+	 * 
+	 * @param serviceClass
+	 *            the service class
+	 * @param method
+	 *            the method (can be declared by an interface of the service)
+	 * @return the active filter with the highest priority
+	 */
+	public Filter<?> getActiveFilter(Class<?> serviceClass, Method method) {
+		if (isSearchByNameOverridden)
+			return getActiveFilter(serviceClass, method.getName());
+		return configuration.getDispatchTable().get(serviceClass, method);
+	}
+
+	/**
+	 * Search the active filter for one method on one service, on its class
+	 * then on its superclasses and interfaces if asked (see
+	 * {@link TypeHierarchy} for the order)
+	 *
+	 * @param serviceClass
+	 *            the service class
+	 * @param extendToInterfaces
+	 *            a boolean indicate if the search of filter is done on filter
+	 *            superclasses and interfaces too or not
+	 * @param method
+	 *            the method
+	 * @return the active filter with the highest priority, null if none
+	 * @see #getActiveFilter(Class, Method)
+	 */
+	public Filter<?> findActiveFilter(Class<?> serviceClass, boolean extendToInterfaces, Method method) {
+		FilterConfiguration currentConfiguration = configuration;
+		if (isNeverFiltered(currentConfiguration, serviceClass, extendToInterfaces, method))
+			return null;
+		return searchActiveFilter(currentConfiguration, serviceClass, extendToInterfaces, method);
 	}
 
 	/**
@@ -174,12 +513,7 @@ public class FilterService extends Observable {
 	 * @return the Map of filters
 	 */
 	public Map<String, Filter<?>> getAllActiveFiltersUsed() {
-		readLockToFilterFastAccessCollections.lock();
-		try {
-			return activeFilters;
-		} finally {
-			readLockToFilterFastAccessCollections.unlock();
-		}
+		return configuration.getActiveFilters();
 	}
 
 	/**
@@ -188,16 +522,15 @@ public class FilterService extends Observable {
 	 * @return the list of filters
 	 */
 	public List<Filter<?>> getAllFilters() {
-		readLockToFilterFastAccessCollections.lock();
-		try {
-			return allFilters;
-		} finally {
-			readLockToFilterFastAccessCollections.unlock();
-		}
+		return configuration.getAllFilters();
 	}
 
 	/**
 	 * Load dynamically Filters in JAR files
+	 * <p>
+	 * Only new or changed JAR files are loaded. Filters of changed or removed
+	 * JAR files are unloaded and their class loaders closed. Staged filters
+	 * and filters kept for rollback are discarded.
 	 * 
 	 * @throws IOException
 	 *             on exception during research
@@ -205,27 +538,178 @@ public class FilterService extends Observable {
 	public void initFilters() throws IOException {
 		logger.debug("Search Filters...");
 
+		configurationLock.lock();
 		try {
-			// Search not loaded JAR files and build class loader
-			ClassLoader classLoader = loadExternalJar();
+			FilterSet newFilterSet = loadFilterSet();
 
-			// Discover and register the available commands
-			buildLoadedFilter(classLoader);
+			FilterSet oldFilterSet = filterSet;
+			FilterSet oldStagedFilterSet = stagedFilterSet;
+			FilterSet oldPreviousFilterSet = previousFilterSet;
+			stagedFilterSet = null;
+			stagedConfiguration = null;
+			previousFilterSet = null;
 
-		} catch (RuntimeException e) {
-			logger.error("Can't init filter: " + e.getMessage(), e);
+			// Build fast access collections (with a new cache)
+			publishFilterSet(newFilterSet, null);
+			if (newFilterSet.isModified())
+				setChanged();
+
+			// No more used by the new configuration
+			releaseFilterSet(oldFilterSet);
+			releaseFilterSet(oldStagedFilterSet);
+			releaseFilterSet(oldPreviousFilterSet);
+		} finally {
+			configurationLock.unlock();
 		}
 
-		// Clear cache
-		clearCache();
+		// Notify observer (like MBeanRegister)
+		notifyObservers();
 
-		// Build fast access collections
-		buildFilterFastAccessCollections();
+		logger.debug("Search Filters - End");
+	}
+
+	/**
+	 * Load and warm up the filters of new or changed JAR files, without
+	 * changing the current configuration
+	 * <p>
+	 * Active filters are resolved before activation, lazy filters are still
+	 * instantiated at the first call of a method they filter. Staged filters
+	 * replace the ones of a previous stage.
+	 * 
+	 * @return the staged filters, sorted
+	 * @throws IOException
+	 *             on exception during research
+	 * @see #activateStagedFilters()
+	 */
+	public List<Filter<?>> stageFilters() throws IOException {
+		logger.debug("Stage Filters...");
+		configurationLock.lock();
+		try {
+			FilterSet newFilterSet = loadFilterSet();
+			FilterConfiguration newConfiguration = buildConfiguration(newFilterSet);
+			warmUpDispatch(newFilterSet, newConfiguration);
+
+			FilterSet oldStagedFilterSet = stagedFilterSet;
+			stagedFilterSet = newFilterSet;
+			stagedConfiguration = newConfiguration;
+			releaseFilterSet(oldStagedFilterSet);
+
+			logger.info("{} filters staged", newConfiguration.getAllFilters().size());
+			return newConfiguration.getAllFilters();
+		} finally {
+			configurationLock.unlock();
+		}
+	}
+
+	/**
+	 * Get the filters staged by {@link #stageFilters()}
+	 * 
+	 * @return the staged filters sorted in an unmodifiable list, null if no
+	 *         filter is staged
+	 */
+	public List<Filter<?>> getStagedFilters() {
+		configurationLock.lock();
+		try {
+			return stagedConfiguration != null ? stagedConfiguration.getAllFilters() : null;
+		} finally {
+			configurationLock.unlock();
+		}
+	}
+
+	/**
+	 * Replace the current filters by the staged ones, at once
+	 * <p>
+	 * The current filters are kept for {@link #rollbackFilters()}.
+	 * 
+	 * @return true if staged filters have been activated, false if no filter
+	 *         is staged
+	 */
+	public boolean activateStagedFilters() {
+		configurationLock.lock();
+		try {
+			if (stagedFilterSet == null) {
+				logger.warn("No staged filters to activate");
+				return false;
+			}
+			FilterSet oldPreviousFilterSet = previousFilterSet;
+			previousFilterSet = filterSet;
+			publishFilterSet(stagedFilterSet, stagedConfiguration);
+			stagedFilterSet = null;
+			stagedConfiguration = null;
+			setChanged();
+
+			releaseFilterSet(oldPreviousFilterSet);
+			logger.info("Staged filters activated, generation {}", configuration.getGeneration());
+		} finally {
+			configurationLock.unlock();
+		}
 
 		// Notify observer (like MBeanRegister)
 		notifyObservers();
+		return true;
+	}
 
-		logger.debug("Search Filters - End");
+	/**
+	 * Discard the filters staged by {@link #stageFilters()}: the class
+	 * loaders of their new JAR files are closed
+	 */
+	public void discardStagedFilters() {
+		configurationLock.lock();
+		try {
+			FilterSet oldStagedFilterSet = stagedFilterSet;
+			stagedFilterSet = null;
+			stagedConfiguration = null;
+			releaseFilterSet(oldStagedFilterSet);
+		} finally {
+			configurationLock.unlock();
+		}
+	}
+
+	/**
+	 * Indicate if the filters active before the last activation are kept
+	 * 
+	 * @return true if {@link #rollbackFilters()} can be called
+	 */
+	public boolean canRollbackFilters() {
+		configurationLock.lock();
+		try {
+			return previousFilterSet != null;
+		} finally {
+			configurationLock.unlock();
+		}
+	}
+
+	/**
+	 * Restore the filters active before the last activation of staged
+	 * filters, at once; staged filters are discarded
+	 * 
+	 * @return true if filters have been restored, false if no filters are kept
+	 */
+	public boolean rollbackFilters() {
+		configurationLock.lock();
+		try {
+			if (previousFilterSet == null) {
+				logger.warn("No previous filters to restore");
+				return false;
+			}
+			FilterSet oldFilterSet = filterSet;
+			FilterSet oldStagedFilterSet = stagedFilterSet;
+			stagedFilterSet = null;
+			stagedConfiguration = null;
+			publishFilterSet(previousFilterSet, null);
+			previousFilterSet = null;
+			setChanged();
+
+			releaseFilterSet(oldFilterSet);
+			releaseFilterSet(oldStagedFilterSet);
+			logger.info("Previous filters restored, generation {}", configuration.getGeneration());
+		} finally {
+			configurationLock.unlock();
+		}
+
+		// Notify observer (like MBeanRegister)
+		notifyObservers();
+		return true;
 	}
 
 	/**
@@ -237,14 +721,16 @@ public class FilterService extends Observable {
 	 *            the active status to set
 	 */
 	public void setFilterActiveStatus(Filter<?> filter, boolean active) {
-		// Set active state on filter
-		filter.setActive(active);
-
-		// Clear cache
-		clearCache();
+		configurationLock.lock();
+		try {
+			// Set active state on filter
+			filter.setActive(active);
 
-		// Build fast access collections
-		buildFilterFastAccessCollections();
+			// Update fast access collections of the filter methods
+			updateFilterFastAccessCollections(filter);
+		} finally {
+			configurationLock.unlock();
+		}
 	}
 
 	/**
@@ -256,14 +742,16 @@ public class FilterService extends Observable {
 	 *            the priority to set
 	 */
 	public void setFilterPriority(Filter<?> filter, int priority) {
-		// Set priority on filter
-		filter.setPriority(priority);
-
-		// Clear cache
-		clearCache();
+		configurationLock.lock();
+		try {
+			// Set priority on filter
+			filter.setPriority(priority);
 
-		// Build fast access collections
-		buildFilterFastAccessCollections();
+			// Update fast access collections of the filter methods
+			updateFilterFastAccessCollections(filter);
+		} finally {
+			configurationLock.unlock();
+		}
 	}
 
 	/**
@@ -283,163 +771,693 @@ public class FilterService extends Observable {
 	 * @throws Throwable
 	 *             if invoked method throw one
 	 */
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public Object invoke(Object service, boolean extendToInterfaces, Method method, Object... args) throws Throwable {
 		if (service == null)
 			throw new IllegalArgumentException("Service can't be null");
 
-		Object proxy = null;
-		String filterDescription = null;
+		boolean isSampled = isCallSampled();
+		long start = isSampled ? System.nanoTime() : 0;
+
+		// Configuration read once: the search and the call use the same one
+		FilterConfiguration currentConfiguration = configuration;
+		Object target = service;
+		FilterMetrics metrics = null;
+		// Method without filter: no search, no log
+		if (isNeverFiltered(currentConfiguration, service.getClass(), extendToInterfaces, method)) {
+			dispatchStatistics.serviceCall();
+		} else {
+			CachedFilter found = findTarget(currentConfiguration, service, extendToInterfaces, method);
+			if (found.getFilteredService() == null) {
+				dispatchStatistics.serviceCall();
+				logger.debug("Invoke {} on {}", method.getName(), "real service");
+			} else {
+				dispatchStatistics.filterCall();
+				logger.debug("Invoke {} on {}", method.getName(), "filter");
+				target = found.getFilteredService();
+				metrics = found.getMetrics();
+			}
+		}
+
+		// Call the final method
+		MethodInvoker invoker = currentConfiguration.getInvokers().get(method);
+		if (!isSampled)
+			return invokeFilter(invoker, metrics, target, method, args);
+		return invokeSampled(start, invoker, metrics, target, method, args);
+	}
+
+	/**
+	 * Call a method on the real service or on a filter implementation, with
+	 * the current invocation mode
+	 * <p>
+	 * Used by proxies which keep their targets
+	 * 
+	 * @param target
+	 *            the real service or the filter implementation
+	 * @param method
+	 *            the method to call
+	 * @param args
+	 *            parameters to give to the method called
+	 * @return the returned object by the target
+	 * @throws Throwable
+	 *             if invoked method throw one
+	 * @see #getTarget(Object, boolean, Method)
+	 */
+	public Object invokeTarget(Object target, Method method, Object... args) throws Throwable {
+		return configuration.getInvokers().get(method).invoke(target, args);
+	}
+
+	/**
+	 * Call a method on a filter implementation, with the current invocation
+	 * mode, and record the call in the metrics of the filter
+	 * <p>
+	 * Used by proxies which keep their targets
+	 * 
+	 * @param metrics
+	 *            the metrics of the filter, null to call without measure
+	 * @param target
+	 *            the filter implementation
+	 * @param method
+	 *            the method to call
+	 * @param args
+	 *            parameters to give to the method called
+	 * @return the returned object by the filter implementation
+	 * @throws Throwable
+	 *             if invoked method throw one
+	 * @see Filter#getMetrics()
+	 */
+	public Object invokeFilter(FilterMetrics metrics, Object target, Method method, Object... args)
+			throws Throwable {
+		return invokeFilter(configuration.getInvokers().get(method), metrics, target, method, args);
+	}
+
+	/**
+	 * Indicate if a call is sampled to measure the overhead, chosen at random
+	 * <p>
+	 * Used by proxies which keep their targets, a sampled call is done with
+	 * {@link #invokeSampled(long, FilterMetrics, Object, Method, Object...)}
+	 * 
+	 * @return true for 1 call in N
+	 * @see #setOverheadSamplingRate(int)
+	 */
+	public boolean isCallSampled() {
+		int samplingRate = overheadSamplingRate;
+		return samplingRate > 0 && ThreadLocalRandom.current().nextInt(samplingRate) == 0;
+	}
+
+	/**
+	 * Call a method on the real service or on a filter implementation, and
+	 * record the overhead of the call in the dispatch statistics
+	 * <p>
+	 * Used by proxies which keep their targets
+	 * 
+	 * @param start
+	 *            the time of the beginning of the call, before the lookup of
+	 *            the target, given by {@link System#nanoTime()}
+	 * @param metrics
+	 *            the metrics of the filter, null to call the real service
+	 * @param target
+	 *            the real service or the filter implementation
+	 * @param method
+	 *            the method to call
+	 * @param args
+	 *            parameters to give to the method called
+	 * @return the returned object by the target
+	 * @throws Throwable
+	 *             if invoked method throw one
+	 * @see #isCallSampled()
+	 */
+	public Object invokeSampled(long start, FilterMetrics metrics, Object target, Method method, Object... args)
+			throws Throwable {
+		return invokeSampled(start, configuration.getInvokers().get(method), metrics, target, method, args);
+	}
+
+	/**
+	 * Get the number of the current filters configuration
+	 * <p>
+	 * The number is increased each time filters are loaded, activated or
+	 * desactivated, or change of priority: targets found before are no more
+	 * valid
+	 * 
+	 * @return the generation of the configuration
+	 */
+	public long getGeneration() {
+		return configuration.getGeneration();
+	}
+
+	/**
+	 * Get the switch point guarding the call sites bound to a method
+	 * <p>
+	 * The switch point is invalidated when the active filter of a method with
+	 * the same signature changes, on any service. It must be get before the
+	 * target of the method is searched.
+	 * 
+	 * @param method
+	 *            the method bound
+	 * @return a switch point, valid when returned
+	 * @see InvocationMode#CALL_SITE
+	 */
+	public SwitchPoint getSwitchPoint(Method method) {
+		return switchPoints.get(method);
+	}
+
+	/**
+	 * THis method search the filter implementation of a service method, or
+	 * the real service if no filter is found
+	 * <p>
+	 * Used by proxies which call the method themselves
+	 * 
+	 * @param service
+	 *            the real service
+	 * @param extendToInterfaces
+	 *            a boolean indicate if the search of filter is done on filter
+	 *            interfaces too or not
+	 * @param method
+	 *            the method to call
+	 * @return the filter implementation of the service to call, or the real
+	 *         service
+	 */
+	public Object getTarget(Object service, boolean extendToInterfaces, Method method) {
+		if (service == null)
+			throw new IllegalArgumentException("Service can't be null");
+		FilterConfiguration currentConfiguration = configuration;
+		if (isNeverFiltered(currentConfiguration, service.getClass(), extendToInterfaces, method))
+			return service;
+		Object filteredService = findTarget(currentConfiguration, service, extendToInterfaces, method)
+				.getFilteredService();
+		return filteredService != null ? filteredService : service;
+	}
+
+	/*
+	 * PRIVATE
+	 */
+
+	/**
+	 * Search the filter implementation of a service method which may be
+	 * filtered (see {@link #isNeverFiltered})
+	 * 
+	 * @param currentConfiguration
+	 *            the configuration read before the search: see putInCache
+	 * @param service
+	 *            the real service, not null
+	 * @param extendToInterfaces
+	 *            a boolean indicate if the search of filter is done on filter
+	 *            interfaces too or not
+	 * @param method
+	 *            the method to call
+	 * @return the filter implementation with the filter metrics, or
+	 *         {@link CachedFilter#REAL_SERVICE}
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private CachedFilter findTarget(FilterConfiguration currentConfiguration, Object service,
+			boolean extendToInterfaces, Method method) {
+		CachedFilter target = null;
+		CachedFilterMap cacheFilteredServices = currentConfiguration.getCache();
 
 		// Get proxy
 		try {
-			String methodName = method.getName();
-			String cacheKey = null;
 			// Search in cache
 			if (isCacheActive) {
-				cacheKey = service.getClass().getName() + System.identityHashCode(service) + "." + methodName;
-				logger.debug("Search filter on {} in cache", cacheKey);
-				CachedFilter cache = cacheFilteredServices.get(cacheKey);
-				if (cache != null) {
-					logger.trace("Filter found in cache");
-					proxy = cache.getFilteredService();
-					filterDescription = "from cache: " + cache.getFilterDescription();
+				logger.debug("Search filter on {} in cache", method);
+				target = cacheFilteredServices.get(service, method);
+				if (target != null) {
+					logger.debug("Filter found in cache: {}", target.getFilterDescription());
 				} else {
 					logger.trace("Filter NOT found in cache");
 				}
 			}
 
 			// Search a existing one
-			if (proxy == null) {
+			if (target == null) {
 				Class<?> serviceClass = service.getClass();
-				logger.debug("Search filter on {}.{}", serviceClass.getSimpleName(), methodName);
+				if (logger.isDebugEnabled())
+					logger.debug("Search filter on {}.{}", serviceClass.getSimpleName(), method.getName());
 
 				// Get the filters
-				Filter filter = getActiveFilter(serviceClass, methodName);
-				// if no filter on service class and extended search to
-				// interface is activated
-				if (filter == null && extendToInterfaces) {
-					for (Class<?> i : serviceClass.getInterfaces()) {
-						filter = getActiveFilter(i, methodName);
-						if (filter != null)
-							break;
-					}
-				}
+				Filter filter = searchActiveFilter(currentConfiguration, serviceClass, extendToInterfaces, method);
 
 				if (filter != null) {
-					// Get the new method proxy
-					proxy = filter.getFilterServiceImpl(service);
-					filterDescription = "filter: " + filter.getDescription();
+					logger.debug("Filter found: {}", filter.getDescription());
 
 					// Put proxy in cache if necessary
 					if (isCacheActive) {
+						target = new CachedFilter(filter, filter.getFilterServiceImpl(service));
 						logger.debug("Add filter in cache");
-						cacheFilteredServices.put(cacheKey, new CachedFilter(filter.getDescription(), proxy));
+						putInCache(currentConfiguration, service, method, target);
+					} else {
+						// Without cache, the method proxies of the last calls
+						// of the thread are reused
+						target = recentTargets.get(currentConfiguration.getGeneration(), filter, service);
+						if (target == null) {
+							target = new CachedFilter(filter.getDescription(), filter.getFilterServiceImpl(service),
+									filter.getMetrics());
+							recentTargets.put(currentConfiguration.getGeneration(), filter, service, target);
+						}
 					}
 				} else {
 					logger.trace("There is no filter on this service");
-					proxy = service;
-					filterDescription = "real service method";
+					target = CachedFilter.REAL_SERVICE;
 
 					// Put service in cache if necessary
 					if (isCacheActive) {
 						logger.debug("Add service in cache");
-						cacheFilteredServices.put(cacheKey, new CachedFilter(filterDescription, service));
+						putInCache(currentConfiguration, service, method, CachedFilter.REAL_SERVICE);
 					}
 				}
 			}
 		} catch (RuntimeException e) {
-			logger.error("Exception while try to execute filter: " + e.getMessage(), e);
-			proxy = service;
-			filterDescription = "real service method (SEE ERROR IN LOG)";
+			logger.error("Exception while try to execute filter, real service method is used: " + e.getMessage(), e);
+			dispatchStatistics.fallback();
+			target = CachedFilter.REAL_SERVICE;
 		}
+		return target;
+	}
 
-		// Call the final method
+	/**
+	 * Call a method with an invoker, and record the lookup and the call of the
+	 * invoker in the dispatch statistics and in the metrics of the filter if
+	 * any
+	 */
+	private Object invokeSampled(long start, MethodInvoker invoker, FilterMetrics metrics, Object target,
+			Method method, Object[] args) throws Throwable {
+		boolean failed = true;
+		long called = System.nanoTime();
 		try {
-			// Call the method proxy
-			logger.info("Invoke {}", filterDescription);
-			return method.invoke(proxy, args);
-		} catch (Throwable t) {
-			if (t.getCause() != null)
-				// Method invoke add a Exception level in the stack
-				throw t.getCause();
-			else
-				throw t;
+			Object result = invoker.invoke(target, args);
+			failed = false;
+			return result;
+		} finally {
+			long end = System.nanoTime();
+			dispatchStatistics.sample(called - start, end - called);
+			if (metrics != null)
+				metrics.record(method, end - called, failed);
 		}
 	}
 
-	/*
-	 * PRIVATE
+	/**
+	 * Call a method with an invoker, and record the call in the metrics of
+	 * the filter if any
+	 */
+	private static Object invokeFilter(MethodInvoker invoker, FilterMetrics metrics, Object target, Method method,
+			Object[] args) throws Throwable {
+		if (metrics == null)
+			return invoker.invoke(target, args);
+		boolean failed = true;
+		long start = System.nanoTime();
+		try {
+			Object result = invoker.invoke(target, args);
+			failed = false;
+			return result;
+		} finally {
+			metrics.record(method, System.nanoTime() - start, failed);
+		}
+	}
+
+	/**
+	 * Indicate if no filter can be found for a method, so the real service can
+	 * be called without search
+	 * 
+	 * @param currentConfiguration
+	 *            the configuration to use
+	 * @param serviceClass
+	 *            the service class
+	 * @param extendToInterfaces
+	 *            a boolean indicate if the search of filter is done on filter
+	 *            interfaces too or not
+	 * @param method
+	 *            the method invoked
+	 * @return true if there is no filter for this method
+	 */
+	private boolean isNeverFiltered(FilterConfiguration currentConfiguration, Class<?> serviceClass,
+			boolean extendToInterfaces, Method method) {
+		return !isActiveFilterOverridden
+				&& !currentConfiguration.getDispatchTable().mayBeFiltered(serviceClass, extendToInterfaces, method);
+	}
+
+	/**
+	 * Search the active filter of a method which may be filtered (see
+	 * {@link #isNeverFiltered})
+	 * 
+	 * @param currentConfiguration
+	 *            the configuration to use
+	 * @param serviceClass
+	 *            the service class
+	 * @param extendToInterfaces
+	 *            a boolean indicate if the search of filter is done on filter
+	 *            interfaces too or not
+	 * @param method
+	 *            the method invoked
+	 * @return the active filter with the highest priority, null if none
+	 */
+	private Filter<?> searchActiveFilter(FilterConfiguration currentConfiguration, Class<?> serviceClass,
+			boolean extendToInterfaces, Method method) {
+		if (!isActiveFilterOverridden)
+			return currentConfiguration.getDispatchTable().find(serviceClass, extendToInterfaces, method);
+
+		// search done by the overridden method, type by type
+		if (!extendToInterfaces)
+			return getActiveFilter(serviceClass, method);
+		for (Class<?> type : TypeHierarchy.of(serviceClass)) {
+			Filter<?> filter = getActiveFilter(type, method);
+			if (filter != null)
+				return filter;
+		}
+		return null;
+	}
+
+	/**
+	 * Indicate if a getActiveFilter method is declared by a subclass, read
+	 * once at construction
+	 * <p>
+	 * Generated subclasses (CGLIB, Spring or mock proxies, named with "$$")
+	 * override all methods without changing them, they are ignored.
+	 * 
+	 * @param parameterType
+	 *            the type of the second parameter of the method
+	 * @return true if a subclass declares the method
 	 */
+	private boolean isDeclaredBySubclass(Class<?> parameterType) {
+		for (Class<?> type = getClass(); type != FilterService.class; type = type.getSuperclass()) {
+			if (type.getName().contains("$$"))
+				continue;
+			try {
+				type.getDeclaredMethod("getActiveFilter", Class.class, parameterType);
+				return true;
+			} catch (NoSuchMethodException e) {
+				// not overridden by this class
+			}
+		}
+		return false;
+	}
 
 	/**
-	 * Set all JAR files in a Class Loader
+	 * Create an empty cache for a new configuration
+	 *
+	 * @return a cache with the current maximum size and shared counters
+	 */
+	private CachedFilterMap newCache() {
+		return new CachedFilterMap(cacheMaxSize, cacheStatistics);
+	}
+
+	/**
+	 * Load the filters of new or changed JAR files in a new set, based on the
+	 * current one, must be called with the configuration lock
+	 * <p>
+	 * The JAR folder is not changed: its state is kept by the new set.
 	 * 
-	 * @return a classLoader containing all JAR files URL
+	 * @return the new set, with its candidates indexed
 	 * @throws IOException
-	 *             if JAR folder not found
-	 */
-	private ClassLoader loadExternalJar() throws IOException {
-
-		File baseDirectory = new File(jarFolder);
-		logger.debug("Try to find JAR in folder: {}", baseDirectory.getCanonicalPath());
-		// Check if directory exists
-		if (!baseDirectory.exists() || !baseDirectory.isDirectory())
-			throw new IOException("Extern JAR folder (" + baseDirectory.getCanonicalPath() + ") not found");
-		// Get file with .jar extension
-		File[] jarFiles = baseDirectory.listFiles(new FilenameFilter() {
-			@Override
-			public boolean accept(File dir, String name) {
-				return name.endsWith(".jar");
+	 *             on exception during research
+	 */
+	private FilterSet loadFilterSet() throws IOException {
+		FilterSet newFilterSet = new FilterSet(filterSet);
+		int parallelism = loadingParallelism;
+		ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		try {
+			// Search new or changed JAR files, each one with its class loader
+			JarFolder jarFolder = getJars();
+			JarFolder.Snapshot current = jarFolder.getSnapshot();
+			JarFolder.Changes changes;
+			try {
+				changes = jarFolder.scan(pool);
+				newFilterSet.setJars(jarFolder.getSnapshot());
+			} finally {
+				jarFolder.restore(current);
+			}
+
+			// Remove filters of changed or removed JAR files, the same filter
+			// of another JAR replaces them
+			for (JarClassLoader classLoader : changes.getUnloaded())
+				for (Filter<?> filter : newFilterSet.remove(classLoader)) {
+					logger.info("Unload filter <{}> of {}", filter.getDescription(), classLoader);
+					ClassLoader duplicateClassLoader = newFilterSet.addDuplicateOf(filter);
+					if (duplicateClassLoader != null)
+						logger.info("Filter <{}> of {} loaded instead", filter.getDescription(),
+								duplicateClassLoader);
+				}
+
+			// Discover the available commands: filters of the classpath once,
+			// then filters of each new JAR
+			List<ClassLoader> classLoaders = new ArrayList<ClassLoader>();
+			if (!newFilterSet.isClasspathLoaded()) {
+				classLoaders.add(getClass().getClassLoader());
+				newFilterSet.setClasspathLoaded(true);
 			}
-		});
-
-		// Add jarFiles to classLoader
-		ClassLoader classLoader;
-		if (jarFiles != null) {
-			List<URL> urlList = new ArrayList<URL>();
-			for (File file : jarFiles) {
-				logger.debug("JAR found: {}", file.getName());
-				URL url = file.toURI().toURL();
-				urlList.add(url);
+			classLoaders.addAll(changes.getLoaded());
+			List<Map<Filter<?>, FilterDescriptor>> classLoadersFilters = readFilters(classLoaders, pool);
+
+			// Register them in class loader order, whatever the reading order
+			try {
+				for (int i = 0; i < classLoaders.size(); i++)
+					addFilters(newFilterSet, classLoaders.get(i), classLoadersFilters.get(i));
+			} catch (RuntimeException e) {
+				logger.error("Can't init filter: " + e.getMessage(), e);
 			}
-			classLoader = new URLClassLoader(urlList.toArray(new URL[0]), this.getClass().getClassLoader());
-		} else {
-			classLoader = this.getClass().getClassLoader();
+		} finally {
+			if (pool != null)
+				pool.shutdown();
 		}
-		return classLoader;
+		newFilterSet.indexCandidates();
+		return newFilterSet;
 	}
 
 	/**
-	 * Load all classes in classLoader with the Service Provider API
+	 * Read the filters of class loaders, on the caller thread or in a pool
+	 * 
+	 * @param classLoaders
+	 *            the class loaders
+	 * @param pool
+	 *            the pool reading the class loaders, null to read them on
+	 *            the caller thread
+	 * @return the filters of each class loader, in the class loaders order
+	 */
+	private List<Map<Filter<?>, FilterDescriptor>> readFilters(List<ClassLoader> classLoaders, ForkJoinPool pool) {
+		final boolean isLazy = isLazyLoading;
+		List<Map<Filter<?>, FilterDescriptor>> classLoadersFilters = new ArrayList<Map<Filter<?>, FilterDescriptor>>();
+		if (pool == null) {
+			for (ClassLoader classLoader : classLoaders) {
+				try {
+					classLoadersFilters.add(readFilters(classLoader, isLazy));
+				} catch (RuntimeException e) {
+					logger.error("Can't init filters of " + classLoader + ": " + e.getMessage(), e);
+					classLoadersFilters.add(Collections.<Filter<?>, FilterDescriptor> emptyMap());
+				}
+			}
+			return classLoadersFilters;
+		}
+
+		List<Callable<Map<Filter<?>, FilterDescriptor>>> tasks = new ArrayList<Callable<Map<Filter<?>, FilterDescriptor>>>();
+		for (final ClassLoader classLoader : classLoaders)
+			tasks.add(new Callable<Map<Filter<?>, FilterDescriptor>>() {
+				@Override
+				public Map<Filter<?>, FilterDescriptor> call() {
+					return readFilters(classLoader, isLazy);
+				}
+			});
+		List<Future<Map<Filter<?>, FilterDescriptor>>> futures = pool.invokeAll(tasks);
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				classLoadersFilters.add(futures.get(i).get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Filters loading interrupted", e);
+			} catch (ExecutionException e) {
+				logger.error("Can't init filters of " + classLoaders.get(i) + ": " + e.getCause().getMessage(),
+						e.getCause());
+				classLoadersFilters.add(Collections.<Filter<?>, FilterDescriptor> emptyMap());
+			}
+		}
+		return classLoadersFilters;
+	}
+
+	/**
+	 * Load all classes in classLoader with the Service Provider API and read
+	 * their descriptors, no shared state is used
 	 * 
 	 * @param classLoader
-	 *            the class loader use by the Service Provider API
+	 *            the class loader use by the Service Provider API, only the
+	 *            filters of its JAR for a {@link JarClassLoader}
+	 * @param isLazy
+	 *            true to load indexed filters lazily
+	 * @return the filters read, in declaration order
 	 */
-	private void buildLoadedFilter(ClassLoader classLoader) {
+	private static Map<Filter<?>, FilterDescriptor> readFilters(ClassLoader classLoader, boolean isLazy) {
 
-		logger.debug("Load filters in classpath...");
-		@SuppressWarnings("rawtypes")
-		ServiceLoader<Filter> filterLoader = ServiceLoader.load(Filter.class, classLoader);
+		logger.debug("Load filters of {}...", classLoader);
+		FilterLoader filterLoader = new FilterLoader(classLoader);
+		FilterIndex index = filterLoader.getIndex();
+
+		Map<Filter<?>, FilterDescriptor> filters = new LinkedHashMap<Filter<?>, FilterDescriptor>();
+		for (Filter<?> newFilter : filterLoader.load(isLazy)) {
+			if (filters.containsKey(newFilter))
+				continue;
+			// Read filtered methods once
+			try {
+				filters.put(newFilter, getFilterDescriptor(newFilter, index));
+			} catch (RuntimeException e) {
+				logger.error("Can't read filter <" + newFilter.getDescription() + ">, filter ignored: "
+						+ e.getMessage(), e);
+			}
+		}
+		return filters;
+	}
 
+	/**
+	 * Register the filters read from a class loader
+	 * 
+	 * @param newFilterSet
+	 *            the set to complete
+	 * @param classLoader
+	 *            the class loader of the filters
+	 * @param filters
+	 *            the filters read, with their descriptors
+	 */
+	private static void addFilters(FilterSet newFilterSet, ClassLoader classLoader,
+			Map<Filter<?>, FilterDescriptor> filters) {
 		logger.debug("Register filters...");
-		for (Filter<?> newFilter : filterLoader) {
+		for (Map.Entry<Filter<?>, FilterDescriptor> entry : filters.entrySet()) {
+			Filter<?> newFilter = entry.getKey();
 			// Check that filter has not been already loaded
-			if (!loadedFilters.contains(newFilter)) {
-				loadedFilters.add(newFilter);
-				logger.debug("Filter found on service {}: <{}>", newFilter.getService().getSimpleName(),
+			if (!newFilterSet.contains(newFilter)) {
+				newFilterSet.add(classLoader, newFilter, entry.getValue());
+				logger.debug("Filter found on service {}: <{}>, {}", new Object[] {
+						newFilter.getService().getSimpleName(), newFilter.getDescription(), entry.getValue() });
+			} else {
+				newFilterSet.addDuplicate(classLoader, newFilter, entry.getValue());
+				logger.debug("Filter <{}> already loaded, kept for the unload of the first one",
 						newFilter.getDescription());
-				// Set the a modification on Observable
-				setChanged();
 			}
 		}
 	}
 
 	/**
-	 * Build the map key with service Parameter
+	 * Resolve in advance the filtered methods of the active filters of a
+	 * configuration, on the service classes of the filters
+	 * <p>
+	 * Lazy filters are skipped: their classes are loaded at the first call of
+	 * a filtered method only.
 	 * 
-	 * @param serviceClass
-	 *            the class of the service
+	 * @param newFilterSet
+	 *            the filters of the configuration
+	 * @param newConfiguration
+	 *            the configuration not published yet
+	 */
+	private static void warmUpDispatch(FilterSet newFilterSet, FilterConfiguration newConfiguration) {
+		DispatchTable dispatchTable = newConfiguration.getDispatchTable();
+		for (Filter<?> filter : new HashSet<Filter<?>>(newConfiguration.getActiveFilters().values())) {
+			if (filter instanceof LazyFilter)
+				continue;
+			Class<?> serviceClass;
+			try {
+				serviceClass = filter.getService();
+			} catch (RuntimeException e) {
+				logger.warn("Can't warm up filter <" + filter.getDescription() + ">: " + e.getMessage(), e);
+				continue;
+			}
+			List<String> signatures = newFilterSet.getDescriptor(filter).getSignatures();
+			for (Method method : serviceClass.getMethods())
+				if (signatures.contains(DispatchTable.getSignature(method))) {
+					dispatchTable.mayBeFiltered(serviceClass, true, method);
+					dispatchTable.find(serviceClass, true, method);
+				}
+		}
+	}
+
+	/**
+	 * Make a set the current one and publish its configuration, must be
+	 * called with the configuration lock
+	 * 
+	 * @param newFilterSet
+	 *            the set to publish
+	 * @param preparedConfiguration
+	 *            the configuration prepared for the set, used if filters
+	 *            status and priority did not change since, can be null
+	 */
+	private void publishFilterSet(FilterSet newFilterSet, FilterConfiguration preparedConfiguration) {
+		long start = System.nanoTime();
+		filterSet = newFilterSet;
+		if (jars != null && newFilterSet.getJars() != null)
+			jars.restore(newFilterSet.getJars());
+
+		FilterConfiguration newConfiguration = buildConfiguration(newFilterSet);
+		if (preparedConfiguration != null
+				&& isSameSelection(preparedConfiguration.getActiveFilters(), newConfiguration.getActiveFilters())
+				&& isSameSelection(preparedConfiguration.getActiveFiltersByName(),
+						newConfiguration.getActiveFiltersByName()))
+			newConfiguration = preparedConfiguration;
+		publishConfiguration(newConfiguration.withGeneration(++generation, configuration.getInvokers()));
+		dispatchStatistics.rebuild(System.nanoTime() - start);
+	}
+
+	/**
+	 * Close the class loaders of the JAR files of a set no more used, the ones
+	 * still used by the current, staged or previous set are kept: classes
+	 * already loaded can still be used, no new class can be loaded
+	 * 
+	 * @param oldFilterSet
+	 *            the set no more used, can be null
+	 */
+	private void releaseFilterSet(FilterSet oldFilterSet) {
+		if (oldFilterSet == null || oldFilterSet.getJars() == null)
+			return;
+		List<JarClassLoader> classLoaders = new ArrayList<JarClassLoader>(oldFilterSet.getJars().getLoaders());
+		for (FilterSet usedFilterSet : new FilterSet[] { filterSet, stagedFilterSet, previousFilterSet })
+			if (usedFilterSet != null && usedFilterSet.getJars() != null)
+				classLoaders.removeAll(usedFilterSet.getJars().getLoaders());
+
+		for (JarClassLoader classLoader : classLoaders) {
+			try {
+				classLoader.close();
+				logger.debug("Class loader closed: {}", classLoader);
+			} catch (IOException e) {
+				logger.warn("Can't close class loader " + classLoader + ": " + e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Get the JAR files of the folder, must be called with the configuration
+	 * lock
+	 * 
+	 * @return the JAR folder
+	 * @throws IOException
+	 *             if no folder is set
+	 */
+	private JarFolder getJars() throws IOException {
+		if (jars == null) {
+			if (jarFolder == null)
+				throw new IOException("Extern JAR folder not set");
+			jars = new JarFolder(new File(jarFolder), getClass().getClassLoader());
+		}
+		return jars;
+	}
+
+	/**
+	 * Get the descriptor of a filter from the index, or by reflection if the
+	 * filter is not indexed
+	 * 
+	 * @param filter
+	 *            a new filter
+	 * @param index
+	 *            the filter index
+	 * @return the descriptor of the filter
+	 */
+	private static FilterDescriptor getFilterDescriptor(Filter<?> filter, FilterIndex index) {
+		FilterIndex.Entry entry = filter instanceof LazyFilter ? ((LazyFilter<?>) filter).getIndexEntry() : index
+				.get(filter.getClass().getName());
+		if (entry == null)
+			return FilterDescriptor.of(filter);
+
+		if (!entry.getDescription().equals(filter.getDescription()) || entry.getPriority() != filter.getPriority())
+			logger.warn("Filter <{}> is indexed with other description or priority: {}", filter.getDescription(),
+					entry);
+		return FilterDescriptor.of(entry);
+	}
+
+	/**
+	 * Build the map key with service Parameter, without parameter types
+	 * 
+	 * @param serviceClassName
+	 *            the class name of the service
 	 * @param methodName
 	 *            the method name
 	 * @return the key of the map used to store filter
@@ -449,53 +1467,151 @@ public class FilterService extends Observable {
 	}
 
 	/**
-	 * Build a the access collection to improve performances
+	 * Build a the access collection of a set to improve performances
+	 * <p>
+	 * All keys are computed again, with a new cache. The configuration is not
+	 * published. Must be called with the configuration lock.
+	 * 
+	 * @param newFilterSet
+	 *            the loaded filters
+	 * @return the configuration, with the generation 0
 	 */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	// TODOJ7: to remove
-	private void buildFilterFastAccessCollections() {
+	private FilterConfiguration buildConfiguration(FilterSet newFilterSet) {
 
-		writeLockToFilterFastAccessCollections.lock();
-		try {
-			// LIST
-			allFilters = new ArrayList<Filter<?>>(loadedFilters);
-			// Sort Filters
-			Collections.sort((List) allFilters); // TODOJ7: cast for JDK 1.6 fix
-													// complication error
-			// Create a RO list
-			allFilters = Collections.unmodifiableList(allFilters);
-
-			// MAP
-			activeFilters = new HashMap<String, Filter<?>>();
-			for (Filter<?> filter : loadedFilters) {
-				if (filter.isActive()) {
-					// Iterate on each method
-					// and check that the annotation FilteredMethod is present
-					logger.debug("Read filter methods on {}: <{}>", filter.getService().getSimpleName(),
-							filter.getDescription());
-					for (Method method : filter.getFilterServiceImpl(null).getClass().getDeclaredMethods()) {
-						if (method.getAnnotation(FilteredMethod.class) != null) {
-							String methodName = method.getName();
-							String filterKey = getKey(filter.getService().getName(), methodName);
-							logger.debug("Filter <{}>: {}.{} is overrided", new String[] { filter.getDescription(),
-									filter.getService().getSimpleName(), methodName });
-
-							Filter<?> otherFilter = activeFilters.get(filterKey);
-							if (otherFilter == null || otherFilter.getPriority() < filter.getPriority()) {
-								logger.trace("New Filter set for key {}", filterKey);
-								activeFilters.put(filterKey, filter);
-							}
-						}
-					}
-				} else {
-					logger.debug("Filter <{}> is desactivated", filter.getDescription());
-				}
+		// LIST
+		List<Filter<?>> allFilters = new ArrayList<Filter<?>>(newFilterSet.getFilters());
+		// Sort Filters
+		Collections.sort(allFilters, BY_DESCRIPTION);
+
+		// MAPS
+		Map<String, Filter<?>> activeFilters = new HashMap<String, Filter<?>>();
+		Map<String, Filter<?>> activeFiltersByName = new HashMap<String, Filter<?>>();
+		selectActiveFilters(newFilterSet.getCandidatesByKey(), newFilterSet.getCandidatesByKey().keySet(),
+				activeFilters);
+		selectActiveFilters(newFilterSet.getCandidatesByName(), newFilterSet.getCandidatesByName().keySet(),
+				activeFiltersByName);
+
+		return new FilterConfiguration(Collections.unmodifiableList(allFilters),
+				Collections.unmodifiableMap(activeFilters), Collections.unmodifiableMap(activeFiltersByName),
+				newCache(), 0, configuration.getInvokers());
+	}
+
+	/**
+	 * Update the access collections after the change of a filter priority or
+	 * status
+	 * <p>
+	 * Only the keys declared by the filter are computed again: the dispatch
+	 * table is updated on these keys, and only the cache entries of the
+	 * methods whose active filter changed are removed. Must be called with the
+	 * configuration lock.
+	 * 
+	 * @param filter
+	 *            the filter changed
+	 */
+	private void updateFilterFastAccessCollections(Filter<?> filter) {
+		long start = System.nanoTime();
+		FilterConfiguration previous = configuration;
+		Map<String, Filter<?>> activeFilters = new HashMap<String, Filter<?>>(previous.getActiveFilters());
+		Map<String, Filter<?>> activeFiltersByName = new HashMap<String, Filter<?>>(
+				previous.getActiveFiltersByName());
+
+		FilterDescriptor descriptor = filterSet.getDescriptor(filter);
+		if (descriptor != null) {
+			logger.debug("Update {} keys of filter <{}>", descriptor.getKeys().size(), filter.getDescription());
+			selectActiveFilters(filterSet.getCandidatesByKey(), descriptor.getKeys(), activeFilters);
+			selectActiveFilters(filterSet.getCandidatesByName(), descriptor.getNameKeys(), activeFiltersByName);
+		} else {
+			logger.debug("Filter <{}> is not loaded", filter.getDescription());
+		}
+
+		// filters sorted by description: order is not changed
+		Collection<String> changedKeys = descriptor != null ? descriptor.getKeys() : Collections.<String> emptyList();
+		Map<String, Filter<?>> newActiveFilters = Collections.unmodifiableMap(activeFilters);
+		publishConfiguration(new FilterConfiguration(previous.getAllFilters(), newActiveFilters,
+				Collections.unmodifiableMap(activeFiltersByName), previous.getDispatchTable().update(
+						newActiveFilters, changedKeys), previous.getCache(), ++generation, previous.getInvokers()));
+		dispatchStatistics.rebuild(System.nanoTime() - start);
+	}
+
+	/**
+	 * Publish a new configuration and invalidate what depends on changed
+	 * methods
+	 * 
+	 * @param newConfiguration
+	 *            the configuration, with the cache of the current one to keep
+	 *            it without changed methods, or with a new cache
+	 */
+	private void publishConfiguration(FilterConfiguration newConfiguration) {
+		FilterConfiguration previous = configuration;
+		configuration = newConfiguration;
+
+		// Call sites and cache entries of changed methods only must be bound
+		// again
+		Set<String> changedSignatures = switchPoints.invalidateChanges(previous.getActiveFilters(),
+				newConfiguration.getActiveFilters());
+		logger.debug("Methods changed: {}", changedSignatures);
+		if (newConfiguration.getCache() == previous.getCache())
+			previous.getCache().removeMethods(changedSignatures);
+	}
 
+	/**
+	 * Indicate if two selections of active filters have the same filters (by
+	 * identity) for the same keys
+	 */
+	private static boolean isSameSelection(Map<String, Filter<?>> activeFilters1,
+			Map<String, Filter<?>> activeFilters2) {
+		if (activeFilters1.size() != activeFilters2.size())
+			return false;
+		for (Map.Entry<String, Filter<?>> entry : activeFilters1.entrySet())
+			if (activeFilters2.get(entry.getKey()) != entry.getValue())
+				return false;
+		return true;
+	}
+
+	/**
+	 * Put a filtered service in the cache of a configuration
+	 * <p>
+	 * The cache is kept by configuration changes of a filter: if the
+	 * configuration changed during the filter search, the entry may be stale
+	 * and is removed (the change removes the entries of its methods after its
+	 * publication, so an entry added before is removed too).
+	 */
+	private void putInCache(FilterConfiguration searchConfiguration, Object service, Method method,
+			CachedFilter value) {
+		CachedFilterMap cacheFilteredServices = searchConfiguration.getCache();
+		cacheFilteredServices.put(service, method, value);
+		if (configuration != searchConfiguration) {
+			logger.debug("Configuration changed during search, remove filter from cache");
+			cacheFilteredServices.remove(service, method, value);
+		}
+	}
+
+	/**
+	 * Put the active filter with the highest priority of each key in a map,
+	 * the first one loaded if several have the same priority: candidates are
+	 * kept in load order, so the selection doesn't depend on previous changes
+	 * 
+	 * @param candidates
+	 *            filters by key
+	 * @param keys
+	 *            the keys to select
+	 * @param activeFilters
+	 *            the map to update
+	 */
+	private static void selectActiveFilters(Map<String, List<Filter<?>>> candidates, Collection<String> keys,
+			Map<String, Filter<?>> activeFilters) {
+		for (String key : keys) {
+			Filter<?> active = null;
+			for (Filter<?> candidate : candidates.get(key))
+				if (candidate.isActive() && (active == null || candidate.getPriority() > active.getPriority()))
+					active = candidate;
+
+			if (active != null) {
+				logger.trace("Filter <{}> set for key {}", active.getDescription(), key);
+				activeFilters.put(key, active);
+			} else {
+				activeFilters.remove(key);
 			}
-			// Create a RO map
-			activeFilters = Collections.unmodifiableMap(activeFilters);
-		} finally {
-			writeLockToFilterFastAccessCollections.unlock();
 		}
 	}
-}
\ No newline at end of file
+}
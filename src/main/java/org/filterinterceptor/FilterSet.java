@@ -0,0 +1,241 @@
+package org.filterinterceptor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.filterinterceptor.loader.JarFolder;
+import org.filterinterceptor.spi.Filter;
+
+/**
+ * A generation of loaded filters: the filters of each class loader, their
+ * descriptors and the filters declaring each method, from which the
+ * configurations of {@link FilterService} are built
+ * <p>
+ * A set is built from the previous one (filters of unchanged JARs are
+ * shared), then only read: the current set, a staged one and the previous one
+ * can be kept side by side. Must be used with the configuration lock of
+ * {@link FilterService}.
+ */
+final class FilterSet {
+
+	/**
+	 * Loaded filters by class loader
+	 */
+	private final Map<ClassLoader, List<Filter<?>>> filtersByClassLoader;
+
+	/**
+	 * Descriptor of each loaded filter, read at load
+	 */
+	private final Map<Filter<?>, FilterDescriptor> descriptors;
+
+	/**
+	 * Filters not loaded by class loader because an equal filter was loaded
+	 * before, with their descriptors: one of them replaces the loaded filter
+	 * when its class loader is removed
+	 */
+	private final Map<ClassLoader, Map<Filter<?>, FilterDescriptor>> duplicatesByClassLoader;
+
+	/**
+	 * Loaded filters declaring each key, built by {@link #indexCandidates()}
+	 */
+	private final Map<String, List<Filter<?>>> candidatesByKey = new HashMap<String, List<Filter<?>>>();
+
+	/**
+	 * Loaded filters declaring each key without parameter types, built by
+	 * {@link #indexCandidates()}
+	 */
+	private final Map<String, List<Filter<?>>> candidatesByName = new HashMap<String, List<Filter<?>>>();
+
+	/**
+	 * State of the JAR folder the filters come from, null if not scanned
+	 */
+	private JarFolder.Snapshot jars;
+
+	/**
+	 * Indicate if the filters of the classpath are loaded
+	 */
+	private boolean isClasspathLoaded;
+
+	/**
+	 * Indicate if filters were added or removed since the copy
+	 */
+	private boolean isModified;
+
+	/**
+	 * Create an empty set
+	 */
+	FilterSet() {
+		filtersByClassLoader = new LinkedHashMap<ClassLoader, List<Filter<?>>>();
+		descriptors = new LinkedHashMap<Filter<?>, FilterDescriptor>();
+		duplicatesByClassLoader = new LinkedHashMap<ClassLoader, Map<Filter<?>, FilterDescriptor>>();
+	}
+
+	/**
+	 * Copy a set to build the next one, candidates must be indexed again
+	 *
+	 * @param base
+	 *            the set to copy
+	 */
+	FilterSet(FilterSet base) {
+		filtersByClassLoader = new LinkedHashMap<ClassLoader, List<Filter<?>>>();
+		for (Map.Entry<ClassLoader, List<Filter<?>>> entry : base.filtersByClassLoader.entrySet())
+			filtersByClassLoader.put(entry.getKey(), new ArrayList<Filter<?>>(entry.getValue()));
+		descriptors = new LinkedHashMap<Filter<?>, FilterDescriptor>(base.descriptors);
+		duplicatesByClassLoader = new LinkedHashMap<ClassLoader, Map<Filter<?>, FilterDescriptor>>();
+		for (Map.Entry<ClassLoader, Map<Filter<?>, FilterDescriptor>> entry : base.duplicatesByClassLoader.entrySet())
+			duplicatesByClassLoader.put(entry.getKey(), new LinkedHashMap<Filter<?>, FilterDescriptor>(entry
+					.getValue()));
+		jars = base.jars;
+		isClasspathLoaded = base.isClasspathLoaded;
+	}
+
+	/**
+	 * Indicate if a filter (or an equal one) is loaded
+	 */
+	boolean contains(Filter<?> filter) {
+		return descriptors.containsKey(filter);
+	}
+
+	/**
+	 * Add a filter loaded by a class loader
+	 */
+	void add(ClassLoader classLoader, Filter<?> filter, FilterDescriptor descriptor) {
+		descriptors.put(filter, descriptor);
+		List<Filter<?>> classLoaderFilters = filtersByClassLoader.get(classLoader);
+		if (classLoaderFilters == null) {
+			classLoaderFilters = new ArrayList<Filter<?>>();
+			filtersByClassLoader.put(classLoader, classLoaderFilters);
+		}
+		classLoaderFilters.add(filter);
+		isModified = true;
+	}
+
+	/**
+	 * Keep a filter of a class loader equal to a filter already loaded
+	 */
+	void addDuplicate(ClassLoader classLoader, Filter<?> filter, FilterDescriptor descriptor) {
+		Map<Filter<?>, FilterDescriptor> classLoaderDuplicates = duplicatesByClassLoader.get(classLoader);
+		if (classLoaderDuplicates == null) {
+			classLoaderDuplicates = new LinkedHashMap<Filter<?>, FilterDescriptor>();
+			duplicatesByClassLoader.put(classLoader, classLoaderDuplicates);
+		}
+		if (!classLoaderDuplicates.containsKey(filter))
+			classLoaderDuplicates.put(filter, descriptor);
+	}
+
+	/**
+	 * Remove the filters loaded by a class loader and its duplicates
+	 *
+	 * @return the removed filters, empty if none
+	 */
+	List<Filter<?>> remove(ClassLoader classLoader) {
+		duplicatesByClassLoader.remove(classLoader);
+		List<Filter<?>> classLoaderFilters = filtersByClassLoader.remove(classLoader);
+		if (classLoaderFilters == null)
+			return Collections.emptyList();
+		for (Filter<?> filter : classLoaderFilters)
+			descriptors.remove(filter);
+		isModified |= !classLoaderFilters.isEmpty();
+		return classLoaderFilters;
+	}
+
+	/**
+	 * Load the first duplicate of a removed filter, from the class loaders
+	 * still present in load order
+	 *
+	 * @param filter
+	 *            the filter removed
+	 * @return the class loader of the duplicate loaded, null if none
+	 */
+	ClassLoader addDuplicateOf(Filter<?> filter) {
+		for (Map.Entry<ClassLoader, Map<Filter<?>, FilterDescriptor>> entry : duplicatesByClassLoader.entrySet()) {
+			Map<Filter<?>, FilterDescriptor> classLoaderDuplicates = entry.getValue();
+			for (Map.Entry<Filter<?>, FilterDescriptor> duplicate : classLoaderDuplicates.entrySet())
+				if (duplicate.getKey().equals(filter)) {
+					classLoaderDuplicates.remove(duplicate.getKey());
+					add(entry.getKey(), duplicate.getKey(), duplicate.getValue());
+					return entry.getKey();
+				}
+		}
+		return null;
+	}
+
+	/**
+	 * Compute the candidates of each key, once the filters are loaded
+	 */
+	void indexCandidates() {
+		candidatesByKey.clear();
+		candidatesByName.clear();
+		for (Map.Entry<Filter<?>, FilterDescriptor> entry : descriptors.entrySet()) {
+			for (String filterKey : entry.getValue().getKeys())
+				addCandidate(candidatesByKey, filterKey, entry.getKey());
+			for (String filterNameKey : entry.getValue().getNameKeys())
+				addCandidate(candidatesByName, filterNameKey, entry.getKey());
+		}
+	}
+
+	private static void addCandidate(Map<String, List<Filter<?>>> candidates, String key, Filter<?> filter) {
+		List<Filter<?>> keyCandidates = candidates.get(key);
+		if (keyCandidates == null) {
+			keyCandidates = new ArrayList<Filter<?>>();
+			candidates.put(key, keyCandidates);
+		}
+		keyCandidates.add(filter);
+	}
+
+	/**
+	 * @return the loaded filters, in load order
+	 */
+	Collection<Filter<?>> getFilters() {
+		return descriptors.keySet();
+	}
+
+	/**
+	 * @return the descriptor of a filter, null if the filter is not loaded
+	 */
+	FilterDescriptor getDescriptor(Filter<?> filter) {
+		return descriptors.get(filter);
+	}
+
+	/**
+	 * @return the filters declaring each key
+	 */
+	Map<String, List<Filter<?>>> getCandidatesByKey() {
+		return candidatesByKey;
+	}
+
+	/**
+	 * @return the filters declaring each key without parameter types
+	 */
+	Map<String, List<Filter<?>>> getCandidatesByName() {
+		return candidatesByName;
+	}
+
+	JarFolder.Snapshot getJars() {
+		return jars;
+	}
+
+	void setJars(JarFolder.Snapshot jars) {
+		this.jars = jars;
+	}
+
+	boolean isClasspathLoaded() {
+		return isClasspathLoaded;
+	}
+
+	void setClasspathLoaded(boolean isClasspathLoaded) {
+		this.isClasspathLoaded = isClasspathLoaded;
+	}
+
+	/**
+	 * @return true if filters were added or removed since the copy
+	 */
+	boolean isModified() {
+		return isModified;
+	}
+}
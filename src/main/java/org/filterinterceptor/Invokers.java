@@ -0,0 +1,48 @@
+package org.filterinterceptor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.filterinterceptor.dispatch.InvocationMode;
+import org.filterinterceptor.dispatch.MethodInvoker;
+
+/**
+ * Invokers of one invocation mode by method, created at first call
+ * <p>
+ * Published in the {@link FilterConfiguration}, so a call uses the invokers of
+ * the mode set when its configuration was read. Configurations with the same
+ * mode share the invokers.
+ */
+final class Invokers {
+
+	private final InvocationMode mode;
+
+	private final ConcurrentMap<Method, MethodInvoker> invokers = new ConcurrentHashMap<Method, MethodInvoker>();
+
+	Invokers(InvocationMode mode) {
+		this.mode = mode;
+	}
+
+	InvocationMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Get the invoker of a method, create it at first call
+	 *
+	 * @param method
+	 *            the method to call
+	 * @return the invoker
+	 */
+	MethodInvoker get(Method method) {
+		MethodInvoker invoker = invokers.get(method);
+		if (invoker == null) {
+			invoker = MethodInvoker.create(method, mode);
+			MethodInvoker previous = invokers.putIfAbsent(method, invoker);
+			if (previous != null)
+				invoker = previous;
+		}
+		return invoker;
+	}
+}
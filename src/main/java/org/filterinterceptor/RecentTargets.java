@@ -0,0 +1,124 @@
+package org.filterinterceptor;
+
+import java.lang.ref.WeakReference;
+
+import org.filterinterceptor.cache.CachedFilter;
+
+/**
+ * Last filter implementations created by each thread, used when the cache is
+ * off: successive calls of a thread on the same services reuse them instead of
+ * creating one by call
+ * <p>
+ * A thread keeps the implementations of its {@value #SIZE} last (filter,
+ * service) pairs, the oldest one is replaced. An implementation is reused only
+ * for the same configuration generation, filter and service (compared by
+ * identity): a change of filters creates a new one, and the implementation of
+ * an older generation is dropped when it is found. Implementations are kept
+ * strongly, so they survive garbage collections; the service is weakly
+ * referenced by the entry, but an implementation referencing its service
+ * keeps it until the entry is replaced.
+ */
+final class RecentTargets {
+
+	/**
+	 * Number of implementations kept by thread
+	 */
+	private static final int SIZE = 8;
+
+	private final ThreadLocal<Recents> recents = new ThreadLocal<Recents>() {
+		@Override
+		protected Recents initialValue() {
+			return new Recents();
+		}
+	};
+
+	/**
+	 * Get an implementation created by the current thread
+	 *
+	 * @param generation
+	 *            the generation of the configuration in which the filter was
+	 *            found
+	 * @param filter
+	 *            the filter
+	 * @param service
+	 *            the real service
+	 * @return the implementation (with the filter description and metrics),
+	 *         null if none is kept for this generation, filter and service
+	 */
+	CachedFilter get(long generation, Object filter, Object service) {
+		Recents threadRecents = recents.get();
+		int index = threadRecents.indexOf(filter, service);
+		if (index < 0)
+			return null;
+		Recent recent = threadRecents.recents[index];
+		if (recent.generation != generation) {
+			threadRecents.recents[index] = null;
+			return null;
+		}
+		return recent.target;
+	}
+
+	/**
+	 * Keep an implementation created by the current thread, in place of the
+	 * one of the same filter and service or of the oldest one
+	 *
+	 * @param generation
+	 *            the generation of the configuration in which the filter was
+	 *            found
+	 * @param filter
+	 *            the filter
+	 * @param service
+	 *            the real service
+	 * @param target
+	 *            the implementation of the filter for the service
+	 */
+	void put(long generation, Object filter, Object service, CachedFilter target) {
+		Recents threadRecents = recents.get();
+		int index = threadRecents.indexOf(filter, service);
+		if (index < 0) {
+			index = threadRecents.next;
+			threadRecents.next = (index + 1) % SIZE;
+		}
+		threadRecents.recents[index] = new Recent(generation, filter, service, target);
+	}
+
+	/**
+	 * Implementations kept by a thread
+	 */
+	private static final class Recents {
+		private final Recent[] recents = new Recent[SIZE];
+
+		/**
+		 * Index of the next implementation replaced
+		 */
+		private int next;
+
+		/**
+		 * Get the index of the implementation of a filter and a service
+		 *
+		 * @return the index, -1 if none is kept
+		 */
+		private int indexOf(Object filter, Object service) {
+			for (int i = 0; i < SIZE; i++) {
+				Recent recent = recents[i];
+				if (recent != null && recent.filter == filter && recent.service.get() == service)
+					return i;
+			}
+			return -1;
+		}
+	}
+
+	private static final class Recent {
+		private final long generation;
+		private final Object filter;
+		private final WeakReference<Object> service;
+		private final CachedFilter target;
+
+		private Recent(long generation, Object filter, Object service, CachedFilter target) {
+			this.generation = generation;
+			this.filter = filter;
+			this.service = new WeakReference<Object>(service);
+			this.target = target;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package org.filterinterceptor.cache;
+
+import org.filterinterceptor.metrics.StripedCounter;
+
+/**
+ * Counters of the filtered service cache
+ * <p>
+ * Counters are kept when the cache is cleared or replaced by a new
+ * configuration.
+ */
+public class CacheStatistics {
+
+	private final StripedCounter hits = new StripedCounter();
+	private final StripedCounter misses = new StripedCounter();
+	private final StripedCounter evictions = new StripedCounter();
+
+	/**
+	 * Get the number of searches which found an entry
+	 *
+	 * @return the number of cache hits
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Get the number of searches which found no entry
+	 *
+	 * @return the number of cache misses
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Get the number of entries removed because the cache was full
+	 *
+	 * @return the number of cache evictions
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * Set all counters to zero
+	 */
+	public void reset() {
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+
+	void hit() {
+		hits.increment();
+	}
+
+	void miss() {
+		misses.increment();
+	}
+
+	void eviction() {
+		evictions.increment();
+	}
+}
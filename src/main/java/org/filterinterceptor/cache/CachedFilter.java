@@ -1,28 +1,74 @@
 package org.filterinterceptor.cache;
 
+import org.filterinterceptor.metrics.FilterMetrics;
+import org.filterinterceptor.spi.Filter;
+
 /**
  * Class used to store data in Cache
  */
 public class CachedFilter {
+
+	/**
+	 * Entry used when the real service is called: it keeps no reference on the
+	 * service
+	 */
+	public static final CachedFilter REAL_SERVICE = new CachedFilter("real service method", null);
+
 	private final String filterDescription;
 	private final Object filteredService;
+	private final FilterMetrics metrics;
+	private final Filter<?> filter;
 
 	/**
-	 * Constructor with fileds
-	 * 
+	 * Constructor without metrics
+	 *
 	 * @param filterDescription
 	 *            the filter description
 	 * @param filteredService
-	 *            the filtered service to apply
+	 *            the filtered service to apply, null to call the real service
 	 */
 	public CachedFilter(String filterDescription, Object filteredService) {
+		this(filterDescription, filteredService, null);
+	}
+
+	/**
+	 * Constructor with fields
+	 *
+	 * @param filterDescription
+	 *            the filter description
+	 * @param filteredService
+	 *            the filtered service to apply, null to call the real service
+	 * @param metrics
+	 *            the metrics of the filter, null if not measured
+	 */
+	public CachedFilter(String filterDescription, Object filteredService, FilterMetrics metrics) {
+		this(filterDescription, filteredService, metrics, null);
+	}
+
+	/**
+	 * Constructor with the filter which created the filtered service, so the
+	 * cache keeps the service weakly (see {@link CachedFilterMap})
+	 *
+	 * @param filter
+	 *            the filter
+	 * @param filteredService
+	 *            the filtered service created by the filter
+	 */
+	public CachedFilter(Filter<?> filter, Object filteredService) {
+		this(filter.getDescription(), filteredService, filter.getMetrics(), filter);
+	}
+
+	private CachedFilter(String filterDescription, Object filteredService, FilterMetrics metrics,
+			Filter<?> filter) {
 		this.filterDescription = filterDescription;
 		this.filteredService = filteredService;
+		this.metrics = metrics;
+		this.filter = filter;
 	}
 
 	/**
 	 * Get the filter description
-	 * 
+	 *
 	 * @return the filter description
 	 */
 	public String getFilterDescription() {
@@ -31,10 +77,29 @@ public class CachedFilter {
 
 	/**
 	 * Get the filtered service
-	 * 
-	 * @return the filteredService
+	 *
+	 * @return the filteredService, null if the real service is called
 	 */
 	public Object getFilteredService() {
 		return filteredService;
 	}
+
+	/**
+	 * Get the metrics of the filter
+	 *
+	 * @return the metrics to update when the filtered service is called, null
+	 *         if not measured
+	 */
+	public FilterMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Get the filter which created the filtered service
+	 *
+	 * @return the filter, null if unknown or if the real service is called
+	 */
+	public Filter<?> getFilter() {
+		return filter;
+	}
 }
@@ -1,108 +1,496 @@
 package org.filterinterceptor.cache;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Hashtable;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.filterinterceptor.dispatch.DispatchTable;
+import org.filterinterceptor.spi.Filter;
 
 /**
- * Create a HashMap container to manage locks.
+ * Bounded cache of filtered services, by service and method.
+ * <p>
+ * Services are compared by identity and weakly referenced: an entry is removed
+ * once its service is garbage collected. Entries for the real service (
+ * {@link CachedFilter#REAL_SERVICE}) keep no reference on the service. A
+ * filtered service usually references its service, so it is weakly referenced
+ * too when its filter is known ({@link CachedFilter#getFilter()}): once
+ * collected, it is created again by the filter at the next read. Other
+ * filtered services are kept: such entries are only removed by eviction.
  * <p>
- * This is quicker for read access than use {@link Hashtable} or a
- * {@link Collections#synchronizedMap}
+ * The number of entries is bounded. When the cache is full the oldest entry
+ * not used since the previous eviction pass is removed (second chance
+ * algorithm). Entries of collected services are removed first, they are not
+ * counted as evictions.
+ * <p>
+ * Reads use no lock and build no object. Writes (one by service method) are
+ * synchronized. Entries are indexed by method signature too, so the entries of
+ * some methods are removed without scanning the whole cache.
  */
 public class CachedFilterMap {
+
 	/**
-	 * Object use to lock access to cache
+	 * Default maximum number of entries
 	 */
-	private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
-	private final Lock wLock = rwLock.writeLock();
-	private final Lock rLock = rwLock.readLock();
+	public static final int DEFAULT_MAX_SIZE = 10000;
+
+	/**
+	 * Lookup keys, one per thread, so reads allocate nothing
+	 */
+	private static final ThreadLocal<LookupKey> LOOKUP_KEYS = new ThreadLocal<LookupKey>() {
+		@Override
+		protected LookupKey initialValue() {
+			return new LookupKey();
+		}
+	};
 
 	/**
-	 * The map there data are cached
+	 * The entries, each entry is its own key
 	 */
-	private final Map<String, CachedFilter> data = new HashMap<String, CachedFilter>();
+	private final ConcurrentMap<Object, Entry> data = new ConcurrentHashMap<Object, Entry>();
+
+	/**
+	 * The mapped entries by method signature (see
+	 * {@link DispatchTable#getSignature(Method)}). Guarded by this.
+	 */
+	private final Map<String, Set<Entry>> entriesBySignature = new HashMap<String, Set<Entry>>();
+
+	/**
+	 * Entries in insertion order, used for eviction. Entries removed without
+	 * eviction (replaced, removed, or with a collected service) stay until
+	 * they are polled or purged: the queue is purged when they are as many as
+	 * the maximum size. Guarded by this.
+	 */
+	private final Queue<Entry> evictionQueue = new ArrayDeque<Entry>();
+
+	/**
+	 * Entries whose service was garbage collected
+	 */
+	private final ReferenceQueue<Object> collectedServices = new ReferenceQueue<Object>();
+
+	private final CacheStatistics statistics;
+	private volatile int maxSize;
+
+	/**
+	 * Constructor with default maximum size and own statistics
+	 */
+	public CachedFilterMap() {
+		this(DEFAULT_MAX_SIZE, new CacheStatistics());
+	}
+
+	/**
+	 * Constructor with fields
+	 *
+	 * @param maxSize
+	 *            the maximum number of entries
+	 * @param statistics
+	 *            the counters to update
+	 */
+	public CachedFilterMap(int maxSize, CacheStatistics statistics) {
+		setMaxSize(maxSize);
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Get the maximum number of entries
+	 *
+	 * @return the maximum number of entries
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Set the maximum number of entries, applied on next put
+	 *
+	 * @param maxSize
+	 *            the maximum number of entries
+	 */
+	public void setMaxSize(int maxSize) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("Cache max size must be positive: " + maxSize);
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Get the counters updated by this cache
+	 *
+	 * @return the cache statistics
+	 */
+	public CacheStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Returns the number of entries
+	 *
+	 * @return the number of entries
+	 *
+	 * @see java.util.Map#size()
+	 */
+	public synchronized int size() {
+		expungeCollectedServices();
+		return data.size();
+	}
 
 	/**
 	 * Removes all of the mappings from this map
-	 * <p>
-	 * Use the write lock
-	 * 
+	 *
 	 * @see java.util.Map#clear()
 	 */
-	public void clear() {
-		wLock.lock();
-		try {
-			data.clear();
-		} finally {
-			wLock.unlock();
-		}
+	public synchronized void clear() {
+		data.clear();
+		entriesBySignature.clear();
+		for (Entry entry : evictionQueue)
+			entry.clear();
+		evictionQueue.clear();
+		expungeCollectedServices();
 	}
 
 	/**
-	 * Returns a Set view of the keys contained in this map
-	 * <p>
-	 * Use the read lock
-	 * 
-	 * @return a set view of the keys contained in this map
-	 * @see java.util.Map#keySet()
+	 * Returns a copy of the keys contained in this map, as readable strings
+	 *
+	 * @return a set of the keys contained in this map
 	 */
 	public Set<String> keySet() {
-		rLock.lock();
-		try {
-			return data.keySet();
-		} finally {
-			rLock.unlock();
+		Set<String> keys = new HashSet<String>();
+		for (Entry entry : data.values()) {
+			Object service = entry.get();
+			if (service != null) {
+				String serviceKey = service.getClass().getName() + "@"
+						+ Integer.toHexString(System.identityHashCode(service));
+				keys.add(DispatchTable.getKey(serviceKey, entry.method));
+			}
 		}
+		return keys;
 	}
 
 	/**
-	 * Returns the value to which the specified key is mapped, or null if this
-	 * map contains no mapping for the key.
+	 * Returns the value to which the specified service and method are mapped,
+	 * or null if this map contains no mapping for them.
 	 * <p>
-	 * Use the read lock
-	 * 
-	 * @param key
-	 *            the key whose associated value is to be returned
+	 * Use no lock
+	 *
+	 * @param service
+	 *            the service (compared by identity)
+	 * @param method
+	 *            the method invoked
 	 * @return the value to which the specified key is mapped, or null if this
 	 *         map contains no mapping for the key
-	 * 
+	 *
 	 * @see java.util.Map#get(java.lang.Object)
 	 */
-	public CachedFilter get(Object key) {
-		rLock.lock();
+	public CachedFilter get(Object service, Method method) {
+		LookupKey key = LOOKUP_KEYS.get();
+		Entry entry;
+		key.set(service, method);
 		try {
-			return data.get(key);
+			entry = data.get(key);
 		} finally {
-			rLock.unlock();
+			key.set(null, null);
+		}
+		if (entry == null) {
+			statistics.miss();
+			return null;
 		}
+		statistics.hit();
+		if (!entry.used)
+			entry.used = true;
+		return entry.getValue();
 	}
 
 	/**
-	 * Associates the specified value with the specified key in this map
+	 * Associates the specified value with the specified service and method in
+	 * this map
 	 * <p>
-	 * Use the write lock
-	 * 
-	 * @param key
-	 *            key with which the specified value is to be associated
+	 * Evict entries if the map is full
+	 *
+	 * @param service
+	 *            the service (compared by identity)
+	 * @param method
+	 *            the method invoked
 	 * @param value
 	 *            value to be associated with the specified key
 	 * @return the previous value associated with key, or null if there was no
 	 *         mapping for key.
-	 * 
+	 *
 	 * @see java.util.Map#put(java.lang.Object, java.lang.Object)
 	 */
-	public CachedFilter put(String key, CachedFilter value) {
-		wLock.lock();
+	public synchronized CachedFilter put(Object service, Method method, CachedFilter value) {
+		expungeCollectedServices();
+		Entry entry = new Entry(service, method, value, collectedServices);
+		// remove before put: the map keeps the key of a replaced mapping
+		Entry previous = data.remove(entry);
+		if (previous != null) {
+			unindex(previous);
+			previous.clear();
+		}
+		data.put(entry, entry);
+		Set<Entry> entries = entriesBySignature.get(entry.signature);
+		if (entries == null) {
+			entries = Collections.newSetFromMap(new IdentityHashMap<Entry, Boolean>());
+			entriesBySignature.put(entry.signature, entries);
+		}
+		entries.add(entry);
+		evictionQueue.add(entry);
+		if (data.size() > maxSize)
+			evict();
+		if (evictionQueue.size() - maxSize > maxSize)
+			purgeEvictionQueue();
+		return previous != null ? previous.peekValue() : null;
+	}
+
+	/**
+	 * Removes the mapping of a service and method only if it is mapped to the
+	 * given value
+	 *
+	 * @param service
+	 *            the service (compared by identity)
+	 * @param method
+	 *            the method invoked
+	 * @param value
+	 *            value expected to be associated with the specified key
+	 * @return true if the mapping was removed
+	 *
+	 * @see ConcurrentMap#remove(Object, Object)
+	 */
+	public synchronized boolean remove(Object service, Method method, CachedFilter value) {
+		LookupKey key = LOOKUP_KEYS.get();
+		Entry entry;
+		key.set(service, method);
 		try {
-			return data.put(key, value);
+			entry = data.get(key);
 		} finally {
-			wLock.unlock();
+			key.set(null, null);
 		}
+		if (entry == null || entry.peekValue() != value || !removeEntry(entry))
+			return false;
+		entry.clear();
+		return true;
+	}
+
+	/**
+	 * Removes the mappings of all services for some methods, whatever their
+	 * declaring class: the entries are found by signature, the other entries
+	 * are not read
+	 *
+	 * @param signatures
+	 *            method signatures (see {@link DispatchTable#getSignature(Method)})
+	 * @return the number of mappings removed
+	 */
+	public synchronized int removeMethods(Set<String> signatures) {
+		if (signatures.isEmpty())
+			return 0;
+		int removed = 0;
+		for (String signature : signatures) {
+			Set<Entry> entries = entriesBySignature.remove(signature);
+			if (entries == null)
+				continue;
+			for (Entry entry : entries)
+				if (data.remove(entry, entry)) {
+					entry.clear();
+					removed++;
+				}
+		}
+		return removed;
+	}
+
+	/**
+	 * Remove entries until the number of entries is under the maximum size:
+	 * entries no more mapped are dropped from the queue, entries of collected
+	 * services are removed without being counted, used entries get a second
+	 * chance and the first unused entry is evicted
+	 */
+	private void evict() {
+		Entry entry;
+		while (data.size() > maxSize && (entry = evictionQueue.poll()) != null) {
+			if (data.get(entry) != entry)
+				continue;
+			if (entry.get() == null) {
+				removeEntry(entry);
+				continue;
+			}
+			if (entry.used) {
+				entry.used = false;
+				evictionQueue.add(entry);
+				continue;
+			}
+			if (removeEntry(entry)) {
+				entry.clear();
+				statistics.eviction();
+			}
+		}
+	}
+
+	/**
+	 * Remove from the eviction queue the entries no more mapped
+	 */
+	private void purgeEvictionQueue() {
+		for (Iterator<Entry> i = evictionQueue.iterator(); i.hasNext();) {
+			Entry entry = i.next();
+			if (data.get(entry) != entry)
+				i.remove();
+		}
+	}
+
+	/**
+	 * Remove entries whose service was garbage collected
+	 */
+	private void expungeCollectedServices() {
+		Reference<?> reference;
+		while ((reference = collectedServices.poll()) != null)
+			removeEntry((Entry) reference);
+	}
+
+	/**
+	 * Remove a mapped entry and its index
+	 *
+	 * @return true if the entry was mapped
+	 */
+	private boolean removeEntry(Entry entry) {
+		if (!data.remove(entry, entry))
+			return false;
+		unindex(entry);
+		return true;
+	}
+
+	private void unindex(Entry entry) {
+		Set<Entry> entries = entriesBySignature.get(entry.signature);
+		if (entries != null && entries.remove(entry) && entries.isEmpty())
+			entriesBySignature.remove(entry.signature);
+	}
+
+	/**
+	 * A cache entry: weak reference on the service, compared by identity
+	 */
+	private static final class Entry extends WeakReference<Object> {
+
+		private final Method method;
+		private final String signature;
+		private final int hash;
+
+		/**
+		 * The value kept strongly, null if the value is weakly referenced
+		 */
+		private final CachedFilter value;
+
+		/**
+		 * The filter creating the value, null if the value is kept strongly
+		 */
+		private final Filter<?> filter;
+
+		/**
+		 * The value weakly referenced, replaced once collected
+		 */
+		private volatile WeakReference<CachedFilter> weakValue;
+
+		/**
+		 * Set on creation and on read, cleared by eviction pass
+		 */
+		private volatile boolean used = true;
+
+		Entry(Object service, Method method, CachedFilter value, ReferenceQueue<Object> queue) {
+			super(service, queue);
+			this.method = method;
+			this.signature = DispatchTable.getSignature(method);
+			this.hash = hash(service, method);
+			this.filter = value.getFilteredService() != null ? value.getFilter() : null;
+			if (filter == null) {
+				this.value = value;
+			} else {
+				this.value = null;
+				this.weakValue = new WeakReference<CachedFilter>(value);
+			}
+		}
+
+		/**
+		 * Get the value, create it again with its filter if it was collected
+		 *
+		 * @return the value, null if the service was collected
+		 */
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		CachedFilter getValue() {
+			if (filter == null)
+				return value;
+			CachedFilter current = weakValue.get();
+			if (current == null) {
+				Object service = get();
+				if (service == null)
+					return null;
+				current = new CachedFilter(filter, ((Filter) filter).getFilterServiceImpl(service));
+				weakValue = new WeakReference<CachedFilter>(current);
+			}
+			return current;
+		}
+
+		/**
+		 * Get the value without creating it again
+		 *
+		 * @return the value, null if it was collected
+		 */
+		CachedFilter peekValue() {
+			return filter == null ? value : weakValue.get();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this)
+				return true;
+			if (!(obj instanceof Entry))
+				return false;
+			Entry other = (Entry) obj;
+			Object service = get();
+			return service != null && service == other.get() && method.equals(other.method);
+		}
+	}
+
+	/**
+	 * Mutable key used to search an entry
+	 */
+	private static final class LookupKey {
+
+		private Object service;
+		private Method method;
+		private int hash;
+
+		void set(Object service, Method method) {
+			this.service = service;
+			this.method = method;
+			this.hash = service != null ? hash(service, method) : 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Entry))
+				return false;
+			Entry entry = (Entry) obj;
+			return entry.get() == service && method.equals(entry.method);
+		}
+	}
+
+	private static int hash(Object service, Method method) {
+		return System.identityHashCode(service) * 31 + method.hashCode();
 	}
 }
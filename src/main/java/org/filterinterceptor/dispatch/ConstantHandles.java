@@ -0,0 +1,57 @@
+package org.filterinterceptor.dispatch;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Method handles given to a generated class during its initialization
+ * <p>
+ * The static initializer of the generated class reads its handles with
+ * {@link #get(int)} and keeps them in static final fields: the JIT takes them
+ * as constants and inlines the calls made through them. Handles are only
+ * given to the class initialized by the current thread.
+ */
+public final class ConstantHandles {
+
+	private static final ThreadLocal<MethodHandle[]> initializing = new ThreadLocal<MethodHandle[]>();
+
+	private ConstantHandles() {
+	}
+
+	/**
+	 * Initialize a generated class with its handles
+	 *
+	 * @param generatedClass
+	 *            the class, not yet initialized
+	 * @param handles
+	 *            the handles read by its static initializer
+	 * @return the initialized class
+	 */
+	public static <T> Class<T> initialize(Class<T> generatedClass, MethodHandle... handles) {
+		initializing.set(handles);
+		try {
+			Class.forName(generatedClass.getName(), true, generatedClass.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("Generated class " + generatedClass.getName() + " not found", e);
+		} finally {
+			initializing.remove();
+		}
+		return generatedClass;
+	}
+
+	/**
+	 * Get a handle of the class being initialized, called by its static
+	 * initializer
+	 *
+	 * @param index
+	 *            the index of the handle
+	 * @return the handle
+	 * @throws IllegalStateException
+	 *             if no class is initialized by the current thread
+	 */
+	public static MethodHandle get(int index) {
+		MethodHandle[] handles = initializing.get();
+		if (handles == null)
+			throw new IllegalStateException("No generated class initialized by the current thread");
+		return handles[index];
+	}
+}
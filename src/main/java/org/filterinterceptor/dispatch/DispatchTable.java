@@ -0,0 +1,330 @@
+package org.filterinterceptor.dispatch;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.filterinterceptor.spi.Filter;
+
+/**
+ * Table used to find quickly the active filter of a method invoked on a
+ * service
+ * <p>
+ * Filters are registered by key (see {@link #getKey(String, Method)}), built
+ * from the service class name, the method name and the parameter types, so
+ * overloaded methods are distinguished. At first call of a method on a service
+ * class, the key is computed and the filter found is stored by {@link Method}
+ * identity: next calls do not build any String. Results are stored in the
+ * classes ({@link ClassValue}), so the table doesn't prevent their unloading,
+ * and reference weakly the filters, kept by the table.
+ * <p>
+ * The table keeps too the names of the classes and of the methods which have
+ * a filter: most calls are on methods no filter can target, they are detected
+ * without any search (see {@link #mayBeFiltered(Class, boolean, Method)}).
+ * <p>
+ * A table is immutable regarding filters: a new table must be created when
+ * filters configuration change, or updated from the previous one when only
+ * some keys change (see {@link #update(Map, Collection)}).
+ */
+public class DispatchTable {
+
+	/**
+	 * Empty table: no filter
+	 */
+	public static final DispatchTable EMPTY = new DispatchTable(Collections.<String, Filter<?>> emptyMap());
+
+	/**
+	 * Active filters by key
+	 */
+	private final Map<String, Filter<?>> filtersByKey;
+
+	/**
+	 * Filters found by service class: stored in the classes, no reference is
+	 * kept on them by the table
+	 */
+	private final ClassValue<ClassSlots> slots = new ClassValue<ClassSlots>() {
+		@Override
+		protected ClassSlots computeValue(Class<?> serviceClass) {
+			return new ClassSlots(getFilteredClass(serviceClass));
+		}
+	};
+
+	/**
+	 * Names of the methods which have a filter, on any service, with their
+	 * number of keys
+	 */
+	private final Map<String, Integer> filteredMethodNames;
+
+	/**
+	 * Names of the service classes (or interfaces) which have a filter, with
+	 * their number of keys
+	 */
+	private final Map<String, Integer> filteredClassNames;
+
+	/**
+	 * Create the table
+	 *
+	 * @param filtersByKey
+	 *            the active filters by key, the map must not be modified after
+	 */
+	public DispatchTable(Map<String, Filter<?>> filtersByKey) {
+		this(filtersByKey, new HashMap<String, Integer>(), new HashMap<String, Integer>());
+		for (String key : filtersByKey.keySet())
+			addNames(key);
+	}
+
+	private DispatchTable(Map<String, Filter<?>> filtersByKey, Map<String, Integer> filteredClassNames,
+			Map<String, Integer> filteredMethodNames) {
+		this.filtersByKey = filtersByKey;
+		this.filteredClassNames = filteredClassNames;
+		this.filteredMethodNames = filteredMethodNames;
+	}
+
+	/**
+	 * Create the table of new active filters, which differ from the filters
+	 * of this table only on some keys: the names of the other keys are copied
+	 * without being parsed again
+	 *
+	 * @param filtersByKey
+	 *            the new active filters by key, the map must not be modified
+	 *            after
+	 * @param changedKeys
+	 *            the keys whose filter may have changed, added or removed
+	 * @return the new table
+	 */
+	public DispatchTable update(Map<String, Filter<?>> filtersByKey, Collection<String> changedKeys) {
+		DispatchTable table = new DispatchTable(filtersByKey, new HashMap<String, Integer>(filteredClassNames),
+				new HashMap<String, Integer>(filteredMethodNames));
+		for (String key : changedKeys) {
+			boolean wasFiltered = this.filtersByKey.containsKey(key);
+			boolean isFiltered = filtersByKey.containsKey(key);
+			if (isFiltered && !wasFiltered)
+				table.addNames(key);
+			else if (wasFiltered && !isFiltered)
+				table.removeNames(key);
+		}
+		return table;
+	}
+
+	/**
+	 * Indicate if a method can have a filter: if not, there is no need to
+	 * search its filter
+	 * <p>
+	 * The method name is checked first, then the service class (and its type
+	 * hierarchy if asked). The result on a class is kept by class.
+	 *
+	 * @param serviceClass
+	 *            the service class
+	 * @param extendToInterfaces
+	 *            a boolean indicate if the search of filter is done on the
+	 *            type hierarchy too or not
+	 * @param method
+	 *            the method invoked
+	 * @return false if no filter can be found for the method
+	 */
+	public boolean mayBeFiltered(Class<?> serviceClass, boolean extendToInterfaces, Method method) {
+		if (!filteredMethodNames.containsKey(method.getName()))
+			return false;
+		FilteredClass filteredClass = slots.get(serviceClass).filteredClass;
+		return extendToInterfaces ? filteredClass.withHierarchy : filteredClass.itself;
+	}
+
+	/**
+	 * Get the active filter of a method on a service class
+	 *
+	 * @param serviceClass
+	 *            the service class
+	 * @param method
+	 *            the method invoked
+	 * @return the active filter, null if there is no filter
+	 */
+	public Filter<?> get(Class<?> serviceClass, Method method) {
+		ConcurrentMap<Method, Slot> classSlots = slots.get(serviceClass).own;
+		Slot slot = classSlots.get(method);
+		if (slot == null) {
+			slot = new Slot(filtersByKey.get(getKey(serviceClass.getName(), method)));
+			classSlots.put(method, slot);
+		}
+		return slot.get();
+	}
+
+	/**
+	 * Find the active filter of a method on a service class, on the class
+	 * only or on its type hierarchy (see {@link TypeHierarchy})
+	 * <p>
+	 * The first type of the hierarchy with a filter gives the filter, the
+	 * result is kept by class and method
+	 *
+	 * @param serviceClass
+	 *            the service class
+	 * @param extendToInterfaces
+	 *            a boolean indicate if the search of filter is done on the
+	 *            type hierarchy too or not
+	 * @param method
+	 *            the method invoked
+	 * @return the active filter, null if there is no filter
+	 */
+	public Filter<?> find(Class<?> serviceClass, boolean extendToInterfaces, Method method) {
+		if (!extendToInterfaces)
+			return get(serviceClass, method);
+
+		ConcurrentMap<Method, Slot> classSlots = slots.get(serviceClass).hierarchy;
+		Slot slot = classSlots.get(method);
+		if (slot == null) {
+			Filter<?> filter = null;
+			for (Class<?> type : TypeHierarchy.of(serviceClass)) {
+				filter = get(type, method);
+				if (filter != null)
+					break;
+			}
+			slot = new Slot(filter);
+			classSlots.put(method, slot);
+		}
+		return slot.get();
+	}
+
+	private FilteredClass getFilteredClass(Class<?> serviceClass) {
+		if (filteredClassNames.containsKey(serviceClass.getName()))
+			return FilteredClass.CLASS;
+		for (Class<?> type : TypeHierarchy.of(serviceClass))
+			if (filteredClassNames.containsKey(type.getName()))
+				return FilteredClass.HIERARCHY;
+		return FilteredClass.NONE;
+	}
+
+	private void addNames(String key) {
+		int methodStart = key.lastIndexOf('.', key.indexOf('('));
+		increment(filteredClassNames, key.substring(0, methodStart), 1);
+		increment(filteredMethodNames, key.substring(methodStart + 1, key.indexOf('(')), 1);
+	}
+
+	private void removeNames(String key) {
+		int methodStart = key.lastIndexOf('.', key.indexOf('('));
+		increment(filteredClassNames, key.substring(0, methodStart), -1);
+		increment(filteredMethodNames, key.substring(methodStart + 1, key.indexOf('(')), -1);
+	}
+
+	/**
+	 * Change the number of keys of a name, the name is removed without key
+	 */
+	private static void increment(Map<String, Integer> counts, String name, int delta) {
+		Integer count = counts.get(name);
+		int newCount = (count != null ? count.intValue() : 0) + delta;
+		if (newCount > 0)
+			counts.put(name, Integer.valueOf(newCount));
+		else
+			counts.remove(name);
+	}
+
+	/**
+	 * Build the key of a method of a service
+	 *
+	 * @param serviceClassName
+	 *            the name of the class of the service
+	 * @param method
+	 *            the method (can be declared in a service or a filter class)
+	 * @return the key: service class name, method name and parameter types
+	 */
+	public static String getKey(String serviceClassName, Method method) {
+		return appendSignature(new StringBuilder(serviceClassName).append('.'), method).toString();
+	}
+
+	/**
+	 * Build the signature of a method, the end of its keys
+	 *
+	 * @param method
+	 *            the method
+	 * @return the signature: method name and parameter types
+	 * @see #getKey(String, Method)
+	 */
+	public static String getSignature(Method method) {
+		return appendSignature(new StringBuilder(), method).toString();
+	}
+
+	/**
+	 * Extract the signature of a method from its key
+	 *
+	 * @param key
+	 *            a key built by {@link #getKey(String, Method)}
+	 * @return the signature: method name and parameter types
+	 */
+	public static String getSignature(String key) {
+		return key.substring(key.lastIndexOf('.', key.indexOf('(')) + 1);
+	}
+
+	private static StringBuilder appendSignature(StringBuilder key, Method method) {
+		key.append(method.getName()).append('(');
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (i > 0)
+				key.append(',');
+			key.append(parameterTypes[i].getName());
+		}
+		return key.append(')');
+	}
+
+	/**
+	 * Filter presence on a service class
+	 */
+	private enum FilteredClass {
+		/**
+		 * No filter on the class nor on its type hierarchy
+		 */
+		NONE(false, false),
+		/**
+		 * Filters on superclasses or interfaces of the class only
+		 */
+		HIERARCHY(false, true),
+		/**
+		 * Filters on the class
+		 */
+		CLASS(true, true);
+
+		private final boolean itself;
+		private final boolean withHierarchy;
+
+		private FilteredClass(boolean itself, boolean withHierarchy) {
+			this.itself = itself;
+			this.withHierarchy = withHierarchy;
+		}
+	}
+
+	/**
+	 * Filters found for the methods of a service class
+	 */
+	private static final class ClassSlots {
+		private final FilteredClass filteredClass;
+
+		/**
+		 * Filters registered on the class
+		 */
+		private final ConcurrentMap<Method, Slot> own = new ConcurrentHashMap<Method, Slot>();
+
+		/**
+		 * Filters found on the type hierarchy
+		 */
+		private final ConcurrentMap<Method, Slot> hierarchy = new ConcurrentHashMap<Method, Slot>();
+
+		private ClassSlots(FilteredClass filteredClass) {
+			this.filteredClass = filteredClass;
+		}
+	}
+
+	/**
+	 * Filter found for a method, null filter is stored too
+	 * <p>
+	 * Weak reference: the filters are kept by the table, but a value stored in
+	 * a class can outlive its {@link ClassValue} in the class cache, it must
+	 * not keep the filters (and their class loaders) of an old table
+	 */
+	private static final class Slot extends WeakReference<Filter<?>> {
+		private Slot(Filter<?> filter) {
+			super(filter);
+		}
+	}
+}
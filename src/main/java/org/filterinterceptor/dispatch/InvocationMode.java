@@ -0,0 +1,39 @@
+package org.filterinterceptor.dispatch;
+
+/**
+ * The way a filtered or a real service method is called
+ *
+ * @see MethodInvoker
+ */
+public enum InvocationMode {
+	/**
+	 * Call the method with {@link java.lang.reflect.Method#invoke(Object, Object...)}
+	 */
+	REFLECTION,
+
+	/**
+	 * Call the method with a {@link java.lang.invoke.MethodHandle} created
+	 * once by method: no reflection and no exception wrapping on each call.
+	 * The handle is a constant of a class generated for the method (when
+	 * cglib is present), so the JIT inlines the call
+	 */
+	METHOD_HANDLE,
+
+	/**
+	 * Bind each method of a bytecode proxy in a
+	 * {@link java.lang.invoke.MutableCallSite}, constant of the proxy class,
+	 * guarded by a {@link java.lang.invoke.SwitchPoint}: a method without
+	 * filter goes straight to the real service until its active filter
+	 * changes. Filtered methods and calls which don't come from a bytecode
+	 * proxy created in this mode use method handles: dynamic proxies and
+	 * {@link org.filterinterceptor.FilterService#invoke(Object, boolean, java.lang.reflect.Method, Object...)}
+	 * fall back to {@link #METHOD_HANDLE}.
+	 * <p>
+	 * The calls of the real service from a call site are plain calls, neither
+	 * counted nor sampled in the dispatch statistics
+	 *
+	 * @see SignatureSwitchPoints
+	 * @see org.filterinterceptor.proxy.bytecode.BytecodeProxyFactory
+	 */
+	CALL_SITE
+}
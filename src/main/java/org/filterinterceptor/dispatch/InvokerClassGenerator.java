@@ -0,0 +1,129 @@
+package org.filterinterceptor.dispatch;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.cglib.asm.ClassWriter;
+import net.sf.cglib.asm.MethodVisitor;
+import net.sf.cglib.asm.Opcodes;
+import net.sf.cglib.asm.Type;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generate the class of a method handle invoker
+ * <p>
+ * The handle is kept in a static final field of the generated class, so the
+ * JIT inlines the call through it:
+ *
+ * <pre>
+ * private static final MethodHandle HANDLE = ConstantHandles.get(0);
+ *
+ * public Object invoke(Object target, Object[] args) throws Throwable {
+ * 	return HANDLE.invokeExact(target, args);
+ * }
+ * </pre>
+ *
+ * Each class has its own class loader, so it is unloaded with its invoker.
+ */
+final class InvokerClassGenerator implements Opcodes {
+
+	private static final Logger logger = LoggerFactory.getLogger(InvokerClassGenerator.class);
+
+	/**
+	 * Version of the generated classes, Java 7 for invokeExact
+	 */
+	private static final int V1_7 = 51;
+
+	private static final String INVOKER_CLASS_SUFFIX = "$$Handle$$";
+	private static final String HANDLE_FIELD = "HANDLE";
+	private static final String HANDLE_NAME = Type.getInternalName(MethodHandle.class);
+	private static final String HANDLE_DESC = Type.getDescriptor(MethodHandle.class);
+	private static final String INVOKE_DESC = "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;";
+
+	/**
+	 * Counter used to build unique class names
+	 */
+	private static final AtomicInteger invokerClassCounter = new AtomicInteger();
+
+	private InvokerClassGenerator() {
+	}
+
+	/**
+	 * Generate the invoker of a method
+	 *
+	 * @param method
+	 *            the method called, for the logs
+	 * @param handle
+	 *            the handle of type (Object, Object[])Object calling the
+	 *            method
+	 * @return the invoker
+	 */
+	static MethodInvoker generate(Method method, MethodHandle handle) {
+		String className = MethodInvoker.class.getName() + INVOKER_CLASS_SUFFIX
+				+ invokerClassCounter.incrementAndGet();
+		String internalClassName = className.replace('.', '/');
+		String superName = Type.getInternalName(MethodInvoker.class);
+		logger.debug("Generate invoker class {} for {}", className, method);
+
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(V1_7, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, internalClassName, null, superName, null);
+		cw.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, HANDLE_FIELD, HANDLE_DESC, null, null).visitEnd();
+
+		// Static initializer
+		MethodVisitor mv = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+		mv.visitCode();
+		mv.visitInsn(ICONST_0);
+		mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(ConstantHandles.class), "get", "(I)" + HANDLE_DESC);
+		mv.visitFieldInsn(PUTSTATIC, internalClassName, HANDLE_FIELD, HANDLE_DESC);
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		// Constructor
+		mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V");
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		// Invoke
+		mv = cw.visitMethod(ACC_PUBLIC, "invoke", INVOKE_DESC, null, new String[] { "java/lang/Throwable" });
+		mv.visitCode();
+		mv.visitFieldInsn(GETSTATIC, internalClassName, HANDLE_FIELD, HANDLE_DESC);
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitVarInsn(ALOAD, 2);
+		mv.visitMethodInsn(INVOKEVIRTUAL, HANDLE_NAME, "invokeExact", INVOKE_DESC);
+		mv.visitInsn(ARETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+
+		byte[] bytecode = cw.toByteArray();
+		Class<?> invokerClass = new InvokerClassLoader().define(className, bytecode);
+		try {
+			return (MethodInvoker) ConstantHandles.initialize(invokerClass, handle).newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Generated invoker " + className + " can't be created", e);
+		}
+	}
+
+	/**
+	 * Class loader of one generated invoker class, child of the loader of
+	 * this API
+	 */
+	private static final class InvokerClassLoader extends ClassLoader {
+
+		private InvokerClassLoader() {
+			super(MethodInvoker.class.getClassLoader());
+		}
+
+		private Class<?> define(String name, byte[] bytecode) {
+			return defineClass(name, bytecode, 0, bytecode.length);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package org.filterinterceptor.dispatch;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Call a method on a target: the real service or a filter implementation
+ * <p>
+ * An invoker is created once by method and can be used with any target
+ * implementing the method
+ *
+ * @see InvocationMode
+ */
+public abstract class MethodInvoker {
+
+	private static final Logger logger = LoggerFactory.getLogger(MethodInvoker.class);
+
+	private static final Object[] NO_ARGS = new Object[0];
+
+	/**
+	 * Generic type of the handles used by {@link MethodHandleInvoker}
+	 */
+	private static final MethodType GENERIC_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+	/**
+	 * Call the method
+	 *
+	 * @param target
+	 *            the object on which the method is called
+	 * @param args
+	 *            parameters to give to the method called, can be null if the
+	 *            method has no parameter
+	 * @return the returned object (boxed if primitive, null if void)
+	 * @throws Throwable
+	 *             if invoked method throw one
+	 */
+	public abstract Object invoke(Object target, Object[] args) throws Throwable;
+
+	/**
+	 * Create the invoker of a method
+	 *
+	 * @param method
+	 *            the method to call
+	 * @param mode
+	 *            the way to call the method
+	 * @return the invoker, a reflection one if the method can't be accessed by
+	 *         a method handle
+	 */
+	public static MethodInvoker create(Method method, InvocationMode mode) {
+		if (mode != InvocationMode.REFLECTION) {
+			MethodHandle handle;
+			try {
+				handle = MethodHandles.publicLookup().unreflect(method)
+						.asSpreader(Object[].class, method.getParameterTypes().length).asType(GENERIC_TYPE);
+			} catch (IllegalAccessException e) {
+				logger.debug("Can't create method handle on {}, use reflection: {}", method, e.getMessage());
+				return new ReflectionInvoker(method);
+			}
+			try {
+				return InvokerClassGenerator.generate(method, handle);
+			} catch (LinkageError e) {
+				// cglib is optional
+				logger.debug("Can't generate invoker class of {}, keep the handle in a field: {}", method,
+						e.toString());
+				return new MethodHandleInvoker(handle);
+			}
+		}
+		return new ReflectionInvoker(method);
+	}
+
+	/**
+	 * Invoker using reflection
+	 */
+	private static final class ReflectionInvoker extends MethodInvoker {
+		private final Method method;
+
+		private ReflectionInvoker(Method method) {
+			this.method = method;
+		}
+
+		@Override
+		public Object invoke(Object target, Object[] args) throws Throwable {
+			try {
+				return method.invoke(target, args);
+			} catch (Throwable t) {
+				if (t.getCause() != null)
+					// Method invoke add a Exception level in the stack
+					throw t.getCause();
+				else
+					throw t;
+			}
+		}
+	}
+
+	/**
+	 * Invoker using a method handle of type (Object, Object[])Object, used
+	 * when the invoker class can't be generated (see
+	 * {@link InvokerClassGenerator})
+	 */
+	private static final class MethodHandleInvoker extends MethodInvoker {
+		private final MethodHandle handle;
+
+		private MethodHandleInvoker(MethodHandle handle) {
+			this.handle = handle;
+		}
+
+		@Override
+		public Object invoke(Object target, Object[] args) throws Throwable {
+			return handle.invokeExact(target, args != null ? args : NO_ARGS);
+		}
+	}
+}
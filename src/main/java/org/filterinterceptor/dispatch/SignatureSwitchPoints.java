@@ -0,0 +1,88 @@
+package org.filterinterceptor.dispatch;
+
+import java.lang.invoke.SwitchPoint;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.filterinterceptor.spi.Filter;
+
+/**
+ * Switch points by method signature (see
+ * {@link DispatchTable#getSignature(Method)})
+ * <p>
+ * A switch point guards the call sites bound to the methods with its signature
+ * whatever the service: it is invalidated when the active filter of one of
+ * these methods changes, then replaced by a new one on next access.
+ */
+public class SignatureSwitchPoints {
+
+	private final ConcurrentMap<String, SwitchPoint> switchPoints = new ConcurrentHashMap<String, SwitchPoint>();
+
+	/**
+	 * Get the valid switch point of a method
+	 * <p>
+	 * Must be called before the target of the method is searched, so a change
+	 * done during the search invalidates the switch point returned
+	 *
+	 * @param method
+	 *            the method
+	 * @return the switch point of the method signature
+	 */
+	public SwitchPoint get(Method method) {
+		String signature = DispatchTable.getSignature(method);
+		SwitchPoint switchPoint = switchPoints.get(signature);
+		if (switchPoint == null) {
+			switchPoint = new SwitchPoint();
+			SwitchPoint other = switchPoints.putIfAbsent(signature, switchPoint);
+			if (other != null)
+				switchPoint = other;
+		}
+		return switchPoint;
+	}
+
+	/**
+	 * Invalidate the switch points of the methods whose active filter is not
+	 * the same in two configurations
+	 *
+	 * @param oldFilters
+	 *            the active filters by key of the previous configuration
+	 * @param newFilters
+	 *            the active filters by key of the new configuration
+	 * @return the signatures invalidated
+	 */
+	public Set<String> invalidateChanges(Map<String, Filter<?>> oldFilters, Map<String, Filter<?>> newFilters) {
+		Set<String> signatures = new HashSet<String>();
+		for (Map.Entry<String, Filter<?>> entry : oldFilters.entrySet())
+			if (newFilters.get(entry.getKey()) != entry.getValue())
+				signatures.add(DispatchTable.getSignature(entry.getKey()));
+		for (String key : newFilters.keySet())
+			if (!oldFilters.containsKey(key))
+				signatures.add(DispatchTable.getSignature(key));
+		invalidate(signatures);
+		return signatures;
+	}
+
+	/**
+	 * Invalidate the switch points of all methods
+	 */
+	public void invalidateAll() {
+		invalidate(new HashSet<String>(switchPoints.keySet()));
+	}
+
+	private void invalidate(Set<String> signatures) {
+		List<SwitchPoint> invalidated = new ArrayList<SwitchPoint>();
+		for (String signature : signatures) {
+			SwitchPoint switchPoint = switchPoints.remove(signature);
+			if (switchPoint != null)
+				invalidated.add(switchPoint);
+		}
+		if (!invalidated.isEmpty())
+			SwitchPoint.invalidateAll(invalidated.toArray(new SwitchPoint[invalidated.size()]));
+	}
+}
@@ -0,0 +1,62 @@
+package org.filterinterceptor.dispatch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Types on which the filters of a service class are searched, in order:
+ * <ol>
+ * <li>the class itself
+ * <li>its superclasses, from the nearest ({@link Object} excluded)
+ * <li>its interfaces, breadth first: direct interfaces of the class then of
+ * its superclasses in declaration order, then their super-interfaces
+ * </ol>
+ * Each type appears once. Computed once by class.
+ */
+public final class TypeHierarchy {
+
+	private static final ClassValue<Class<?>[]> HIERARCHIES = new ClassValue<Class<?>[]>() {
+		@Override
+		protected Class<?>[] computeValue(Class<?> type) {
+			return compute(type);
+		}
+	};
+
+	private TypeHierarchy() {
+	}
+
+	/**
+	 * Get the types on which the filters of a class are searched
+	 *
+	 * @param type
+	 *            the service class
+	 * @return the class, its superclasses and its interfaces in search order,
+	 *         must not be modified
+	 */
+	public static Class<?>[] of(Class<?> type) {
+		return HIERARCHIES.get(type);
+	}
+
+	private static Class<?>[] compute(Class<?> type) {
+		Set<Class<?>> hierarchy = new LinkedHashSet<Class<?>>();
+
+		// classes
+		List<Class<?>> interfaces = new ArrayList<Class<?>>();
+		for (Class<?> c = type; c != null && (c == type || c != Object.class); c = c.getSuperclass()) {
+			hierarchy.add(c);
+			for (Class<?> i : c.getInterfaces())
+				interfaces.add(i);
+		}
+
+		// interfaces, breadth first
+		for (int i = 0; i < interfaces.size(); i++) {
+			Class<?> anInterface = interfaces.get(i);
+			if (hierarchy.add(anInterface))
+				for (Class<?> superInterface : anInterface.getInterfaces())
+					interfaces.add(superInterface);
+		}
+		return hierarchy.toArray(new Class<?>[hierarchy.size()]);
+	}
+}
@@ -0,0 +1,299 @@
+package org.filterinterceptor.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.filterinterceptor.spi.IndexedFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the filters of a JAR, written at compilation by
+ * {@link FilterIndexProcessor} for filters with {@link IndexedFilter}
+ * annotation
+ * <p>
+ * The index is the resource {@value #RESOURCE}, a UTF-8 text file with one
+ * filter by line, fields separated by tabulations: filter class, description,
+ * priority, service class, service implementation class, then the signatures
+ * of the filtered methods (name and parameter types, e.g.
+ * <code>test1(org.sample.Dto)</code>). Lines starting with # are comments.
+ */
+public final class FilterIndex {
+
+	private static final Logger logger = LoggerFactory.getLogger(FilterIndex.class);
+
+	/**
+	 * Name of the index resource
+	 */
+	public static final String RESOURCE = "META-INF/filter-interceptor/filters.index";
+
+	private static final String ENCODING = "UTF-8";
+	private static final char SEPARATOR = '\t';
+	private static final int FIXED_FIELDS = 5;
+
+	/**
+	 * Entries by filter class name
+	 */
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+	/**
+	 * Constructor with fields, the first entry of a filter class is kept
+	 *
+	 * @param entries
+	 *            the entries of the index
+	 */
+	public FilterIndex(Collection<Entry> entries) {
+		for (Entry entry : entries)
+			if (!this.entries.containsKey(entry.getFilterClassName()))
+				this.entries.put(entry.getFilterClassName(), entry);
+	}
+
+	/**
+	 * Read all the indexes visible by a class loader (its parents included),
+	 * the first entry of a filter class is kept
+	 * <p>
+	 * Malformed lines are logged and ignored
+	 *
+	 * @param classLoader
+	 *            the class loader
+	 * @return the filters of all the indexes, empty if there is no index
+	 * @throws IOException
+	 *             if an index can't be read
+	 */
+	public static FilterIndex read(ClassLoader classLoader) throws IOException {
+		return read(classLoader.getResources(RESOURCE));
+	}
+
+	/**
+	 * Read indexes, the first entry of a filter class is kept
+	 * <p>
+	 * Malformed lines are logged and ignored. Indexes are read without the
+	 * JAR cache of {@link URLConnection}: a replaced JAR file is read again
+	 * and the file is closed after the read.
+	 *
+	 * @param resources
+	 *            the URLs of the indexes
+	 * @return the filters of all the indexes, empty if there is no index
+	 * @throws IOException
+	 *             if an index can't be read
+	 */
+	public static FilterIndex read(Enumeration<URL> resources) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		while (resources.hasMoreElements()) {
+			URL resource = resources.nextElement();
+			logger.debug("Read filter index {}", resource);
+			URLConnection connection = resource.openConnection();
+			connection.setUseCaches(false);
+			InputStream in = connection.getInputStream();
+			try {
+				entries.addAll(read(new InputStreamReader(in, ENCODING), resource.toString()));
+			} finally {
+				in.close();
+			}
+		}
+		return new FilterIndex(entries);
+	}
+
+	/**
+	 * Read the entries of an index
+	 *
+	 * @param reader
+	 *            the index content
+	 * @param name
+	 *            the name of the index, for logs
+	 * @return the entries of the index
+	 * @throws IOException
+	 *             if the index can't be read
+	 */
+	static List<Entry> read(Reader reader, String name) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		BufferedReader in = new BufferedReader(reader);
+		String line;
+		for (int lineNumber = 1; (line = in.readLine()) != null; lineNumber++) {
+			if (line.isEmpty() || line.charAt(0) == '#')
+				continue;
+			List<String> fields = split(line);
+			try {
+				if (fields.size() < FIXED_FIELDS)
+					throw new IllegalArgumentException("missing fields");
+				entries.add(new Entry(fields.get(0), fields.get(1), Integer.parseInt(fields.get(2)), fields.get(3),
+						fields.get(4), fields.subList(FIXED_FIELDS, fields.size())));
+			} catch (IllegalArgumentException e) {
+				logger.error("Malformed line {} in filter index {}, line ignored: {}", new Object[] { lineNumber,
+						name, e.getMessage() });
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Write the index
+	 *
+	 * @param writer
+	 *            the destination, not closed
+	 * @throws IOException
+	 *             if the index can't be written
+	 */
+	public void write(Writer writer) throws IOException {
+		writer.write("# Filter index: filter, description, priority, service, implementation, filtered methods\n");
+		for (Entry entry : entries.values()) {
+			StringBuilder line = new StringBuilder();
+			line.append(entry.getFilterClassName()).append(SEPARATOR).append(entry.getDescription())
+					.append(SEPARATOR).append(entry.getPriority()).append(SEPARATOR)
+					.append(entry.getServiceClassName()).append(SEPARATOR).append(entry.getImplementationClassName());
+			for (String signature : entry.getSignatures())
+				line.append(SEPARATOR).append(signature);
+			writer.write(line.append('\n').toString());
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Get the entry of a filter
+	 *
+	 * @param filterClassName
+	 *            the name of the filter class
+	 * @return the entry of the filter, null if the filter is not indexed
+	 */
+	public Entry get(String filterClassName) {
+		return entries.get(filterClassName);
+	}
+
+	/**
+	 * Get all the entries
+	 *
+	 * @return the entries, unmodifiable
+	 */
+	public Collection<Entry> getEntries() {
+		return Collections.unmodifiableCollection(entries.values());
+	}
+
+	/**
+	 * Returns the number of filters in the index
+	 *
+	 * @return the number of filters
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	private static List<String> split(String line) {
+		List<String> fields = new ArrayList<String>();
+		int start = 0;
+		for (int end; (end = line.indexOf(SEPARATOR, start)) >= 0; start = end + 1)
+			fields.add(line.substring(start, end));
+		fields.add(line.substring(start));
+		return fields;
+	}
+
+	/**
+	 * A filter of the index
+	 */
+	public static final class Entry {
+
+		private final String filterClassName;
+		private final String description;
+		private final int priority;
+		private final String serviceClassName;
+		private final String implementationClassName;
+		private final List<String> signatures;
+
+		/**
+		 * Constructor with fields
+		 *
+		 * @param filterClassName
+		 *            the name of the filter class
+		 * @param description
+		 *            the description of the filter
+		 * @param priority
+		 *            the priority of the filter
+		 * @param serviceClassName
+		 *            the name of the service class
+		 * @param implementationClassName
+		 *            the name of the service implementation class
+		 * @param signatures
+		 *            the signatures of the filtered methods
+		 * @throws IllegalArgumentException
+		 *             if a field contains a line break or a tabulation
+		 */
+		public Entry(String filterClassName, String description, int priority, String serviceClassName,
+				String implementationClassName, List<String> signatures) {
+			this.filterClassName = check(filterClassName);
+			this.description = check(description);
+			this.priority = priority;
+			this.serviceClassName = check(serviceClassName);
+			this.implementationClassName = check(implementationClassName);
+			for (String signature : signatures)
+				check(signature);
+			this.signatures = Collections.unmodifiableList(Arrays.asList(signatures.toArray(new String[0])));
+		}
+
+		private static String check(String field) {
+			if (field.indexOf(SEPARATOR) >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0)
+				throw new IllegalArgumentException("Filter index field can't contain tabulation nor line break: "
+						+ field);
+			return field;
+		}
+
+		/**
+		 * @return the name of the filter class
+		 */
+		public String getFilterClassName() {
+			return filterClassName;
+		}
+
+		/**
+		 * @return the description of the filter
+		 */
+		public String getDescription() {
+			return description;
+		}
+
+		/**
+		 * @return the priority of the filter
+		 */
+		public int getPriority() {
+			return priority;
+		}
+
+		/**
+		 * @return the name of the service class
+		 */
+		public String getServiceClassName() {
+			return serviceClassName;
+		}
+
+		/**
+		 * @return the name of the service implementation class
+		 */
+		public String getImplementationClassName() {
+			return implementationClassName;
+		}
+
+		/**
+		 * @return the signatures of the filtered methods, unmodifiable
+		 */
+		public List<String> getSignatures() {
+			return signatures;
+		}
+
+		@Override
+		public String toString() {
+			return filterClassName + " <" + description + ">";
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package org.filterinterceptor.index;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import org.filterinterceptor.spi.Filter;
+import org.filterinterceptor.spi.FilteredMethod;
+import org.filterinterceptor.spi.IndexedFilter;
+
+/**
+ * Annotation processor writing the {@link FilterIndex} of the filters with
+ * {@link IndexedFilter} annotation
+ * <p>
+ * Registered as a service: it runs when a filter JAR is compiled with this
+ * library in its classpath. A filter which can't be indexed is reported as a
+ * compilation error.
+ */
+@SupportedAnnotationTypes("org.filterinterceptor.spi.IndexedFilter")
+public class FilterIndexProcessor extends AbstractProcessor {
+
+	private final List<FilterIndex.Entry> entries = new ArrayList<FilterIndex.Entry>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getElementsAnnotatedWith(IndexedFilter.class)) {
+			FilterIndex.Entry entry = index(element);
+			if (entry != null)
+				entries.add(entry);
+		}
+		if (roundEnv.processingOver() && !entries.isEmpty())
+			writeIndex();
+		return true;
+	}
+
+	/**
+	 * Build the index entry of a filter
+	 *
+	 * @return the entry, null if an error is reported
+	 */
+	private FilterIndex.Entry index(Element element) {
+		if (element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT)
+				|| !isSubtype(element.asType(), Filter.class)) {
+			error(element, "@IndexedFilter must be set on a concrete subclass of " + Filter.class.getName());
+			return null;
+		}
+		TypeElement filter = (TypeElement) element;
+		IndexedFilter indexedFilter = filter.getAnnotation(IndexedFilter.class);
+
+		TypeElement service = getServiceClass(filter);
+		if (service == null) {
+			error(filter, "getService() of an indexed filter must return Class<ServiceClass>");
+			return null;
+		}
+
+		TypeElement implementation = getImplementationClass(filter);
+		if (implementation == null) {
+			error(filter, "Service implementation of an indexed filter must be the only nested class with "
+					+ "@FilteredMethod methods, or be set by @IndexedFilter(implementation)");
+			return null;
+		}
+
+		List<String> signatures = new ArrayList<String>();
+		for (ExecutableElement method : getFilteredMethods(implementation))
+			signatures.add(getSignature(method));
+
+		try {
+			return new FilterIndex.Entry(getBinaryName(filter), indexedFilter.description(),
+					indexedFilter.priority(), getBinaryName(service), getBinaryName(implementation), signatures);
+		} catch (IllegalArgumentException e) {
+			error(filter, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Get the service class from the return type of getService()
+	 */
+	private TypeElement getServiceClass(TypeElement filter) {
+		for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(filter))) {
+			if (method.getSimpleName().contentEquals("getService") && method.getParameters().isEmpty()
+					&& !method.getModifiers().contains(Modifier.ABSTRACT)) {
+				TypeMirror returnType = method.getReturnType();
+				if (returnType.getKind() != TypeKind.DECLARED)
+					return null;
+				List<? extends TypeMirror> typeArguments = ((DeclaredType) returnType).getTypeArguments();
+				if (typeArguments.size() != 1 || typeArguments.get(0).getKind() != TypeKind.DECLARED)
+					return null;
+				return (TypeElement) ((DeclaredType) typeArguments.get(0)).asElement();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the implementation class set by the annotation or the nested class
+	 * with filtered methods
+	 */
+	private TypeElement getImplementationClass(TypeElement filter) {
+		for (AnnotationMirror annotation : filter.getAnnotationMirrors()) {
+			if (!isType(annotation.getAnnotationType(), IndexedFilter.class))
+				continue;
+			for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : annotation
+					.getElementValues().entrySet()) {
+				if (value.getKey().getSimpleName().contentEquals("implementation")) {
+					TypeMirror implementation = (TypeMirror) value.getValue().getValue();
+					if (implementation.getKind() == TypeKind.DECLARED)
+						return (TypeElement) ((DeclaredType) implementation).asElement();
+				}
+			}
+		}
+
+		List<TypeElement> candidates = new ArrayList<TypeElement>();
+		addNestedClassesWithFilteredMethods(filter, candidates);
+		return candidates.size() == 1 ? candidates.get(0) : null;
+	}
+
+	private void addNestedClassesWithFilteredMethods(TypeElement type, List<TypeElement> candidates) {
+		for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+			if (!getFilteredMethods(nested).isEmpty())
+				candidates.add(nested);
+			addNestedClassesWithFilteredMethods(nested, candidates);
+		}
+	}
+
+	private static List<ExecutableElement> getFilteredMethods(TypeElement type) {
+		List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+		for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements()))
+			if (method.getAnnotation(FilteredMethod.class) != null)
+				methods.add(method);
+		return methods;
+	}
+
+	/**
+	 * Build the signature of a method like
+	 * {@link org.filterinterceptor.dispatch.DispatchTable#getSignature(java.lang.reflect.Method)}
+	 */
+	private String getSignature(ExecutableElement method) {
+		StringBuilder signature = new StringBuilder(method.getSimpleName()).append('(');
+		List<? extends VariableElement> parameters = method.getParameters();
+		for (int i = 0; i < parameters.size(); i++) {
+			if (i > 0)
+				signature.append(',');
+			signature.append(getClassName(processingEnv.getTypeUtils().erasure(parameters.get(i).asType())));
+		}
+		return signature.append(')').toString();
+	}
+
+	/**
+	 * Get the name of a type as given by {@link Class#getName()}
+	 */
+	private String getClassName(TypeMirror type) {
+		if (type.getKind() == TypeKind.ARRAY)
+			return "[" + getArrayComponentName(((ArrayType) type).getComponentType());
+		if (type.getKind() == TypeKind.DECLARED)
+			return getBinaryName((TypeElement) ((DeclaredType) type).asElement());
+		return type.toString();
+	}
+
+	private String getArrayComponentName(TypeMirror type) {
+		switch (type.getKind()) {
+		case ARRAY:
+			return "[" + getArrayComponentName(((ArrayType) type).getComponentType());
+		case DECLARED:
+			return "L" + getClassName(type) + ";";
+		case BOOLEAN:
+			return "Z";
+		case BYTE:
+			return "B";
+		case CHAR:
+			return "C";
+		case SHORT:
+			return "S";
+		case INT:
+			return "I";
+		case LONG:
+			return "J";
+		case FLOAT:
+			return "F";
+		case DOUBLE:
+			return "D";
+		default:
+			throw new IllegalArgumentException("Unexpected array component type: " + type);
+		}
+	}
+
+	private String getBinaryName(TypeElement type) {
+		return processingEnv.getElementUtils().getBinaryName(type).toString();
+	}
+
+	private boolean isSubtype(TypeMirror type, Class<?> superClass) {
+		TypeElement superElement = processingEnv.getElementUtils().getTypeElement(superClass.getName());
+		return superElement != null
+				&& processingEnv.getTypeUtils().isSubtype(processingEnv.getTypeUtils().erasure(type),
+						processingEnv.getTypeUtils().erasure(superElement.asType()));
+	}
+
+	private static boolean isType(DeclaredType type, Class<?> expected) {
+		return ((TypeElement) type.asElement()).getQualifiedName().contentEquals(expected.getName());
+	}
+
+	private void writeIndex() {
+		try {
+			FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+					FilterIndex.RESOURCE);
+			Writer writer = new OutputStreamWriter(resource.openOutputStream(), "UTF-8");
+			try {
+				new FilterIndex(entries).write(writer);
+			} finally {
+				writer.close();
+			}
+			processingEnv.getMessager().printMessage(Kind.NOTE,
+					"Filter index written with " + entries.size() + " filter(s)");
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.ERROR, "Can't write filter index: " + e.getMessage());
+		}
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Kind.ERROR, message, element);
+	}
+}
@@ -0,0 +1,154 @@
+package org.filterinterceptor.loader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.filterinterceptor.index.FilterIndex;
+import org.filterinterceptor.spi.Filter;
+import org.filterinterceptor.spi.LazyFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Load the filters declared for the Service Provider API (resources
+ * META-INF/services/org.filterinterceptor.spi.Filter) and their
+ * {@link FilterIndex}
+ * <p>
+ * With a {@link JarClassLoader}, only the resources of its JAR are read,
+ * otherwise all the resources visible by the class loader are read.
+ */
+public class FilterLoader {
+
+	private static final Logger logger = LoggerFactory.getLogger(FilterLoader.class);
+
+	/**
+	 * Resources declaring filters for the Service Provider API
+	 */
+	public static final String PROVIDERS_RESOURCE = "META-INF/services/" + Filter.class.getName();
+
+	private final ClassLoader classLoader;
+	private final FilterIndex index;
+
+	/**
+	 * Constructor with fields, the filter indexes are read
+	 *
+	 * @param classLoader
+	 *            the class loader of the filters
+	 */
+	public FilterLoader(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+		this.index = readFilterIndex();
+	}
+
+	/**
+	 * Get the class loader of the filters
+	 *
+	 * @return the class loader
+	 */
+	public ClassLoader getClassLoader() {
+		return classLoader;
+	}
+
+	/**
+	 * Get the filters indexed
+	 *
+	 * @return the index, empty if indexes can't be read
+	 */
+	public FilterIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Load the filters, a filter which can't be instantiated is logged and
+	 * ignored
+	 *
+	 * @param lazy
+	 *            true to return indexed filters as {@link LazyFilter}, without
+	 *            loading them
+	 * @return the filters
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public List<Filter<?>> load(boolean lazy) {
+		List<Filter<?>> filters = new ArrayList<Filter<?>>();
+		for (String filterClassName : readProviderNames()) {
+			FilterIndex.Entry entry = lazy ? index.get(filterClassName) : null;
+			if (entry != null) {
+				logger.debug("Filter {} indexed, loaded on first use", filterClassName);
+				filters.add(new LazyFilter(entry, classLoader));
+				continue;
+			}
+			try {
+				filters.add(Class.forName(filterClassName, true, classLoader).asSubclass(Filter.class)
+						.newInstance());
+			} catch (ReflectiveOperationException e) {
+				logger.error("Can't instantiate filter " + filterClassName + ", filter ignored: " + e.getMessage(), e);
+			} catch (LinkageError e) {
+				logger.error("Can't instantiate filter " + filterClassName + ", filter ignored: " + e.getMessage(), e);
+			} catch (ClassCastException e) {
+				logger.error("Can't instantiate filter " + filterClassName + ", filter ignored: " + e.getMessage(), e);
+			}
+		}
+		return filters;
+	}
+
+	/**
+	 * Read the provider names of {@link Filter}, each one once
+	 * <p>
+	 * Files are read without the JAR cache of {@link URLConnection}, like the
+	 * index (see {@link FilterIndex#read(Enumeration)})
+	 *
+	 * @return the class names of the filters
+	 */
+	private Set<String> readProviderNames() {
+		Set<String> names = new LinkedHashSet<String>();
+		try {
+			Enumeration<URL> resources = getResources(PROVIDERS_RESOURCE);
+			while (resources.hasMoreElements()) {
+				URL resource = resources.nextElement();
+				URLConnection connection = resource.openConnection();
+				connection.setUseCaches(false);
+				BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
+				try {
+					String line;
+					while ((line = in.readLine()) != null) {
+						int comment = line.indexOf('#');
+						String name = (comment >= 0 ? line.substring(0, comment) : line).trim();
+						if (!name.isEmpty())
+							names.add(name);
+					}
+				} finally {
+					in.close();
+				}
+			}
+		} catch (IOException e) {
+			logger.error("Can't read filter providers: " + e.getMessage(), e);
+		}
+		return names;
+	}
+
+	private FilterIndex readFilterIndex() {
+		try {
+			FilterIndex filterIndex = FilterIndex.read(getResources(FilterIndex.RESOURCE));
+			logger.debug("{} filters indexed", filterIndex.size());
+			return filterIndex;
+		} catch (IOException e) {
+			logger.error("Can't read filter indexes, filters are read by reflection: " + e.getMessage(), e);
+			return new FilterIndex(Collections.<FilterIndex.Entry> emptyList());
+		}
+	}
+
+	private Enumeration<URL> getResources(String name) throws IOException {
+		if (classLoader instanceof JarClassLoader)
+			return ((JarClassLoader) classLoader).getOwnResources(name);
+		return classLoader.getResources(name);
+	}
+}
@@ -0,0 +1,61 @@
+package org.filterinterceptor.loader;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Enumeration;
+
+/**
+ * Class loader of one filter JAR
+ * <p>
+ * Classes are searched in the parent first, but the resources of the JAR
+ * itself can be read alone: providers and indexes of other JARs or of the
+ * parent are not read again when one JAR is loaded.
+ */
+public class JarClassLoader extends URLClassLoader {
+
+	private final JarFingerprint fingerprint;
+
+	/**
+	 * Constructor with fields
+	 *
+	 * @param fingerprint
+	 *            the fingerprint of the JAR file
+	 * @param parent
+	 *            the parent class loader
+	 * @throws IOException
+	 *             if the path of the JAR is not a valid URL
+	 */
+	public JarClassLoader(JarFingerprint fingerprint, ClassLoader parent) throws IOException {
+		super(new URL[] { new File(fingerprint.getPath()).toURI().toURL() }, parent);
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * Get the fingerprint of the JAR loaded
+	 *
+	 * @return the fingerprint of the JAR
+	 */
+	public JarFingerprint getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Find the resources with a name in the JAR only, not in the parent
+	 *
+	 * @param name
+	 *            the resource name
+	 * @return the URLs of the resources
+	 * @throws IOException
+	 *             if the JAR can't be read
+	 */
+	public Enumeration<URL> getOwnResources(String name) throws IOException {
+		return findResources(name);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + fingerprint.getPath() + "]";
+	}
+}
@@ -0,0 +1,157 @@
+package org.filterinterceptor.loader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Identity of a JAR file: its path, size, last modification time and content
+ * hash
+ * <p>
+ * Size and modification time are checked first, the content is hashed again
+ * only if they changed.
+ */
+public final class JarFingerprint {
+
+	private static final String HASH_ALGORITHM = "SHA-256";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final String path;
+	private final long size;
+	private final long lastModified;
+	private final String hash;
+
+	/**
+	 * Constructor with fields
+	 *
+	 * @param path
+	 *            the canonical path of the file
+	 * @param size
+	 *            the size of the file
+	 * @param lastModified
+	 *            the last modification time of the file
+	 * @param hash
+	 *            the hash of the file content, in hexadecimal
+	 */
+	public JarFingerprint(String path, long size, long lastModified, String hash) {
+		this.path = path;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.hash = hash;
+	}
+
+	/**
+	 * Read the fingerprint of a file, its content is hashed
+	 *
+	 * @param file
+	 *            the JAR file
+	 * @return the fingerprint of the file
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public static JarFingerprint of(File file) throws IOException {
+		long size = file.length();
+		long lastModified = file.lastModified();
+		return new JarFingerprint(file.getCanonicalPath(), size, lastModified, hash(file));
+	}
+
+	/**
+	 * Indicate if a file may be the one of this fingerprint: same size and
+	 * modification time (content is not read)
+	 *
+	 * @param file
+	 *            the file at the same path
+	 * @return true if size and modification time are unchanged
+	 */
+	public boolean isUnmodified(File file) {
+		return file.length() == size && file.lastModified() == lastModified;
+	}
+
+	/**
+	 * Indicate if the content of a file is the same as the one of this
+	 * fingerprint
+	 *
+	 * @param other
+	 *            the fingerprint of the file at the same path
+	 * @return true if content hashes are equal
+	 */
+	public boolean hasSameContent(JarFingerprint other) {
+		return size == other.size && hash.equals(other.hash);
+	}
+
+	private static String hash(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[8192];
+			for (int read; (read = in.read(buffer)) >= 0;)
+				digest.update(buffer, 0, read);
+		} finally {
+			in.close();
+		}
+		byte[] bytes = digest.digest();
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+			hex[i * 2 + 1] = HEX[bytes[i] & 0xF];
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * @return the canonical path of the file
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return the size of the file
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the last modification time of the file
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * @return the hash of the file content, in hexadecimal
+	 */
+	public String getHash() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this)
+			return true;
+		if (!(obj instanceof JarFingerprint))
+			return false;
+		JarFingerprint other = (JarFingerprint) obj;
+		return path.equals(other.path) && size == other.size && lastModified == other.lastModified
+				&& hash.equals(other.hash);
+	}
+
+	@Override
+	public int hashCode() {
+		return path.hashCode() * 31 + hash.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s (size: %d, modified: %d, hash: %s)", path, size, lastModified, hash);
+	}
+}
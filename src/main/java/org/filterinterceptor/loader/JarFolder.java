@@ -0,0 +1,277 @@
+package org.filterinterceptor.loader;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The JAR files of a folder, each one loaded by its own class loader
+ * <p>
+ * JARs are tracked by path, size, modification time and content hash: a scan
+ * creates class loaders only for new JARs and JARs whose content changed.
+ * Unchanged JARs are not read again (a JAR whose size or modification time
+ * changed is hashed).
+ */
+public class JarFolder {
+
+	private static final Logger logger = LoggerFactory.getLogger(JarFolder.class);
+
+	private final File folder;
+	private final ClassLoader parent;
+
+	/**
+	 * Loaded JARs by canonical path, guarded by this
+	 */
+	private final Map<String, JarClassLoader> loaders = new HashMap<String, JarClassLoader>();
+
+	/**
+	 * Last fingerprint of the loaded JARs by canonical path (modification time
+	 * can be newer than the one of the loader), guarded by this
+	 */
+	private final Map<String, JarFingerprint> fingerprints = new HashMap<String, JarFingerprint>();
+
+	/**
+	 * Constructor with fields
+	 *
+	 * @param folder
+	 *            the folder of JAR files
+	 * @param parent
+	 *            the parent of the JAR class loaders
+	 */
+	public JarFolder(File folder, ClassLoader parent) {
+		this.folder = folder;
+		this.parent = parent;
+	}
+
+	/**
+	 * Compare the JAR files of the folder with the loaded ones
+	 *
+	 * @return the class loaders created for new or changed JARs, and the
+	 *         class loaders of changed or removed JARs
+	 * @throws IOException
+	 *             if the folder is not found
+	 */
+	public Changes scan() throws IOException {
+		return scan(null);
+	}
+
+	/**
+	 * Compare the JAR files of the folder with the loaded ones, the new or
+	 * modified JARs are hashed by an executor
+	 * <p>
+	 * The result does not depend on the executor: JARs are in name order.
+	 *
+	 * @param executor
+	 *            the executor hashing the JARs, null to hash them on the
+	 *            caller thread
+	 * @return the class loaders created for new or changed JARs, and the
+	 *         class loaders of changed or removed JARs
+	 * @throws IOException
+	 *             if the folder is not found or a JAR can't be read
+	 */
+	public synchronized Changes scan(ExecutorService executor) throws IOException {
+		logger.debug("Try to find JAR in folder: {}", folder.getCanonicalPath());
+		// Check if directory exists
+		if (!folder.exists() || !folder.isDirectory())
+			throw new IOException("Extern JAR folder (" + folder.getCanonicalPath() + ") not found");
+		// Get file with .jar extension
+		File[] jarFiles = folder.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".jar");
+			}
+		});
+		if (jarFiles == null)
+			throw new IOException("Extern JAR folder (" + folder.getCanonicalPath() + ") can't be read");
+		// same order on each scan
+		Arrays.sort(jarFiles);
+
+		Map<String, JarFingerprint> newFingerprints = fingerprint(jarFiles, executor);
+
+		List<JarClassLoader> loaded = new ArrayList<JarClassLoader>();
+		List<JarClassLoader> unloaded = new ArrayList<JarClassLoader>();
+		Map<String, JarClassLoader> removed = new HashMap<String, JarClassLoader>(loaders);
+		for (File file : jarFiles) {
+			String path = file.getCanonicalPath();
+			JarClassLoader previous = removed.remove(path);
+			JarFingerprint fingerprint = newFingerprints.get(path);
+			if (fingerprint == null)
+				continue;
+
+			fingerprints.put(path, fingerprint);
+			if (previous != null && previous.getFingerprint().hasSameContent(fingerprint)) {
+				logger.debug("JAR touched, content unchanged: {}", file.getName());
+				continue;
+			}
+
+			logger.debug("JAR {}: {}", previous == null ? "found" : "changed", fingerprint);
+			JarClassLoader loader = new JarClassLoader(fingerprint, parent);
+			loaders.put(path, loader);
+			loaded.add(loader);
+			if (previous != null)
+				unloaded.add(previous);
+		}
+
+		for (Map.Entry<String, JarClassLoader> entry : removed.entrySet()) {
+			logger.debug("JAR removed: {}", entry.getKey());
+			loaders.remove(entry.getKey());
+			fingerprints.remove(entry.getKey());
+			unloaded.add(entry.getValue());
+		}
+		return new Changes(loaded, unloaded);
+	}
+
+	/**
+	 * Compute the fingerprints of the new or modified JARs
+	 *
+	 * @return the fingerprints by canonical path
+	 */
+	private Map<String, JarFingerprint> fingerprint(File[] jarFiles, ExecutorService executor) throws IOException {
+		Map<String, JarFingerprint> newFingerprints = new HashMap<String, JarFingerprint>();
+		List<Callable<JarFingerprint>> tasks = new ArrayList<Callable<JarFingerprint>>();
+		for (final File file : jarFiles) {
+			String path = file.getCanonicalPath();
+			JarFingerprint previous = fingerprints.get(path);
+			if (previous != null && loaders.containsKey(path) && previous.isUnmodified(file))
+				continue;
+			if (executor == null) {
+				newFingerprints.put(path, JarFingerprint.of(file));
+				continue;
+			}
+			tasks.add(new Callable<JarFingerprint>() {
+				@Override
+				public JarFingerprint call() throws IOException {
+					return JarFingerprint.of(file);
+				}
+			});
+		}
+		if (tasks.isEmpty())
+			return newFingerprints;
+
+		try {
+			for (Future<JarFingerprint> future : executor.invokeAll(tasks)) {
+				JarFingerprint fingerprint = future.get();
+				newFingerprints.put(fingerprint.getPath(), fingerprint);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("JAR scan interrupted");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IllegalStateException("Can't read JAR: " + e.getCause().getMessage(), e.getCause());
+		}
+		return newFingerprints;
+	}
+
+	/**
+	 * Get the class loaders of the JARs loaded
+	 *
+	 * @return a copy of the class loaders
+	 */
+	public synchronized Collection<JarClassLoader> getLoaders() {
+		return new ArrayList<JarClassLoader>(loaders.values());
+	}
+
+	/**
+	 * Get the state of the folder: the loaded JARs and their fingerprints
+	 *
+	 * @return a copy of the state
+	 */
+	public synchronized Snapshot getSnapshot() {
+		return new Snapshot(loaders, fingerprints);
+	}
+
+	/**
+	 * Restore a state of the folder: next scan compares the JAR files with the
+	 * JARs of this state
+	 *
+	 * @param snapshot
+	 *            a state taken by {@link #getSnapshot()} on this folder
+	 */
+	public synchronized void restore(Snapshot snapshot) {
+		loaders.clear();
+		loaders.putAll(snapshot.loaders);
+		fingerprints.clear();
+		fingerprints.putAll(snapshot.fingerprints);
+	}
+
+	/**
+	 * Get the folder of JAR files
+	 *
+	 * @return the folder
+	 */
+	public File getFolder() {
+		return folder;
+	}
+
+	/**
+	 * State of the folder at a time, immutable
+	 */
+	public static final class Snapshot {
+		private final Map<String, JarClassLoader> loaders;
+		private final Map<String, JarFingerprint> fingerprints;
+
+		Snapshot(Map<String, JarClassLoader> loaders, Map<String, JarFingerprint> fingerprints) {
+			this.loaders = new HashMap<String, JarClassLoader>(loaders);
+			this.fingerprints = new HashMap<String, JarFingerprint>(fingerprints);
+		}
+
+		/**
+		 * @return the class loaders of the JARs loaded, unmodifiable
+		 */
+		public Collection<JarClassLoader> getLoaders() {
+			return Collections.unmodifiableCollection(loaders.values());
+		}
+	}
+
+	/**
+	 * Result of a scan
+	 */
+	public static final class Changes {
+		private final List<JarClassLoader> loaded;
+		private final List<JarClassLoader> unloaded;
+
+		Changes(List<JarClassLoader> loaded, List<JarClassLoader> unloaded) {
+			this.loaded = Collections.unmodifiableList(loaded);
+			this.unloaded = Collections.unmodifiableList(unloaded);
+		}
+
+		/**
+		 * @return the class loaders created for new or changed JARs
+		 */
+		public List<JarClassLoader> getLoaded() {
+			return loaded;
+		}
+
+		/**
+		 * @return the class loaders of changed or removed JARs, no more used
+		 *         by the folder
+		 */
+		public List<JarClassLoader> getUnloaded() {
+			return unloaded;
+		}
+
+		/**
+		 * @return true if no JAR changed
+		 */
+		public boolean isEmpty() {
+			return loaded.isEmpty() && unloaded.isEmpty();
+		}
+	}
+}
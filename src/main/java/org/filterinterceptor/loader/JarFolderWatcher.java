@@ -0,0 +1,234 @@
+package org.filterinterceptor.loader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarFile;
+
+import org.filterinterceptor.FilterService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watch the JAR folder of a filter service and reload its filters when a JAR
+ * file is added, changed or removed
+ * <p>
+ * Filters are reloaded on a background thread (see
+ * {@link FilterService#initFilters()}), the new configuration is published at
+ * once: calls on services never wait for the reload. A reload starts when no
+ * JAR changed since a delay (debounce), and when all the JAR files can be
+ * opened (a JAR being copied is waited for, up to
+ * {@value #MAX_INCOMPLETE_WAITS} delays).
+ */
+public class JarFolderWatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(JarFolderWatcher.class);
+
+	/**
+	 * Default delay without change before a reload, in milliseconds
+	 */
+	public static final long DEFAULT_DEBOUNCE_MILLIS = 1000;
+
+	/**
+	 * Maximum number of delays waited for incomplete JAR files
+	 */
+	public static final int MAX_INCOMPLETE_WAITS = 10;
+
+	private final FilterService filterService;
+	private final long debounceMillis;
+	private final AtomicLong reloadCount = new AtomicLong();
+
+	private WatchService watchService;
+	private Thread thread;
+
+	/**
+	 * Constructor with default debounce delay
+	 *
+	 * @param filterService
+	 *            the filter service to reload
+	 */
+	public JarFolderWatcher(FilterService filterService) {
+		this(filterService, DEFAULT_DEBOUNCE_MILLIS);
+	}
+
+	/**
+	 * Constructor with fields
+	 *
+	 * @param filterService
+	 *            the filter service to reload
+	 * @param debounceMillis
+	 *            the delay without change before a reload, in milliseconds
+	 */
+	public JarFolderWatcher(FilterService filterService, long debounceMillis) {
+		if (filterService == null)
+			throw new IllegalArgumentException("FilterService can't be null");
+		if (filterService.getJarFolder() == null)
+			throw new IllegalArgumentException("FilterService has no JAR folder");
+		if (debounceMillis <= 0)
+			throw new IllegalArgumentException("Debounce delay must be positive: " + debounceMillis);
+		this.filterService = filterService;
+		this.debounceMillis = debounceMillis;
+	}
+
+	/**
+	 * Start to watch the JAR folder, on a daemon thread
+	 *
+	 * @throws IOException
+	 *             if the folder can't be watched
+	 */
+	public synchronized void start() throws IOException {
+		if (thread != null)
+			return;
+		Path folder = Paths.get(filterService.getJarFolder());
+		final WatchService newWatchService = FileSystems.getDefault().newWatchService();
+		try {
+			folder.register(newWatchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+		} catch (IOException e) {
+			newWatchService.close();
+			throw e;
+		}
+		logger.info("Watch JAR folder {}", folder.toAbsolutePath());
+
+		watchService = newWatchService;
+		thread = new Thread("filter-jar-folder-watcher") {
+			@Override
+			public void run() {
+				watch(newWatchService);
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop to watch the JAR folder, wait for the end of a running reload
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public void stop() throws InterruptedException {
+		Thread stopped;
+		synchronized (this) {
+			if (thread == null)
+				return;
+			stopped = thread;
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				logger.warn("Can't close watch service: " + e.getMessage(), e);
+			}
+			watchService = null;
+			thread = null;
+		}
+		stopped.join();
+		logger.info("Stop to watch JAR folder {}", filterService.getJarFolder());
+	}
+
+	/**
+	 * Indicate if the folder is watched
+	 *
+	 * @return true if started
+	 */
+	public synchronized boolean isWatching() {
+		return thread != null;
+	}
+
+	/**
+	 * Get the number of reloads done by this watcher
+	 *
+	 * @return the number of reloads
+	 */
+	public long getReloadCount() {
+		return reloadCount.get();
+	}
+
+	/**
+	 * Wait for changes, then reload after the debounce delay
+	 */
+	private void watch(WatchService service) {
+		boolean pending = false;
+		int incompleteWaits = 0;
+		try {
+			while (true) {
+				WatchKey key = pending ? service.poll(debounceMillis, TimeUnit.MILLISECONDS) : service.take();
+				if (key != null) {
+					// a change: wait for the debounce delay again
+					pending |= hasJarChange(key);
+					if (!key.reset()) {
+						logger.error("JAR folder {} can't be watched any more", filterService.getJarFolder());
+						return;
+					}
+					continue;
+				}
+
+				// no change during the delay
+				if (!areJarsComplete() && ++incompleteWaits < MAX_INCOMPLETE_WAITS) {
+					logger.debug("JAR files being copied, reload delayed");
+					continue;
+				}
+				pending = false;
+				incompleteWaits = 0;
+				reload();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			// stopped
+		}
+	}
+
+	private static boolean hasJarChange(WatchKey key) {
+		boolean jarChange = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				jarChange = true;
+			} else if (event.context().toString().endsWith(".jar")) {
+				logger.debug("JAR {}: {}", event.kind().name(), event.context());
+				jarChange = true;
+			}
+		}
+		return jarChange;
+	}
+
+	/**
+	 * Indicate if all the JAR files of the folder can be opened
+	 */
+	private boolean areJarsComplete() {
+		File[] files = new File(filterService.getJarFolder()).listFiles();
+		if (files == null)
+			return true;
+		for (File file : files) {
+			if (!file.getName().endsWith(".jar"))
+				continue;
+			try {
+				new JarFile(file).close();
+			} catch (IOException e) {
+				logger.debug("JAR {} can't be opened yet: {}", file.getName(), e.getMessage());
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void reload() {
+		logger.info("JAR folder changed, reload filters");
+		try {
+			filterService.initFilters();
+			reloadCount.incrementAndGet();
+		} catch (IOException e) {
+			logger.error("Can't reload filters: " + e.getMessage(), e);
+		} catch (RuntimeException e) {
+			logger.error("Can't reload filters: " + e.getMessage(), e);
+		}
+	}
+}
@@ -1,7 +1,11 @@
 package org.filterinterceptor.management;
 
 import java.lang.management.ManagementFactory;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -37,6 +41,11 @@ public class FilterServiceMBeansRegister implements Observer {
 	private String mBeanDomain = MBEAN_DEFAULT_DOMAIN;
 	private MBeanServer mbs = MBEAN_DEFAULT_SERVER;
 
+	/**
+	 * Filters of the registered MBeans, by MBean name
+	 */
+	private final Map<ObjectName, Filter<?>> registeredFilters = new HashMap<ObjectName, Filter<?>>();
+
 	/**
 	 * Construct Register with default domain value
 	 * 
@@ -68,7 +77,7 @@ public class FilterServiceMBeansRegister implements Observer {
 	/**
 	 * Publish managements methods in JMX Server
 	 */
-	public void initMBean() {
+	public synchronized void initMBean() {
 		logger.info("Register MBeans in domain: " + mBeanDomain);
 
 		// Register FilterService
@@ -79,9 +88,13 @@ public class FilterServiceMBeansRegister implements Observer {
 	}
 
 	/**
-	 * Refresh MBeans Filter in JMX Server
+	 * Refresh MBeans Filter in JMX Server: MBeans of unloaded or replaced
+	 * filters are unregistered
 	 */
-	public void refreshMBean() {
+	public synchronized void refreshMBean() {
+		// Unregister unloaded Filters
+		unregisterUnloadedFiltersMBean();
+
 		// Refresh Filters
 		registerFiltersMBean(true);
 	}
@@ -89,7 +102,7 @@ public class FilterServiceMBeansRegister implements Observer {
 	/**
 	 * Unpublish MBeans in JMX Server
 	 */
-	public void resetMBean() {
+	public synchronized void resetMBean() {
 		// Unregister FilterService
 		registerFilterServiceMBean(false);
 
@@ -172,12 +185,14 @@ public class FilterServiceMBeansRegister implements Observer {
 					logger.info("Register MBean FilterManagement: " + filter.getDescription());
 					if (!mbs.isRegistered(objectName)) {
 						mbs.registerMBean(new FilterManagement(filter, filterService), objectName);
+						registeredFilters.put(objectName, filter);
 						logger.debug("MBean FilterManagement registered");
 					} else {
 						logger.debug("MBean FilterManagement already registered");
 					}
 				} else {
 					logger.info("Unregister MBean FilterManagement: " + filter.getDescription());
+					registeredFilters.remove(objectName);
 					if (mbs.isRegistered(objectName)) {
 						mbs.unregisterMBean(objectName);
 						logger.debug("MBean FilterManagement unregistered");
@@ -199,6 +214,33 @@ public class FilterServiceMBeansRegister implements Observer {
 		}
 	}
 
+	/**
+	 * Unregister the MBeans of filters which are no more loaded (removed, or
+	 * replaced by a new instance), so they are no more referenced
+	 */
+	private void unregisterUnloadedFiltersMBean() {
+		Map<Filter<?>, Boolean> loadedFilters = new IdentityHashMap<Filter<?>, Boolean>();
+		for (Filter<?> filter : filterService.getAllFilters())
+			loadedFilters.put(filter, Boolean.TRUE);
+
+		for (Iterator<Map.Entry<ObjectName, Filter<?>>> it = registeredFilters.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<ObjectName, Filter<?>> registered = it.next();
+			if (loadedFilters.containsKey(registered.getValue()))
+				continue;
+			it.remove();
+			logger.info("Unregister MBean FilterManagement of unloaded filter: "
+					+ registered.getValue().getDescription());
+			try {
+				if (mbs.isRegistered(registered.getKey()))
+					mbs.unregisterMBean(registered.getKey());
+			} catch (MBeanRegistrationException e) {
+				logger.warn("Can't unregister bean: " + e.getMessage(), e);
+			} catch (InstanceNotFoundException e) {
+				logger.warn("Bean instance not found: " + e.getMessage(), e);
+			}
+		}
+	}
+
 	/*
 	 * Observer pattern implementation
 	 */
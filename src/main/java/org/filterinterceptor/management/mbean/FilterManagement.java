@@ -1,6 +1,13 @@
 package org.filterinterceptor.management.mbean;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.filterinterceptor.FilterService;
+import org.filterinterceptor.dispatch.DispatchTable;
+import org.filterinterceptor.metrics.FilterMetrics;
 import org.filterinterceptor.spi.Filter;
 
 /**
@@ -50,6 +57,47 @@ public class FilterManagement implements FilterManagementMBean {
 		return filter.getService().getSimpleName();
 	}
 
+	@Override
+	public long getInvocationCount() {
+		return filter.getMetrics().getInvocationCount();
+	}
+
+	@Override
+	public long getErrorCount() {
+		return filter.getMetrics().getErrorCount();
+	}
+
+	@Override
+	public List<String> getMethodInvocations() {
+		FilterMetrics metrics = filter.getMetrics();
+		List<String> ret = new ArrayList<String>();
+		for (Method method : metrics.getMethods())
+			ret.add(String.format("%s: %d calls, %d errors", DispatchTable.getSignature(method),
+					metrics.getInvocationCount(method), metrics.getErrorCount(method)));
+		Collections.sort(ret);
+		return ret;
+	}
+
+	@Override
+	public long getLatencyP50Nanos() {
+		return filter.getMetrics().getLatencies().getPercentile(50);
+	}
+
+	@Override
+	public long getLatencyP99Nanos() {
+		return filter.getMetrics().getLatencies().getPercentile(99);
+	}
+
+	@Override
+	public long getLatencyMaxNanos() {
+		return filter.getMetrics().getLatencies().getMax();
+	}
+
+	@Override
+	public void resetMetrics() {
+		filter.getMetrics().reset();
+	}
+
 	/*
 	 * Implementation for test (non-Javadoc)
 	 * 
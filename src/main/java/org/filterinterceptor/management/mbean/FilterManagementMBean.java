@@ -1,5 +1,7 @@
 package org.filterinterceptor.management.mbean;
 
+import java.util.List;
+
 /**
  * This interface is used by JMX API to create MBean
  */
@@ -48,4 +50,54 @@ public interface FilterManagementMBean {
 	 * @return the current priority
 	 */
 	int getPriority();
+
+	/**
+	 * Return the number of calls of the filter (RO information)
+	 * 
+	 * @return the number of calls of all methods since the last reset
+	 */
+	long getInvocationCount();
+
+	/**
+	 * Return the number of calls of the filter which threw an exception (RO
+	 * information)
+	 * 
+	 * @return the number of errors of all methods since the last reset
+	 */
+	long getErrorCount();
+
+	/**
+	 * Return the calls of each method of the filter (RO information)
+	 * 
+	 * @return a list of "method(parameter types): calls, errors" sorted by
+	 *         method
+	 */
+	List<String> getMethodInvocations();
+
+	/**
+	 * Return the median duration of the calls of the filter (RO information)
+	 * 
+	 * @return the 50th percentile in nanoseconds, 0 if no call
+	 */
+	long getLatencyP50Nanos();
+
+	/**
+	 * Return the 99th percentile of the duration of the calls of the filter
+	 * (RO information)
+	 * 
+	 * @return the 99th percentile in nanoseconds, 0 if no call
+	 */
+	long getLatencyP99Nanos();
+
+	/**
+	 * Return the longest call of the filter (RO information)
+	 * 
+	 * @return the maximum duration in nanoseconds, 0 if no call
+	 */
+	long getLatencyMaxNanos();
+
+	/**
+	 * Set the calls, errors and durations of the filter to zero
+	 */
+	void resetMetrics();
 }
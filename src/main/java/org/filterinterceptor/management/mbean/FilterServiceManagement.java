@@ -6,7 +6,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.filterinterceptor.DispatchStatistics;
 import org.filterinterceptor.FilterService;
+import org.filterinterceptor.cache.CacheStatistics;
 import org.filterinterceptor.spi.Filter;
 
 /**
@@ -25,10 +27,7 @@ public class FilterServiceManagement implements FilterServiceManagementMBean {
 	 */
 	@Override
 	public List<String> getFilters() {
-		List<String> ret = new ArrayList<String>();
-		for (Filter<?> filter : filterService.getAllFilters())
-			ret.add(filter.toString());
-		return ret;
+		return toStrings(filterService.getAllFilters());
 	}
 
 	@Override
@@ -44,6 +43,32 @@ public class FilterServiceManagement implements FilterServiceManagementMBean {
 		filterService.initFilters();
 	}
 
+	@Override
+	public List<String> stageFilters() throws IOException {
+		return toStrings(filterService.stageFilters());
+	}
+
+	@Override
+	public List<String> getStagedFilters() {
+		List<Filter<?>> stagedFilters = filterService.getStagedFilters();
+		return stagedFilters != null ? toStrings(stagedFilters) : new ArrayList<String>();
+	}
+
+	@Override
+	public boolean activateStagedFilters() {
+		return filterService.activateStagedFilters();
+	}
+
+	@Override
+	public void discardStagedFilters() {
+		filterService.discardStagedFilters();
+	}
+
+	@Override
+	public boolean rollbackFilters() {
+		return filterService.rollbackFilters();
+	}
+
 	@Override
 	public boolean isFilteredMethodCacheActive() {
 		return filterService.isCacheActive();
@@ -64,6 +89,133 @@ public class FilterServiceManagement implements FilterServiceManagementMBean {
 		return filterService.getCacheKeys();
 	}
 
+	@Override
+	public int getFilteredMethodCacheSize() {
+		return filterService.getCacheSize();
+	}
+
+	@Override
+	public int getFilteredMethodCacheMaxSize() {
+		return filterService.getCacheMaxSize();
+	}
+
+	@Override
+	public void setFilteredMethodCacheMaxSize(int maxSize) {
+		filterService.setCacheMaxSize(maxSize);
+	}
+
+	@Override
+	public long getFilteredMethodCacheHits() {
+		return filterService.getCacheStatistics().getHitCount();
+	}
+
+	@Override
+	public long getFilteredMethodCacheMisses() {
+		return filterService.getCacheStatistics().getMissCount();
+	}
+
+	@Override
+	public long getFilteredMethodCacheEvictions() {
+		return filterService.getCacheStatistics().getEvictionCount();
+	}
+
+	@Override
+	public void resetFilteredMethodCacheStatistics() {
+		filterService.getCacheStatistics().reset();
+	}
+
+	@Override
+	public double getFilteredMethodCacheHitRatio() {
+		CacheStatistics statistics = filterService.getCacheStatistics();
+		long hits = statistics.getHitCount();
+		long searches = hits + statistics.getMissCount();
+		return searches > 0 ? (double) hits / searches : 0;
+	}
+
+	@Override
+	public long getFilteredCalls() {
+		return filterService.getDispatchStatistics().getFilterCallCount();
+	}
+
+	@Override
+	public long getRealServiceCalls() {
+		return filterService.getDispatchStatistics().getServiceCallCount();
+	}
+
+	@Override
+	public long getFilterSearchFallbacks() {
+		return filterService.getDispatchStatistics().getFallbackCount();
+	}
+
+	@Override
+	public long getConfigurationRebuilds() {
+		return filterService.getDispatchStatistics().getRebuildCount();
+	}
+
+	@Override
+	public long getConfigurationRebuildAverageMicros() {
+		DispatchStatistics statistics = filterService.getDispatchStatistics();
+		long rebuilds = statistics.getRebuildCount();
+		return rebuilds > 0 ? statistics.getRebuildNanos() / rebuilds / 1000 : 0;
+	}
+
+	@Override
+	public int getOverheadSamplingRate() {
+		return filterService.getOverheadSamplingRate();
+	}
+
+	@Override
+	public void setOverheadSamplingRate(int samplingRate) {
+		filterService.setOverheadSamplingRate(samplingRate);
+	}
+
+	@Override
+	public long getOverheadSamples() {
+		return filterService.getDispatchStatistics().getLookupLatencies().getCount();
+	}
+
+	@Override
+	public long getOverheadP50Nanos() {
+		return filterService.getDispatchStatistics().getLookupLatencies().getPercentile(50);
+	}
+
+	@Override
+	public long getOverheadP99Nanos() {
+		return filterService.getDispatchStatistics().getLookupLatencies().getPercentile(99);
+	}
+
+	@Override
+	public long getOverheadP999Nanos() {
+		return filterService.getDispatchStatistics().getLookupLatencies().getPercentile(99.9);
+	}
+
+	@Override
+	public long getOverheadMaxNanos() {
+		return filterService.getDispatchStatistics().getLookupLatencies().getMax();
+	}
+
+	@Override
+	public long getSampledCallP50Nanos() {
+		return filterService.getDispatchStatistics().getCallLatencies().getPercentile(50);
+	}
+
+	@Override
+	public long getSampledCallP99Nanos() {
+		return filterService.getDispatchStatistics().getCallLatencies().getPercentile(99);
+	}
+
+	@Override
+	public void resetDispatchStatistics() {
+		filterService.getDispatchStatistics().reset();
+	}
+
+	private static List<String> toStrings(List<Filter<?>> filters) {
+		List<String> ret = new ArrayList<String>();
+		for (Filter<?> filter : filters)
+			ret.add(filter.toString());
+		return ret;
+	}
+
 	/*
 	 * Implementation for test (non-Javadoc)
 	 * 
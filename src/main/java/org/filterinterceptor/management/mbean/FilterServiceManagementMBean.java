@@ -31,6 +31,42 @@ public interface FilterServiceManagementMBean {
 	 */
 	void reinitFilters() throws IOException;
 
+	/**
+	 * Load new or changed filters from disk without using them, see
+	 * {@link #activateStagedFilters()}
+	 * 
+	 * @return the staged filters
+	 * @throws IOException
+	 *             if an error while reading the file system
+	 */
+	List<String> stageFilters() throws IOException;
+
+	/**
+	 * Return the staged filters
+	 * 
+	 * @return a list of staged filters, empty if none
+	 */
+	List<String> getStagedFilters();
+
+	/**
+	 * Replace the used filters by the staged ones
+	 * 
+	 * @return true if staged filters have been activated
+	 */
+	boolean activateStagedFilters();
+
+	/**
+	 * Discard the staged filters
+	 */
+	void discardStagedFilters();
+
+	/**
+	 * Restore the filters used before the last activation
+	 * 
+	 * @return true if filters have been restored
+	 */
+	boolean rollbackFilters();
+
 	/**
 	 * Get the status of filtered method cache
 	 * 
@@ -57,4 +93,168 @@ public interface FilterServiceManagementMBean {
 	 * @return a set of keys
 	 */
 	Set<String> getFilteredMethodCacheKeys();
+
+	/**
+	 * Get the number of entries of the filtered method cache
+	 * 
+	 * @return the number of entries
+	 */
+	int getFilteredMethodCacheSize();
+
+	/**
+	 * Get the maximum number of entries of the filtered method cache
+	 * 
+	 * @return the maximum number of entries
+	 */
+	int getFilteredMethodCacheMaxSize();
+
+	/**
+	 * Set the maximum number of entries of the filtered method cache
+	 * 
+	 * @param maxSize
+	 *            the maximum number of entries
+	 */
+	void setFilteredMethodCacheMaxSize(int maxSize);
+
+	/**
+	 * Get the number of filtered method cache hits
+	 * 
+	 * @return the number of hits
+	 */
+	long getFilteredMethodCacheHits();
+
+	/**
+	 * Get the number of filtered method cache misses
+	 * 
+	 * @return the number of misses
+	 */
+	long getFilteredMethodCacheMisses();
+
+	/**
+	 * Get the number of entries evicted from the filtered method cache
+	 * 
+	 * @return the number of evictions
+	 */
+	long getFilteredMethodCacheEvictions();
+
+	/**
+	 * Set the filtered method cache counters to zero
+	 */
+	void resetFilteredMethodCacheStatistics();
+
+	/**
+	 * Get the ratio of filtered method cache searches which found an entry:
+	 * high when the cache spares filter searches and creations
+	 * 
+	 * @return hits / (hits + misses), 0 if no search
+	 */
+	double getFilteredMethodCacheHitRatio();
+
+	/**
+	 * Get the number of calls routed to a filter
+	 * 
+	 * @return the number of filtered calls
+	 */
+	long getFilteredCalls();
+
+	/**
+	 * Get the number of calls routed to the real service
+	 * 
+	 * @return the number of real service calls
+	 */
+	long getRealServiceCalls();
+
+	/**
+	 * Get the number of filter searches failed: the real service was called
+	 * 
+	 * @return the number of fallbacks
+	 */
+	long getFilterSearchFallbacks();
+
+	/**
+	 * Get the number of filter configurations rebuilt
+	 * 
+	 * @return the number of rebuilds
+	 */
+	long getConfigurationRebuilds();
+
+	/**
+	 * Get the average duration of the filter configuration rebuilds
+	 * 
+	 * @return the average duration in microseconds, 0 if no rebuild
+	 */
+	long getConfigurationRebuildAverageMicros();
+
+	/**
+	 * Get the sampling rate of the overhead measure
+	 * 
+	 * @return N if 1 call in N is measured, 0 if disabled
+	 */
+	int getOverheadSamplingRate();
+
+	/**
+	 * Measure the overhead of the filter service on 1 call in N
+	 * 
+	 * @param samplingRate
+	 *            N, 0 to disable the measure
+	 */
+	void setOverheadSamplingRate(int samplingRate);
+
+	/**
+	 * Get the number of calls measured
+	 * 
+	 * @return the number of sampled calls
+	 */
+	long getOverheadSamples();
+
+	/**
+	 * Get the median overhead of the filter service (search of the object to
+	 * call) on the sampled calls
+	 * 
+	 * @return the 50th percentile in nanoseconds
+	 */
+	long getOverheadP50Nanos();
+
+	/**
+	 * Get the 99th percentile of the overhead of the filter service on the
+	 * sampled calls
+	 * 
+	 * @return the 99th percentile in nanoseconds
+	 */
+	long getOverheadP99Nanos();
+
+	/**
+	 * Get the 99.9th percentile of the overhead of the filter service on the
+	 * sampled calls
+	 * 
+	 * @return the 99.9th percentile in nanoseconds
+	 */
+	long getOverheadP999Nanos();
+
+	/**
+	 * Get the highest overhead of the filter service on the sampled calls
+	 * 
+	 * @return the maximum in nanoseconds
+	 */
+	long getOverheadMaxNanos();
+
+	/**
+	 * Get the median duration of the sampled calls themselves (filter or real
+	 * service method), to compare with the overhead
+	 * 
+	 * @return the 50th percentile in nanoseconds
+	 */
+	long getSampledCallP50Nanos();
+
+	/**
+	 * Get the 99th percentile of the duration of the sampled calls themselves
+	 * 
+	 * @return the 99th percentile in nanoseconds
+	 */
+	long getSampledCallP99Nanos();
+
+	/**
+	 * Set the call and rebuild counters and the overhead measures to zero
+	 */
+	void resetDispatchStatistics();
 }
@@ -0,0 +1,137 @@
+package org.filterinterceptor.metrics;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Invocation metrics of a filter: invocations and errors by method, latency
+ * of all its invocations
+ * <p>
+ * Updated by many threads without contention (see {@link StripedCounter}).
+ * The counters of a method are created at its first invocation, then
+ * recording allocates nothing.
+ * <p>
+ * Memory used by filter: 2 counters by method invoked, each of 64 bytes by
+ * cell (a cell by processor, rounded up to a power of two), and a latency row
+ * of about 1.3 KB by cell used by the invoking threads (see
+ * {@link StripedHistogram}). With 8 processors and 4 threads on distinct
+ * cells, a filter of 10 methods takes about 10 KB + 5 KB.
+ */
+public class FilterMetrics {
+
+	/**
+	 * Counters by method invoked
+	 */
+	private final ConcurrentMap<Method, MethodCounters> methods = new ConcurrentHashMap<Method, MethodCounters>();
+
+	private final StripedHistogram latencies = new StripedHistogram();
+
+	/**
+	 * Count an invocation of a filter implementation
+	 *
+	 * @param method
+	 *            the method invoked
+	 * @param nanos
+	 *            the duration of the invocation
+	 * @param failed
+	 *            true if the invocation threw an exception
+	 */
+	public void record(Method method, long nanos, boolean failed) {
+		MethodCounters counters = methods.get(method);
+		if (counters == null) {
+			counters = new MethodCounters();
+			MethodCounters previous = methods.putIfAbsent(method, counters);
+			if (previous != null)
+				counters = previous;
+		}
+		counters.invocations.increment();
+		if (failed)
+			counters.errors.increment();
+		latencies.record(nanos);
+	}
+
+	/**
+	 * Get the number of invocations of all methods
+	 *
+	 * @return the number of invocations
+	 */
+	public long getInvocationCount() {
+		long count = 0;
+		for (MethodCounters counters : methods.values())
+			count += counters.invocations.get();
+		return count;
+	}
+
+	/**
+	 * Get the number of invocations of all methods which threw an exception
+	 *
+	 * @return the number of errors
+	 */
+	public long getErrorCount() {
+		long count = 0;
+		for (MethodCounters counters : methods.values())
+			count += counters.errors.get();
+		return count;
+	}
+
+	/**
+	 * Get the methods invoked since the creation of the metrics
+	 *
+	 * @return a copy of the methods, kept by {@link #reset()}
+	 */
+	public List<Method> getMethods() {
+		return new ArrayList<Method>(methods.keySet());
+	}
+
+	/**
+	 * Get the number of invocations of a method
+	 *
+	 * @param method
+	 *            the method
+	 * @return the number of invocations, 0 if never invoked
+	 */
+	public long getInvocationCount(Method method) {
+		MethodCounters counters = methods.get(method);
+		return counters != null ? counters.invocations.get() : 0;
+	}
+
+	/**
+	 * Get the number of invocations of a method which threw an exception
+	 *
+	 * @param method
+	 *            the method
+	 * @return the number of errors, 0 if never invoked
+	 */
+	public long getErrorCount(Method method) {
+		MethodCounters counters = methods.get(method);
+		return counters != null ? counters.errors.get() : 0;
+	}
+
+	/**
+	 * Get the latencies of the invocations of all methods
+	 *
+	 * @return the latency histogram, in nanoseconds
+	 */
+	public StripedHistogram getLatencies() {
+		return latencies;
+	}
+
+	/**
+	 * Set all counters and the latency histogram to zero
+	 */
+	public void reset() {
+		for (MethodCounters counters : methods.values()) {
+			counters.invocations.reset();
+			counters.errors.reset();
+		}
+		latencies.reset();
+	}
+
+	private static final class MethodCounters {
+		private final StripedCounter invocations = new StripedCounter();
+		private final StripedCounter errors = new StripedCounter();
+	}
+}
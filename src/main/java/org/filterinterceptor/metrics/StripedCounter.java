@@ -0,0 +1,84 @@
+package org.filterinterceptor.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter updated by many threads without contention
+ * <p>
+ * The count is split in cells, each thread updates the cell chosen by its id.
+ * Cells are padded so two cells are never in the same cache line. The value
+ * is the sum of the cells: it is exact when there is no concurrent update.
+ * <p>
+ * Java 7 replacement of {@code java.util.concurrent.atomic.LongAdder}
+ */
+public class StripedCounter {
+
+	/**
+	 * Number of longs between two cells (64 bytes)
+	 */
+	static final int PADDING = 8;
+
+	/**
+	 * Number of cells, a power of two greater than the number of processors
+	 */
+	static final int NB_CELLS;
+	static {
+		int nbCells = 1;
+		while (nbCells < Runtime.getRuntime().availableProcessors())
+			nbCells <<= 1;
+		NB_CELLS = nbCells;
+	}
+
+	private final AtomicLongArray cells = new AtomicLongArray(NB_CELLS * PADDING);
+
+	/**
+	 * Add one to the counter
+	 */
+	public void increment() {
+		add(1);
+	}
+
+	/**
+	 * Add a value to the counter
+	 *
+	 * @param value
+	 *            the value to add
+	 */
+	public void add(long value) {
+		cells.getAndAdd(cellIndex(), value);
+	}
+
+	/**
+	 * Get the value of the counter
+	 *
+	 * @return the sum of all cells
+	 */
+	public long get() {
+		long sum = 0;
+		for (int i = 0; i < NB_CELLS; i++)
+			sum += cells.get(i * PADDING);
+		return sum;
+	}
+
+	/**
+	 * Set the counter to zero
+	 */
+	public void reset() {
+		for (int i = 0; i < NB_CELLS; i++)
+			cells.set(i * PADDING, 0);
+	}
+
+	private static int cellIndex() {
+		return cell() * PADDING;
+	}
+
+	/**
+	 * Get the cell updated by the current thread
+	 *
+	 * @return the number of the cell, from 0 to {@link #NB_CELLS} - 1
+	 */
+	static int cell() {
+		long id = Thread.currentThread().getId();
+		return (int) ((id ^ (id >>> 16)) & (NB_CELLS - 1));
+	}
+}
@@ -0,0 +1,181 @@
+package org.filterinterceptor.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A histogram of latencies in nanoseconds updated by many threads without
+ * contention
+ * <p>
+ * Values are counted in log-linear buckets: exact under 8 ns, then 4 buckets
+ * by power of two (less than 25% of error) up to 2^40 ns (about 18 minutes),
+ * higher values are counted in the last bucket. The maximum is exact.
+ * <p>
+ * Like {@link StripedCounter}, each thread updates the buckets of the cell
+ * chosen by its id. The row of buckets of a cell (about 1.3 KB) is created at
+ * the first record of a thread using it: the memory used grows with the
+ * number of cells used, up to a row by cell. Values read are exact when there
+ * is no concurrent update.
+ */
+public class StripedHistogram {
+
+	private static final int LINEAR = 8;
+	private static final int SUB_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int MAX_BITS = 40;
+
+	/**
+	 * Number of buckets
+	 */
+	private static final int NB_BUCKETS = LINEAR + (MAX_BITS - SUB_BITS - 1) * SUB_BUCKETS;
+
+	/**
+	 * Length of a cell row: the buckets, the maximum and a padding
+	 */
+	private static final int ROW = NB_BUCKETS + 1 + StripedCounter.PADDING;
+
+	/**
+	 * Row of buckets by cell, null until the cell is used
+	 */
+	private final AtomicReferenceArray<AtomicLongArray> rows = new AtomicReferenceArray<AtomicLongArray>(
+			StripedCounter.NB_CELLS);
+
+	/**
+	 * Count a latency
+	 *
+	 * @param nanos
+	 *            the latency, negative values are counted as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		AtomicLongArray row = getRow(StripedCounter.cell());
+		row.getAndIncrement(index(value));
+
+		long max = row.get(NB_BUCKETS);
+		while (value > max && !row.compareAndSet(NB_BUCKETS, max, value))
+			max = row.get(NB_BUCKETS);
+	}
+
+	/**
+	 * Get the number of latencies recorded
+	 *
+	 * @return the sum of all buckets
+	 */
+	public long getCount() {
+		long count = 0;
+		for (long bucket : getBuckets())
+			count += bucket;
+		return count;
+	}
+
+	/**
+	 * Get the highest latency recorded
+	 *
+	 * @return the highest latency, 0 if nothing is recorded
+	 */
+	public long getMax() {
+		long max = 0;
+		for (int cell = 0; cell < rows.length(); cell++) {
+			AtomicLongArray row = rows.get(cell);
+			if (row != null)
+				max = Math.max(max, row.get(NB_BUCKETS));
+		}
+		return max;
+	}
+
+	/**
+	 * Get a percentile: the highest value of the bucket of the latency, the
+	 * maximum at most
+	 *
+	 * @param percentile
+	 *            the percentile, from 0 to 100
+	 * @return the latency, 0 if nothing is recorded
+	 */
+	public long getPercentile(double percentile) {
+		long[] buckets = getBuckets();
+		long count = 0;
+		for (long bucket : buckets)
+			count += bucket;
+		if (count == 0)
+			return 0;
+
+		long max = getMax();
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			seen += buckets[i];
+			if (seen >= rank)
+				return Math.min(max, highestValue(i));
+		}
+		return max;
+	}
+
+	/**
+	 * Set all buckets and the maximum to zero
+	 */
+	public void reset() {
+		for (int cell = 0; cell < rows.length(); cell++) {
+			AtomicLongArray row = rows.get(cell);
+			if (row != null)
+				for (int i = 0; i <= NB_BUCKETS; i++)
+					row.set(i, 0);
+		}
+	}
+
+	/**
+	 * Get the number of cells used, each one has a row of buckets
+	 *
+	 * @return the number of rows created
+	 */
+	int getRowCount() {
+		int count = 0;
+		for (int cell = 0; cell < rows.length(); cell++)
+			if (rows.get(cell) != null)
+				count++;
+		return count;
+	}
+
+	/**
+	 * Get the row of a cell, create it at first use
+	 */
+	private AtomicLongArray getRow(int cell) {
+		AtomicLongArray row = rows.get(cell);
+		if (row == null) {
+			rows.compareAndSet(cell, null, new AtomicLongArray(ROW));
+			row = rows.get(cell);
+		}
+		return row;
+	}
+
+	/**
+	 * Sum the buckets of all cells
+	 */
+	private long[] getBuckets() {
+		long[] buckets = new long[NB_BUCKETS];
+		for (int cell = 0; cell < rows.length(); cell++) {
+			AtomicLongArray row = rows.get(cell);
+			if (row != null)
+				for (int i = 0; i < NB_BUCKETS; i++)
+					buckets[i] += row.get(i);
+		}
+		return buckets;
+	}
+
+	private static int index(long value) {
+		if (value < LINEAR)
+			return (int) value;
+		if (value >>> MAX_BITS != 0)
+			return NB_BUCKETS - 1;
+		// value >> shift is in [4, 7]
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (value >> shift) - SUB_BUCKETS;
+	}
+
+	private static long highestValue(int index) {
+		if (index < LINEAR)
+			return index;
+		int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+		long mantissa = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((mantissa + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,276 @@
+package org.filterinterceptor.proxy;
+
+import java.lang.reflect.Method;
+
+import org.filterinterceptor.FilterService;
+import org.filterinterceptor.dispatch.InvocationMode;
+import org.filterinterceptor.metrics.FilterMetrics;
+import org.filterinterceptor.spi.Filter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class binds a proxy to its real service: it gives the object to call
+ * for each method of the proxy, the real service or a filter implementation
+ * <p>
+ * Methods are identified by their index in the array given at creation.
+ * <p>
+ * The object to call for a method is resolved at its first call and kept with
+ * the generation of the filters configuration: it is resolved again only when
+ * filters change (see {@link FilterService#getGeneration()}), so a lazy filter
+ * is instantiated only when a method it filters is called. The cache of the
+ * filter service is not used.
+ * <p>
+ * Bytecode proxies call the real service directly, and the filtered methods
+ * with {@link #invokeTarget(int, Object[])}, which counts and samples the call
+ * and records the metrics of the filter. With {@link InvocationMode#CALL_SITE},
+ * the real service is called from their call sites.
+ */
+public class ServiceBinding {
+
+	private static final Logger logger = LoggerFactory.getLogger(ServiceBinding.class);
+
+	private final FilterService filterService;
+	private final Object service;
+	private final boolean extendToInterfaces;
+	private final Method[] methods;
+	private final Class<?>[] targetTypes;
+
+	/**
+	 * The methods called by {@link #invokeTarget(int, Object[])}, declared by
+	 * the target type of each method
+	 */
+	private final Method[] invokedMethods;
+
+	/**
+	 * Objects to call, not volatile: an immutable object is safely published
+	 * by its final fields, a thread seeing an old value resolves again. A
+	 * resolution publishes a copy with the method resolved.
+	 */
+	private Targets targets;
+
+	/**
+	 * Constructor with fields
+	 *
+	 * @param filterService
+	 *            the filter service container
+	 * @param service
+	 *            the real service
+	 * @param extendToInterfaces
+	 *            a boolean indicate if the search of filter is done on filter
+	 *            interfaces too or not
+	 * @param methods
+	 *            the methods of the proxy, by index
+	 * @param targetTypes
+	 *            the type used by the proxy to call each method, by index
+	 */
+	public ServiceBinding(FilterService filterService, Object service, boolean extendToInterfaces, Method[] methods,
+			Class<?>[] targetTypes) {
+		this.filterService = filterService;
+		this.service = service;
+		this.extendToInterfaces = extendToInterfaces;
+		this.methods = methods;
+		this.targetTypes = targetTypes;
+		this.invokedMethods = new Method[methods.length];
+		for (int i = 0; i < methods.length; i++)
+			invokedMethods[i] = getInvokedMethod(methods[i], targetTypes[i]);
+	}
+
+	/**
+	 * Get the real service
+	 *
+	 * @return the real service
+	 */
+	public Object getService() {
+		return service;
+	}
+
+	/**
+	 * Get the object to call for a method: the filter implementation or the
+	 * real service
+	 * <p>
+	 * If the filter implementation is not an instance of the type used to call
+	 * the method (i.e. it doesn't extend the service class), the real service
+	 * is returned
+	 *
+	 * @param methodIndex
+	 *            the index of the method
+	 * @return the object to call, an instance of the target type of the method
+	 */
+	public Object getTarget(int methodIndex) {
+		return getTargets(methodIndex).objects[methodIndex];
+	}
+
+	/**
+	 * Call a method on its object to call (see {@link #getTarget(int)}) with
+	 * the invocation mode of the filter service, the call is counted in the
+	 * dispatch statistics and calls of a filter implementation are recorded in
+	 * the metrics of the filter
+	 *
+	 * @param methodIndex
+	 *            the index of the method
+	 * @param args
+	 *            parameters to give to the method called
+	 * @return the returned object
+	 * @throws Throwable
+	 *             if invoked method throw one
+	 * @see FilterService#invokeFilter(FilterMetrics, Object, Method, Object...)
+	 */
+	public Object invokeTarget(int methodIndex, Object[] args) throws Throwable {
+		// the lookup time of a sampled call includes the resolution of the
+		// objects to call when filters changed
+		boolean sampled = filterService.isCallSampled();
+		long start = sampled ? System.nanoTime() : 0;
+		Targets current = getTargets(methodIndex);
+		FilterMetrics metrics = current.metrics[methodIndex];
+		if (metrics == null)
+			filterService.getDispatchStatistics().serviceCall();
+		else
+			filterService.getDispatchStatistics().filterCall();
+		if (sampled)
+			return filterService.invokeSampled(start, metrics, current.objects[methodIndex],
+					invokedMethods[methodIndex], args);
+		if (metrics == null)
+			return filterService.invokeTarget(current.objects[methodIndex], invokedMethods[methodIndex], args);
+		return filterService.invokeFilter(metrics, current.objects[methodIndex], invokedMethods[methodIndex], args);
+	}
+
+	/**
+	 * Get the method of the target type, which filter implementations not
+	 * extending the service class implement too
+	 */
+	private static Method getInvokedMethod(Method method, Class<?> targetType) {
+		if (method.getDeclaringClass() == targetType)
+			return method;
+		try {
+			return targetType.getMethod(method.getName(), method.getParameterTypes());
+		} catch (NoSuchMethodException e) {
+			return method;
+		}
+	}
+
+	/**
+	 * Get the objects to call with a method resolved, resolved again if
+	 * filters changed
+	 */
+	private Targets getTargets(int methodIndex) {
+		long generation = filterService.getGeneration();
+		Targets current = targets;
+		if (current == null || current.generation != generation)
+			current = new Targets(generation, methods.length);
+		else if (current.objects[methodIndex] != null)
+			return current;
+		current = resolve(current, methodIndex);
+		targets = current;
+		return current;
+	}
+
+	/**
+	 * Resolve the object to call for a method
+	 *
+	 * @param current
+	 *            the objects to call of the generation, not modified
+	 * @param methodIndex
+	 *            the index of the method
+	 * @return a copy of the objects to call with the method resolved
+	 */
+	private Targets resolve(Targets current, int methodIndex) {
+		logger.debug("Resolve target of {}.{} for configuration {}", new Object[] { service.getClass().getName(),
+				methods[methodIndex].getName(), current.generation });
+		Object[] objects = current.objects.clone();
+		FilterMetrics[] metrics = current.metrics.clone();
+		Filter<?>[] filters = current.filters.clone();
+		Filter<?> filter = findFilter(methodIndex);
+		objects[methodIndex] = resolve(methodIndex, filter, current);
+		if (objects[methodIndex] != service) {
+			metrics[methodIndex] = filter.getMetrics();
+			filters[methodIndex] = filter;
+		}
+		return new Targets(current.generation, objects, metrics, filters);
+	}
+
+	/**
+	 * Find the active filter of a method
+	 *
+	 * @return the filter, null if none or if the search failed
+	 */
+	private Filter<?> findFilter(int methodIndex) {
+		try {
+			return filterService.findActiveFilter(service.getClass(), extendToInterfaces, methods[methodIndex]);
+		} catch (RuntimeException e) {
+			logger.error("Exception while try to execute filter, real service method is used: " + e.getMessage(), e);
+			return null;
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private Object resolve(int methodIndex, Filter filter, Targets current) {
+		try {
+			if (filter == null)
+				return service;
+
+			// one filter implementation by filter
+			Object target = current.getImplementation(filter);
+			if (target == null)
+				target = filter.getFilterServiceImpl(service);
+			if (!targetTypes[methodIndex].isInstance(target)) {
+				logger.error("Filter implementation {} doesn't extend {}, real service method is used", target
+						.getClass().getName(), targetTypes[methodIndex].getName());
+				return service;
+			}
+			return target;
+		} catch (RuntimeException e) {
+			logger.error("Exception while try to execute filter, real service method is used: " + e.getMessage(), e);
+			return service;
+		}
+	}
+
+	/**
+	 * Objects to call by method index, for one generation
+	 */
+	private static final class Targets {
+		private final long generation;
+
+		/**
+		 * Object to call of each method, null if not resolved yet
+		 */
+		private final Object[] objects;
+
+		/**
+		 * Metrics of the filter of each object to call, null for the real
+		 * service
+		 */
+		private final FilterMetrics[] metrics;
+
+		/**
+		 * Filter of each object to call, null for the real service
+		 */
+		private final Filter<?>[] filters;
+
+		/**
+		 * Constructor of the objects to call of a generation, none resolved
+		 */
+		Targets(long generation, int nbMethods) {
+			this(generation, new Object[nbMethods], new FilterMetrics[nbMethods], new Filter<?>[nbMethods]);
+		}
+
+		Targets(long generation, Object[] objects, FilterMetrics[] metrics, Filter<?>[] filters) {
+			this.generation = generation;
+			this.objects = objects;
+			this.metrics = metrics;
+			this.filters = filters;
+		}
+
+		/**
+		 * Get the implementation of a filter resolved for another method
+		 *
+		 * @return the implementation, null if none
+		 */
+		Object getImplementation(Filter<?> filter) {
+			for (int i = 0; i < filters.length; i++)
+				if (filters[i] == filter)
+					return objects[i];
+			return null;
+		}
+	}
+}
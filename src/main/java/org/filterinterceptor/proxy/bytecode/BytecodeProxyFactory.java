@@ -0,0 +1,181 @@
+package org.filterinterceptor.proxy.bytecode;
+
+import org.filterinterceptor.FilterService;
+import org.filterinterceptor.dispatch.InvocationMode;
+import org.filterinterceptor.proxy.dynamic.ServiceProxyFactory;
+import org.filterinterceptor.spi.Filter;
+
+/**
+ * This class create a proxy of a service with a generated class
+ * <p>
+ * Unlike {@link ServiceProxyFactory}, each method of the proxy calls directly
+ * the real service: parameters are not boxed in an array and there is no
+ * reflection. Filter implementations are called with the invocation mode of
+ * the filter service, to record their metrics. Proxies don't call
+ * {@link FilterService#invoke(Object, boolean, java.lang.reflect.Method, Object...)}:
+ * its overrides are bypassed. A proxy class is generated once by service
+ * class.
+ * <p>
+ * Proxies can implement the service interfaces or extend the service class.
+ * Generated classes use the bytecode library of CGLIB (cglib-nodep).
+ * <p>
+ * Proxies created with the {@link InvocationMode#CALL_SITE} mode call each
+ * method through a call site (see {@link CallSiteLinker}): their classes are
+ * generated by factory, for its filter service. When the mode changes, these
+ * proxies call the methods with their binding.
+ *
+ * @see Filter
+ * @see ProxyClassGenerator
+ */
+public class BytecodeProxyFactory {
+
+	/**
+	 * Proxy classes implementing interfaces, by service class
+	 */
+	private static final ClassValue<ProxyClass> interfaceProxyClasses = new ClassValue<ProxyClass>() {
+		@Override
+		protected ProxyClass computeValue(Class<?> serviceClass) {
+			return ProxyClassGenerator.generateInterfaceProxy(serviceClass.getInterfaces(),
+					serviceClass.getClassLoader(), null);
+		}
+	};
+
+	/**
+	 * Proxy classes extending service class, by service class
+	 */
+	private static final ClassValue<ProxyClass> classProxyClasses = new ClassValue<ProxyClass>() {
+		@Override
+		protected ProxyClass computeValue(Class<?> serviceClass) {
+			return ProxyClassGenerator.generateClassProxy(serviceClass, null);
+		}
+	};
+
+	private final FilterService filterService;
+
+	/**
+	 * Proxy classes with call sites, by service class, for each kind of proxy
+	 * and extension to interfaces
+	 */
+	private final CallSiteProxyClasses interfaceCallSiteProxyClasses;
+	private final CallSiteProxyClasses interfaceCallSiteProxyClassesExtended;
+	private final CallSiteProxyClasses classCallSiteProxyClasses;
+	private final CallSiteProxyClasses classCallSiteProxyClassesExtended;
+
+	/**
+	 * Constructor with serviceFilter used to manage filters and the invocation
+	 *
+	 * @param filterService
+	 *            the Service filter to use
+	 */
+	public BytecodeProxyFactory(FilterService filterService) {
+		this.filterService = filterService;
+		this.interfaceCallSiteProxyClasses = new CallSiteProxyClasses(filterService, false, false);
+		this.interfaceCallSiteProxyClassesExtended = new CallSiteProxyClasses(filterService, false, true);
+		this.classCallSiteProxyClasses = new CallSiteProxyClasses(filterService, true, false);
+		this.classCallSiteProxyClassesExtended = new CallSiteProxyClasses(filterService, true, true);
+	}
+
+	/**
+	 * Create the proxy of the service, the proxy implements all interfaces of
+	 * the service class
+	 *
+	 * @param service
+	 *            the service used to make a proxy
+	 * @param extendToInterfaces
+	 *            indicate if the search of filters is done on the service class
+	 *            only or if it is done with the interfaces of the services too
+	 *
+	 * @return the proxy
+	 *
+	 * @throws IllegalStateException
+	 *             if filter service is not defined
+	 * @throws NullPointerException
+	 *             if service is null
+	 * @throws IllegalArgumentException
+	 *             if the service has no interface or if an interface is not
+	 *             public
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T createProxy(T service, boolean extendToInterfaces) {
+		checkParameters(service);
+		ProxyClass proxyClass;
+		if (filterService.getInvocationMode() == InvocationMode.CALL_SITE)
+			proxyClass = (extendToInterfaces ? interfaceCallSiteProxyClassesExtended : interfaceCallSiteProxyClasses)
+					.get(service.getClass());
+		else
+			proxyClass = interfaceProxyClasses.get(service.getClass());
+		return (T) proxyClass.newInstance(filterService, service, extendToInterfaces);
+	}
+
+	/**
+	 * Create the proxy of the service, the proxy extends the service class
+	 * <p>
+	 * The constructor without parameter of the service class is called at
+	 * proxy creation. Final methods are not proxied. Methods declared by an
+	 * interface of the service can be filtered by a filter implementing this
+	 * interface, the others need a filter implementation extending the service
+	 * class.
+	 *
+	 * @param service
+	 *            the service used to make a proxy
+	 * @param extendToInterfaces
+	 *            indicate if the search of filters is done on the service class
+	 *            only or if it is done with the interfaces of the services too
+	 *
+	 * @return the proxy
+	 *
+	 * @throws IllegalStateException
+	 *             if filter service is not defined
+	 * @throws NullPointerException
+	 *             if service is null
+	 * @throws IllegalArgumentException
+	 *             if the service class is not public, is final or has no
+	 *             public or protected constructor without parameter
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T createClassProxy(T service, boolean extendToInterfaces) {
+		checkParameters(service);
+		ProxyClass proxyClass;
+		if (filterService.getInvocationMode() == InvocationMode.CALL_SITE)
+			proxyClass = (extendToInterfaces ? classCallSiteProxyClassesExtended : classCallSiteProxyClasses)
+					.get(service.getClass());
+		else
+			proxyClass = classProxyClasses.get(service.getClass());
+		return (T) proxyClass.newInstance(filterService, service, extendToInterfaces);
+	}
+
+	/*
+	 * PRIVATE
+	 */
+
+	private void checkParameters(Object service) {
+		if (filterService == null)
+			throw new IllegalStateException("You must set an filter service");
+		if (service == null)
+			throw new NullPointerException("You must set the service");
+	}
+
+	/**
+	 * Proxy classes with call sites by service class, for one filter service
+	 */
+	private static final class CallSiteProxyClasses extends ClassValue<ProxyClass> {
+		private final FilterService filterService;
+		private final boolean classProxy;
+		private final boolean extendToInterfaces;
+
+		private CallSiteProxyClasses(FilterService filterService, boolean classProxy, boolean extendToInterfaces) {
+			this.filterService = filterService;
+			this.classProxy = classProxy;
+			this.extendToInterfaces = extendToInterfaces;
+		}
+
+		@Override
+		protected ProxyClass computeValue(Class<?> serviceClass) {
+			CallSiteLinker linker = new CallSiteLinker(filterService, serviceClass, extendToInterfaces);
+			if (classProxy)
+				return ProxyClassGenerator.generateClassProxy(serviceClass, linker);
+			return ProxyClassGenerator.generateInterfaceProxy(serviceClass.getInterfaces(),
+					serviceClass.getClassLoader(), linker);
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package org.filterinterceptor.proxy.bytecode;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.invoke.SwitchPoint;
+import java.lang.reflect.Method;
+
+import org.filterinterceptor.FilterService;
+import org.filterinterceptor.dispatch.InvocationMode;
+import org.filterinterceptor.proxy.ServiceBinding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Create the call sites of a proxy class generated for a filter service and a
+ * service class (see {@link InvocationMode#CALL_SITE})
+ * <p>
+ * The invoker of each call site is a static final field of the proxy class,
+ * so the JIT inlines through it. A call site is shared by all proxies of the
+ * class: an unfiltered method is bound to the real service given by the
+ * {@link ServiceBinding} of the proxy, a filtered one to
+ * {@link ServiceBinding#invokeTarget(int, Object[])}, which counts and samples
+ * the call and records the metrics of the filter. The call of the real service
+ * is a plain call, neither counted nor sampled. The binding is guarded by the
+ * switch point of the method and done again at the first call after its
+ * invalidation.
+ */
+final class CallSiteLinker {
+
+	private static final Logger logger = LoggerFactory.getLogger(CallSiteLinker.class);
+
+	/**
+	 * Handle on {@link MethodCallSite#relink()}
+	 */
+	private static final MethodHandle RELINK;
+
+	/**
+	 * Handle on {@link ServiceBinding#invokeTarget(int, Object[])}
+	 */
+	private static final MethodHandle INVOKE_TARGET;
+
+	/**
+	 * Handle on {@link ServiceBinding#getService()}
+	 */
+	private static final MethodHandle GET_SERVICE;
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			RELINK = lookup.findVirtual(MethodCallSite.class, "relink", MethodType.methodType(MethodHandle.class));
+			INVOKE_TARGET = lookup.findVirtual(ServiceBinding.class, "invokeTarget",
+					MethodType.methodType(Object.class, int.class, Object[].class));
+			GET_SERVICE = lookup.findVirtual(ServiceBinding.class, "getService", MethodType.methodType(Object.class));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private final FilterService filterService;
+	private final Class<?> serviceClass;
+	private final boolean extendToInterfaces;
+
+	/**
+	 * Constructor with fields
+	 *
+	 * @param filterService
+	 *            the filter service container
+	 * @param serviceClass
+	 *            the class of the proxied services
+	 * @param extendToInterfaces
+	 *            a boolean indicate if the search of filter is done on filter
+	 *            interfaces too or not
+	 */
+	CallSiteLinker(FilterService filterService, Class<?> serviceClass, boolean extendToInterfaces) {
+		this.filterService = filterService;
+		this.serviceClass = serviceClass;
+		this.extendToInterfaces = extendToInterfaces;
+	}
+
+	/**
+	 * Create the call site of a method of the proxy class
+	 *
+	 * @param methodIndex
+	 *            the index of the method in the binding
+	 * @param method
+	 *            the method
+	 * @param targetType
+	 *            the type used to call the method
+	 * @return the invoker of the call site, of type (ServiceBinding,
+	 *         parameters of the method)return type of the method
+	 */
+	MethodHandle link(int methodIndex, Method method, Class<?> targetType) {
+		return new MethodCallSite(methodIndex, method, targetType).dynamicInvoker();
+	}
+
+	/**
+	 * Call site of one method, bound at first call and after each
+	 * invalidation of the switch point of the method
+	 */
+	private final class MethodCallSite extends MutableCallSite {
+		private final int methodIndex;
+		private final Method method;
+		private final Class<?> targetType;
+		private final MethodHandle relink;
+
+		MethodCallSite(int methodIndex, Method method, Class<?> targetType) {
+			super(MethodType.methodType(method.getReturnType(), method.getParameterTypes()).insertParameterTypes(0,
+					ServiceBinding.class));
+			this.methodIndex = methodIndex;
+			this.method = method;
+			this.targetType = targetType;
+			// bind, then call the handle bound
+			this.relink = MethodHandles.foldArguments(MethodHandles.exactInvoker(type()), RELINK.bindTo(this));
+			setTarget(relink);
+		}
+
+		/**
+		 * Bind the call site
+		 *
+		 * @return the handle bound, of the type of the call site
+		 */
+		MethodHandle relink() {
+			// switch point first: a change during the search invalidates it
+			SwitchPoint switchPoint = filterService.getSwitchPoint(method);
+			MethodHandle bound = bind();
+			setTarget(switchPoint.guardWithTest(bound, relink));
+			return bound;
+		}
+
+		/**
+		 * Create the handle of the call site: straight to the real service if
+		 * the method is not filtered, through the binding otherwise
+		 */
+		private MethodHandle bind() {
+			if (filterService.getInvocationMode() == InvocationMode.CALL_SITE && !isFiltered()) {
+				try {
+					MethodHandle serviceMethod = MethodHandles.publicLookup().findVirtual(targetType,
+							method.getName(), MethodType.methodType(method.getReturnType(), method.getParameterTypes()));
+					logger.debug("Bind call site of {} on {}", method.getName(), "real service");
+					return MethodHandles.filterArguments(serviceMethod, 0,
+							GET_SERVICE.asType(MethodType.methodType(targetType, ServiceBinding.class)));
+				} catch (ReflectiveOperationException e) {
+					logger.debug("Can't bind {} on real service: {}", method, e.getMessage());
+				}
+			}
+			logger.debug("Bind call site of {} on {}", method.getName(), "binding");
+			return MethodHandles.insertArguments(INVOKE_TARGET, 1, methodIndex)
+					.asCollector(Object[].class, method.getParameterTypes().length).asType(type());
+		}
+
+		/**
+		 * Indicate if the method has an active filter, true if the search
+		 * failed: the binding falls back itself to the real service
+		 */
+		private boolean isFiltered() {
+			try {
+				return filterService.findActiveFilter(serviceClass, extendToInterfaces, method) != null;
+			} catch (RuntimeException e) {
+				logger.error("Exception while try to find filter, the call site is bound to the binding: "
+						+ e.getMessage(), e);
+				return true;
+			}
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package org.filterinterceptor.proxy.bytecode;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.filterinterceptor.FilterService;
+import org.filterinterceptor.proxy.ServiceBinding;
+
+/**
+ * A generated proxy class with the methods it dispatches
+ *
+ * @see ProxyClassGenerator
+ */
+final class ProxyClass {
+
+	private final Constructor<?> constructor;
+	private final Method[] methods;
+	private final Class<?>[] targetTypes;
+
+	/**
+	 * Constructor with fields
+	 *
+	 * @param constructor
+	 *            the constructor of the generated class, with a
+	 *            {@link ServiceBinding} parameter
+	 * @param methods
+	 *            the dispatched methods by index
+	 * @param targetTypes
+	 *            the type used to call each method
+	 */
+	ProxyClass(Constructor<?> constructor, Method[] methods, Class<?>[] targetTypes) {
+		this.constructor = constructor;
+		this.methods = methods;
+		this.targetTypes = targetTypes;
+	}
+
+	/**
+	 * Create a proxy instance
+	 *
+	 * @param filterService
+	 *            the filter service container
+	 * @param service
+	 *            the real service
+	 * @param extendToInterfaces
+	 *            a boolean indicate if the search of filter is done on filter
+	 *            interfaces too or not
+	 * @return the proxy
+	 */
+	Object newInstance(FilterService filterService, Object service, boolean extendToInterfaces) {
+		try {
+			return constructor.newInstance(new ServiceBinding(filterService, service, extendToInterfaces, methods,
+					targetTypes));
+		} catch (InstantiationException e) {
+			throw new IllegalStateException("Can't create proxy: " + e.getMessage(), e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Can't create proxy: " + e.getMessage(), e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("Can't create proxy: " + e.getCause().getMessage(), e.getCause());
+		}
+	}
+}
@@ -0,0 +1,502 @@
+package org.filterinterceptor.proxy.bytecode;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.cglib.asm.ClassWriter;
+import net.sf.cglib.asm.Label;
+import net.sf.cglib.asm.MethodVisitor;
+import net.sf.cglib.asm.Opcodes;
+import net.sf.cglib.asm.Type;
+
+import org.filterinterceptor.DispatchStatistics;
+import org.filterinterceptor.FilterService;
+import org.filterinterceptor.dispatch.ConstantHandles;
+import org.filterinterceptor.proxy.ServiceBinding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generate the bytecode of a proxy class
+ * <p>
+ * The generated class implements the service interfaces (or extends the
+ * service class) and each method calls directly the object given by the
+ * {@link ServiceBinding}, or through the binding when it is a filter
+ * implementation, so the call is counted, sampled and recorded in the metrics
+ * of the filter:
+ *
+ * <pre>
+ * public int test(int in) {
+ * 	Object target = binding.getTarget(0);
+ * 	if (target != binding.getService())
+ * 		return ((Integer) binding.invokeTarget(0, new Object[] { in })).intValue();
+ * 	return ((IService) target).test(in);
+ * }
+ * </pre>
+ *
+ * The objects to call are read once by call. The calls of the real service
+ * are neither counted nor sampled (see {@link DispatchStatistics}), and
+ * {@link FilterService#invoke(Object, boolean, Method, Object...)} is not
+ * called: its overrides are bypassed.
+ *
+ * Parameters of the real service calls are neither boxed nor copied in an
+ * array. Methods of {@link Object} (equals, hashCode, toString) are called on
+ * the real service.
+ * <p>
+ * With a {@link CallSiteLinker}, each method calls instead the invoker of its
+ * call site, kept in a static final field:
+ *
+ * <pre>
+ * public int test(int in) {
+ * 	return (int) INVOKER0.invokeExact(binding, in);
+ * }
+ * </pre>
+ */
+final class ProxyClassGenerator implements Opcodes {
+
+	private static final Logger logger = LoggerFactory.getLogger(ProxyClassGenerator.class);
+
+	/**
+	 * Version of the generated classes, Java 7 for invokeExact
+	 */
+	private static final int V1_7 = 51;
+
+	private static final String PROXY_CLASS_SUFFIX = "$$FilterProxy$$";
+	private static final String BINDING_FIELD = "binding";
+	private static final String BINDING_NAME = Type.getInternalName(ServiceBinding.class);
+	private static final String BINDING_DESC = Type.getDescriptor(ServiceBinding.class);
+	private static final String INVOKER_FIELD = "INVOKER";
+	private static final String HANDLE_NAME = Type.getInternalName(MethodHandle.class);
+	private static final String HANDLE_DESC = Type.getDescriptor(MethodHandle.class);
+
+	/**
+	 * Counter used to build unique class names
+	 */
+	private static final AtomicInteger proxyClassCounter = new AtomicInteger();
+
+	private ProxyClassGenerator() {
+	}
+
+	/**
+	 * Generate a proxy class implementing interfaces
+	 *
+	 * @param interfaces
+	 *            the interfaces to implement, must be public
+	 * @param classLoader
+	 *            the class loader used to see the interfaces
+	 * @param linker
+	 *            the linker of the call sites of the methods, null to call
+	 *            the targets given by the binding
+	 * @return the generated proxy class
+	 * @throws IllegalArgumentException
+	 *             if an interface is not public
+	 */
+	static ProxyClass generateInterfaceProxy(Class<?>[] interfaces, ClassLoader classLoader, CallSiteLinker linker) {
+		if (interfaces.length == 0)
+			throw new IllegalArgumentException("The service must implement at least one interface");
+
+		Map<String, ProxyMethod> proxyMethods = new LinkedHashMap<String, ProxyMethod>();
+		for (Class<?> i : interfaces) {
+			checkPublic(i);
+			for (Method method : i.getMethods()) {
+				Class<?> targetType = Modifier.isPublic(method.getDeclaringClass().getModifiers()) ? method
+						.getDeclaringClass() : i;
+				addProxyMethod(proxyMethods, method, targetType);
+			}
+		}
+		addObjectMethods(proxyMethods);
+
+		return generate(Object.class, interfaces, proxyMethods.values(), classLoader, linker);
+	}
+
+	/**
+	 * Generate a proxy class extending a service class
+	 * <p>
+	 * Methods declared by a public interface of the class are called on this
+	 * interface, so filter implementations can implement the interface only.
+	 *
+	 * @param serviceClass
+	 *            the class to extend, must be public, not final and must have
+	 *            a public or protected constructor without parameter
+	 * @param linker
+	 *            the linker of the call sites of the methods, null to call
+	 *            the targets given by the binding
+	 * @return the generated proxy class
+	 * @throws IllegalArgumentException
+	 *             if the class can't be extended
+	 */
+	static ProxyClass generateClassProxy(Class<?> serviceClass, CallSiteLinker linker) {
+		checkPublic(serviceClass);
+		if (Modifier.isFinal(serviceClass.getModifiers()))
+			throw new IllegalArgumentException("Service class " + serviceClass.getName() + " is final");
+		try {
+			Constructor<?> constructor = serviceClass.getDeclaredConstructor();
+			if (!Modifier.isPublic(constructor.getModifiers()) && !Modifier.isProtected(constructor.getModifiers()))
+				throw new IllegalArgumentException("Constructor without parameter of " + serviceClass.getName()
+						+ " must be public or protected");
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException("Service class " + serviceClass.getName()
+					+ " must have a constructor without parameter", e);
+		}
+
+		List<Class<?>> interfaces = new ArrayList<Class<?>>();
+		collectPublicInterfaces(serviceClass, interfaces);
+
+		Map<String, ProxyMethod> proxyMethods = new LinkedHashMap<String, ProxyMethod>();
+		for (Method method : serviceClass.getMethods()) {
+			int modifiers = method.getModifiers();
+			if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)
+					|| method.getDeclaringClass() == Object.class)
+				continue;
+			addProxyMethod(proxyMethods, method, getTargetType(serviceClass, method, interfaces));
+		}
+		addObjectMethods(proxyMethods);
+
+		return generate(serviceClass, new Class<?>[0], proxyMethods.values(), serviceClass.getClassLoader(), linker);
+	}
+
+	/*
+	 * PRIVATE
+	 */
+
+	/**
+	 * Generate and define the proxy class
+	 */
+	private static ProxyClass generate(Class<?> superClass, Class<?>[] interfaces,
+			Iterable<ProxyMethod> proxyMethods, ClassLoader classLoader, CallSiteLinker linker) {
+		Class<?> baseClass = superClass != Object.class ? superClass : interfaces[0];
+		String className = (baseClass.getName().startsWith("java.") ? ProxyClassGenerator.class.getPackage()
+				.getName() + "." + baseClass.getSimpleName() : baseClass.getName())
+				+ PROXY_CLASS_SUFFIX + proxyClassCounter.incrementAndGet();
+		String internalClassName = className.replace('.', '/');
+		logger.debug("Generate proxy class {}", className);
+
+		String[] interfaceNames = new String[interfaces.length];
+		for (int i = 0; i < interfaces.length; i++)
+			interfaceNames[i] = Type.getInternalName(interfaces[i]);
+
+		// frames of the branch between filter and real service
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+		cw.visit(V1_7, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, internalClassName, null,
+				Type.getInternalName(superClass), interfaceNames);
+		cw.visitField(ACC_PRIVATE | ACC_FINAL, BINDING_FIELD, BINDING_DESC, null, null).visitEnd();
+
+		// Constructor
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "(" + BINDING_DESC + ")V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKESPECIAL, Type.getInternalName(superClass), "<init>", "()V");
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitFieldInsn(PUTFIELD, internalClassName, BINDING_FIELD, BINDING_DESC);
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		// Methods
+		List<Method> methods = new ArrayList<Method>();
+		List<Class<?>> targetTypes = new ArrayList<Class<?>>();
+		for (ProxyMethod proxyMethod : proxyMethods) {
+			int methodIndex = -1;
+			if (proxyMethod.targetType != Object.class) {
+				methodIndex = methods.size();
+				methods.add(proxyMethod.method);
+				targetTypes.add(proxyMethod.targetType);
+			}
+			if (linker != null && methodIndex >= 0)
+				generateCallSiteMethod(cw, internalClassName, proxyMethod, methodIndex);
+			else
+				generateMethod(cw, internalClassName, proxyMethod, methodIndex);
+		}
+		if (linker != null)
+			generateStaticInitializer(cw, internalClassName, methods.size());
+		cw.visitEnd();
+
+		Class<?> proxyClass = new ProxyClassLoader(classLoader).defineProxyClass(className, cw.toByteArray());
+		if (linker != null) {
+			MethodHandle[] invokers = new MethodHandle[methods.size()];
+			for (int i = 0; i < invokers.length; i++)
+				invokers[i] = linker.link(i, methods.get(i), targetTypes.get(i));
+			ConstantHandles.initialize(proxyClass, invokers);
+		}
+		try {
+			return new ProxyClass(proxyClass.getConstructor(ServiceBinding.class), methods.toArray(new Method[methods
+					.size()]), targetTypes.toArray(new Class<?>[targetTypes.size()]));
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException("Constructor of generated proxy not found", e);
+		}
+	}
+
+	/**
+	 * Generate a method calling the target given by the binding
+	 *
+	 * @param methodIndex
+	 *            the index of the method in the binding, -1 to call the real
+	 *            service
+	 */
+	private static void generateMethod(ClassWriter cw, String internalClassName, ProxyMethod proxyMethod,
+			int methodIndex) {
+		Method method = proxyMethod.method;
+		String descriptor = Type.getMethodDescriptor(method);
+		Class<?>[] exceptionTypes = method.getExceptionTypes();
+		String[] exceptions = new String[exceptionTypes.length];
+		for (int i = 0; i < exceptionTypes.length; i++)
+			exceptions[i] = Type.getInternalName(exceptionTypes[i]);
+
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, method.getName(), descriptor, null, exceptions);
+		mv.visitCode();
+
+		// Size of the parameters, the target is kept after them
+		int targetSlot = 1;
+		for (Class<?> parameterType : method.getParameterTypes())
+			targetSlot += Type.getType(parameterType).getSize();
+
+		// Get the target
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, internalClassName, BINDING_FIELD, BINDING_DESC);
+		String targetTypeName = Type.getInternalName(proxyMethod.targetType);
+		if (methodIndex >= 0) {
+			mv.visitLdcInsn(Integer.valueOf(methodIndex));
+			mv.visitMethodInsn(INVOKEVIRTUAL, BINDING_NAME, "getTarget", "(I)Ljava/lang/Object;");
+			mv.visitVarInsn(ASTORE, targetSlot);
+
+			// Filter implementation called through the binding
+			Label direct = new Label();
+			mv.visitVarInsn(ALOAD, targetSlot);
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, internalClassName, BINDING_FIELD, BINDING_DESC);
+			mv.visitMethodInsn(INVOKEVIRTUAL, BINDING_NAME, "getService", "()Ljava/lang/Object;");
+			mv.visitJumpInsn(IF_ACMPEQ, direct);
+			generateInvokeTarget(mv, internalClassName, method, methodIndex);
+			mv.visitLabel(direct);
+
+			mv.visitVarInsn(ALOAD, targetSlot);
+			mv.visitTypeInsn(CHECKCAST, targetTypeName);
+		} else {
+			mv.visitMethodInsn(INVOKEVIRTUAL, BINDING_NAME, "getService", "()Ljava/lang/Object;");
+		}
+
+		// Call the method with the parameters
+		int slot = 1;
+		for (Class<?> parameterType : method.getParameterTypes()) {
+			Type type = Type.getType(parameterType);
+			mv.visitVarInsn(type.getOpcode(ILOAD), slot);
+			slot += type.getSize();
+		}
+		mv.visitMethodInsn(proxyMethod.targetType.isInterface() ? INVOKEINTERFACE : INVOKEVIRTUAL, targetTypeName,
+				method.getName(), descriptor);
+
+		// Return the result
+		Class<?> returnType = method.getReturnType();
+		mv.visitInsn(returnType == void.class ? RETURN : Type.getType(returnType).getOpcode(IRETURN));
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * Generate the call of {@link ServiceBinding#invokeTarget(int, Object[])}
+	 * with the boxed parameters, and the return of its unboxed result
+	 */
+	private static void generateInvokeTarget(MethodVisitor mv, String internalClassName, Method method,
+			int methodIndex) {
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, internalClassName, BINDING_FIELD, BINDING_DESC);
+		mv.visitLdcInsn(Integer.valueOf(methodIndex));
+
+		// Parameters in an array
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		mv.visitLdcInsn(Integer.valueOf(parameterTypes.length));
+		mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+		int slot = 1;
+		for (int i = 0; i < parameterTypes.length; i++) {
+			Type type = Type.getType(parameterTypes[i]);
+			mv.visitInsn(DUP);
+			mv.visitLdcInsn(Integer.valueOf(i));
+			mv.visitVarInsn(type.getOpcode(ILOAD), slot);
+			if (parameterTypes[i].isPrimitive()) {
+				String wrapperName = Type.getInternalName(getWrapper(parameterTypes[i]));
+				mv.visitMethodInsn(INVOKESTATIC, wrapperName, "valueOf", "(" + type.getDescriptor() + ")L"
+						+ wrapperName + ";");
+			}
+			mv.visitInsn(AASTORE);
+			slot += type.getSize();
+		}
+		mv.visitMethodInsn(INVOKEVIRTUAL, BINDING_NAME, "invokeTarget", "(I[Ljava/lang/Object;)Ljava/lang/Object;");
+
+		// Return the result
+		Class<?> returnType = method.getReturnType();
+		if (returnType == void.class) {
+			mv.visitInsn(POP);
+			mv.visitInsn(RETURN);
+		} else if (returnType.isPrimitive()) {
+			String wrapperName = Type.getInternalName(getWrapper(returnType));
+			mv.visitTypeInsn(CHECKCAST, wrapperName);
+			mv.visitMethodInsn(INVOKEVIRTUAL, wrapperName, returnType.getName() + "Value", "()"
+					+ Type.getDescriptor(returnType));
+			mv.visitInsn(Type.getType(returnType).getOpcode(IRETURN));
+		} else {
+			mv.visitTypeInsn(CHECKCAST, Type.getInternalName(returnType));
+			mv.visitInsn(ARETURN);
+		}
+	}
+
+	/**
+	 * Get the wrapper class of a primitive type
+	 */
+	private static Class<?> getWrapper(Class<?> primitiveType) {
+		if (primitiveType == int.class)
+			return Integer.class;
+		if (primitiveType == long.class)
+			return Long.class;
+		if (primitiveType == boolean.class)
+			return Boolean.class;
+		if (primitiveType == double.class)
+			return Double.class;
+		if (primitiveType == float.class)
+			return Float.class;
+		if (primitiveType == char.class)
+			return Character.class;
+		if (primitiveType == byte.class)
+			return Byte.class;
+		return Short.class;
+	}
+
+	/**
+	 * Generate a method calling the invoker of its call site with the binding
+	 * and the parameters
+	 *
+	 * @param methodIndex
+	 *            the index of the method in the binding and of its invoker
+	 */
+	private static void generateCallSiteMethod(ClassWriter cw, String internalClassName, ProxyMethod proxyMethod,
+			int methodIndex) {
+		Method method = proxyMethod.method;
+		String descriptor = Type.getMethodDescriptor(method);
+		Class<?>[] exceptionTypes = method.getExceptionTypes();
+		String[] exceptions = new String[exceptionTypes.length];
+		for (int i = 0; i < exceptionTypes.length; i++)
+			exceptions[i] = Type.getInternalName(exceptionTypes[i]);
+		String invokerField = INVOKER_FIELD + methodIndex;
+		cw.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, invokerField, HANDLE_DESC, null, null).visitEnd();
+
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, method.getName(), descriptor, null, exceptions);
+		mv.visitCode();
+
+		// Invoker with the binding and the parameters
+		mv.visitFieldInsn(GETSTATIC, internalClassName, invokerField, HANDLE_DESC);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, internalClassName, BINDING_FIELD, BINDING_DESC);
+		int slot = 1;
+		for (Class<?> parameterType : method.getParameterTypes()) {
+			Type type = Type.getType(parameterType);
+			mv.visitVarInsn(type.getOpcode(ILOAD), slot);
+			slot += type.getSize();
+		}
+		mv.visitMethodInsn(INVOKEVIRTUAL, HANDLE_NAME, "invokeExact", "(" + BINDING_DESC + descriptor.substring(1));
+
+		// Return the result
+		Class<?> returnType = method.getReturnType();
+		mv.visitInsn(returnType == void.class ? RETURN : Type.getType(returnType).getOpcode(IRETURN));
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * Generate the static initializer reading the invokers of the call sites
+	 * (see {@link ConstantHandles})
+	 */
+	private static void generateStaticInitializer(ClassWriter cw, String internalClassName, int nbInvokers) {
+		MethodVisitor mv = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+		mv.visitCode();
+		for (int i = 0; i < nbInvokers; i++) {
+			mv.visitLdcInsn(Integer.valueOf(i));
+			mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(ConstantHandles.class), "get", "(I)" + HANDLE_DESC);
+			mv.visitFieldInsn(PUTSTATIC, internalClassName, INVOKER_FIELD + i, HANDLE_DESC);
+		}
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * Add a method if no method with the same signature is already present
+	 */
+	private static void addProxyMethod(Map<String, ProxyMethod> proxyMethods, Method method, Class<?> targetType) {
+		String key = method.getName() + Type.getMethodDescriptor(method);
+		if (!proxyMethods.containsKey(key))
+			proxyMethods.put(key, new ProxyMethod(method, targetType));
+	}
+
+	/**
+	 * Add methods of Object which are called on the real service
+	 */
+	private static void addObjectMethods(Map<String, ProxyMethod> proxyMethods) {
+		try {
+			addProxyMethod(proxyMethods, Object.class.getMethod("equals", Object.class), Object.class);
+			addProxyMethod(proxyMethods, Object.class.getMethod("hashCode"), Object.class);
+			addProxyMethod(proxyMethods, Object.class.getMethod("toString"), Object.class);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException("Object method not found", e);
+		}
+	}
+
+	/**
+	 * Get the type used to call a method of a service class: a public
+	 * interface declaring the method, otherwise the class declaring the method
+	 * if it is public, otherwise the service class
+	 */
+	private static Class<?> getTargetType(Class<?> serviceClass, Method method, List<Class<?>> interfaces) {
+		for (Class<?> i : interfaces) {
+			try {
+				Method interfaceMethod = i.getMethod(method.getName(), method.getParameterTypes());
+				if (interfaceMethod.getReturnType() == method.getReturnType()
+						&& Arrays.asList(method.getExceptionTypes()).containsAll(
+								Arrays.asList(interfaceMethod.getExceptionTypes())))
+					return i;
+			} catch (NoSuchMethodException e) {
+				// not declared by this interface
+			}
+		}
+		return Modifier.isPublic(method.getDeclaringClass().getModifiers()) ? method.getDeclaringClass()
+				: serviceClass;
+	}
+
+	/**
+	 * Collect all public interfaces of a class and its super classes
+	 */
+	private static void collectPublicInterfaces(Class<?> type, List<Class<?>> interfaces) {
+		for (Class<?> i : type.getInterfaces()) {
+			if (Modifier.isPublic(i.getModifiers()) && !interfaces.contains(i))
+				interfaces.add(i);
+			collectPublicInterfaces(i, interfaces);
+		}
+		if (type.getSuperclass() != null)
+			collectPublicInterfaces(type.getSuperclass(), interfaces);
+	}
+
+	private static void checkPublic(Class<?> type) {
+		if (!Modifier.isPublic(type.getModifiers()))
+			throw new IllegalArgumentException("Type " + type.getName() + " must be public to be proxied");
+	}
+
+	/**
+	 * A method of the proxy with the type used to call it
+	 */
+	private static final class ProxyMethod {
+		private final Method method;
+		private final Class<?> targetType;
+
+		private ProxyMethod(Method method, Class<?> targetType) {
+			this.method = method;
+			this.targetType = targetType;
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package org.filterinterceptor.proxy.bytecode;
+
+import org.filterinterceptor.dispatch.ConstantHandles;
+import org.filterinterceptor.proxy.ServiceBinding;
+
+/**
+ * Class loader of one generated proxy class
+ * <p>
+ * Its parent is the class loader of the proxied service, the API classes used
+ * by the generated class are taken from the loader of this API
+ */
+final class ProxyClassLoader extends ClassLoader {
+
+	ProxyClassLoader(ClassLoader parent) {
+		super(parent);
+	}
+
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		if (ServiceBinding.class.getName().equals(name))
+			return ServiceBinding.class;
+		if (ConstantHandles.class.getName().equals(name))
+			return ConstantHandles.class;
+		return super.loadClass(name, resolve);
+	}
+
+	/**
+	 * Define the generated class
+	 *
+	 * @param name
+	 *            the binary name of the class
+	 * @param bytecode
+	 *            the content of the class file
+	 * @return the class defined
+	 */
+	Class<?> defineProxyClass(String name, byte[] bytecode) {
+		return defineClass(name, bytecode, 0, bytecode.length);
+	}
+}
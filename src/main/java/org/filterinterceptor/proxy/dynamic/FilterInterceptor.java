@@ -4,14 +4,21 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 
 import org.filterinterceptor.FilterService;
+import org.filterinterceptor.dispatch.InvocationMode;
+import org.filterinterceptor.proxy.ServiceBinding;
 
 /**
  * This class is used by java dynamic proxy to redirect all service methods call
- * on ServiceFilter invoke method
- * 
+ * on the real service or on its filter
+ * <p>
+ * Objects to call are kept by the proxy and resolved again only when filters
+ * change (see {@link ServiceBinding}). With {@link InvocationMode#CALL_SITE},
+ * methods are called with method handles: call sites are bound by bytecode
+ * proxies only
+ *
  * @param <T>
  *            the type of the Service
- * 
+ *
  * @see ServiceProxyFactory
  * @see FilterService
  */
@@ -20,10 +27,12 @@ public class FilterInterceptor<T> implements InvocationHandler {
 	private final FilterService filterService;
 	private final T service;
 	private final boolean extendToInterfaces;
+	private final ProxyMethods proxyMethods;
+	private final ServiceBinding binding;
 
 	/**
 	 * Created by Service Proxy Factory
-	 * 
+	 *
 	 * @param filterService
 	 *            the filter service container
 	 * @param service
@@ -36,14 +45,21 @@ public class FilterInterceptor<T> implements InvocationHandler {
 		this.filterService = filterService;
 		this.service = service;
 		this.extendToInterfaces = extendToInterfaces;
+		this.proxyMethods = ProxyMethods.of(service.getClass());
+		this.binding = new ServiceBinding(filterService, service, extendToInterfaces, proxyMethods.getMethods(),
+				proxyMethods.getTargetTypes());
 	}
 
 	/**
-	 * This method is call automatically by the proxy and delegate treatment to
+	 * This method is call automatically by the proxy and call the object bound
+	 * to the method, a method unknown by the binding is delegated to
 	 * FilterService
 	 */
 	@Override
 	public Object invoke(Object o, Method method, Object[] args) throws Throwable {
-		return filterService.invoke(service, extendToInterfaces, method, args);
+		Integer methodIndex = proxyMethods.indexOf(method);
+		if (methodIndex == null)
+			return filterService.invoke(service, extendToInterfaces, method, args);
+		return binding.invokeTarget(methodIndex, args);
 	}
 }
@@ -0,0 +1,82 @@
+package org.filterinterceptor.proxy.dynamic;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Methods which a dynamic proxy of a service class can receive, by index: the
+ * methods of all interfaces of the class and {@code equals},
+ * {@code hashCode}, {@code toString}
+ * <p>
+ * Built once by service class
+ */
+final class ProxyMethods {
+
+	private static final ClassValue<ProxyMethods> PROXY_METHODS = new ClassValue<ProxyMethods>() {
+		@Override
+		protected ProxyMethods computeValue(Class<?> serviceClass) {
+			return new ProxyMethods(serviceClass);
+		}
+	};
+
+	private final Method[] methods;
+	private final Class<?>[] targetTypes;
+	private final Map<Method, Integer> indexes = new HashMap<Method, Integer>();
+
+	private ProxyMethods(Class<?> serviceClass) {
+		List<Method> list = new ArrayList<Method>();
+		for (Class<?> i : serviceClass.getInterfaces())
+			for (Method method : i.getMethods())
+				if (!indexes.containsKey(method)) {
+					indexes.put(method, list.size());
+					list.add(method);
+				}
+		try {
+			for (Method method : new Method[] { Object.class.getMethod("equals", Object.class),
+					Object.class.getMethod("hashCode"), Object.class.getMethod("toString") }) {
+				indexes.put(method, list.size());
+				list.add(method);
+			}
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+
+		methods = list.toArray(new Method[list.size()]);
+		targetTypes = new Class<?>[methods.length];
+		for (int i = 0; i < methods.length; i++)
+			targetTypes[i] = methods[i].getDeclaringClass();
+	}
+
+	/**
+	 * Get the methods of the proxies of a service class
+	 *
+	 * @param serviceClass
+	 *            the class of the service
+	 * @return the methods by index
+	 */
+	static ProxyMethods of(Class<?> serviceClass) {
+		return PROXY_METHODS.get(serviceClass);
+	}
+
+	Method[] getMethods() {
+		return methods;
+	}
+
+	Class<?>[] getTargetTypes() {
+		return targetTypes;
+	}
+
+	/**
+	 * Get the index of a method
+	 *
+	 * @param method
+	 *            a method received by the proxy
+	 * @return the index of the method, null if unknown
+	 */
+	Integer indexOf(Method method) {
+		return indexes.get(method);
+	}
+}
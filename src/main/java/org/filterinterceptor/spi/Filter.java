@@ -1,6 +1,7 @@
 package org.filterinterceptor.spi;
 
 import org.filterinterceptor.FilterService;
+import org.filterinterceptor.metrics.FilterMetrics;
 
 /**
  * This class represents a filter to apply to a service
@@ -14,6 +15,11 @@ public abstract class Filter<T> implements Comparable<Filter<T>> {
 	private int priority;
 	private boolean active = true;
 
+	/**
+	 * Invocation metrics, created at first use
+	 */
+	private volatile FilterMetrics metrics;
+
 	/**
 	 * The default constructor
 	 * 
@@ -84,6 +90,26 @@ public abstract class Filter<T> implements Comparable<Filter<T>> {
 		this.active = active;
 	}
 
+	/**
+	 * Get the invocation metrics of the filter: calls of its service
+	 * implementations made by {@link FilterService} or its proxies
+	 * 
+	 * @return the metrics, created at first call
+	 */
+	public final FilterMetrics getMetrics() {
+		FilterMetrics current = metrics;
+		if (current == null) {
+			synchronized (this) {
+				current = metrics;
+				if (current == null) {
+					current = new FilterMetrics();
+					metrics = current;
+				}
+			}
+		}
+		return current;
+	}
+
 	@Override
 	public String toString() {
 		return String.format("Service: %s, active: %b, description=%s, priority=%d", getService().getSimpleName(),
@@ -99,7 +125,8 @@ public abstract class Filter<T> implements Comparable<Filter<T>> {
 	public final boolean equals(Object other) {
 		// warning: compare not class name not class with operator "==", they
 		// are not load in the same classloader
-		if (other != null && other instanceof Filter & other.getClass().getName().equals(getClass().getName())) {
+		if (other != null && other instanceof Filter
+				&& ((Filter<?>) other).getFilterClassName().equals(getFilterClassName())) {
 			Filter<?> otherFilter = (Filter<?>) other;
 			return description.equals(otherFilter.description);
 		}
@@ -112,13 +139,19 @@ public abstract class Filter<T> implements Comparable<Filter<T>> {
 			throw new NullPointerException("Other filter to compare is null");
 
 		int ret = description.compareTo(other.description);
-		return (ret == 0)
-		// TODOJ7: use this method
-		// ? Integer.compare(getPriority(), other.getPriority())
-		? ((Integer) getPriority()).compareTo(other.getPriority())
-				: ret;
+		return ret == 0 ? Integer.compare(getPriority(), other.getPriority()) : ret;
 	};
 
+	/**
+	 * Return the name of the filter class, used to compare filters
+	 * 
+	 * @return the name of the filter class
+	 * @see LazyFilter
+	 */
+	/* package */String getFilterClassName() {
+		return getClass().getName();
+	}
+
 	/*
 	 * ABSTRACT
 	 */
@@ -0,0 +1,47 @@
+package org.filterinterceptor.spi;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.filterinterceptor.index.FilterIndex;
+import org.filterinterceptor.index.FilterIndexProcessor;
+
+/**
+ * Set this annotation on a {@link Filter} to add it in the filter index of its
+ * JAR, written at compilation by {@link FilterIndexProcessor}
+ * <p>
+ * Filtered methods of an indexed filter are read from the index when it is
+ * loaded, its service implementation is not created nor reflected on.
+ * <p>
+ * The filter must declare its service class in the return type of
+ * {@link Filter#getService()} (e.g. <code>Class&lt;ServiceImpl&gt;</code>)
+ * and its service implementation must be a nested class of the filter, or be
+ * given by {@link #implementation()}. The description and the priority must be
+ * the ones given to the filter constructor.
+ *
+ * @see FilterIndex
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+@Documented
+public @interface IndexedFilter {
+
+	/**
+	 * @return the description of the filter
+	 */
+	String description();
+
+	/**
+	 * @return the priority of the filter
+	 */
+	int priority();
+
+	/**
+	 * @return the class of the service implementation, if it is not a nested
+	 *         class of the filter
+	 */
+	Class<?> implementation() default Void.class;
+}
@@ -0,0 +1,132 @@
+package org.filterinterceptor.spi;
+
+import org.filterinterceptor.FilterService;
+import org.filterinterceptor.index.FilterIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A filter read from the {@link FilterIndex}: the filter class is loaded and
+ * instantiated only when its service implementation is first asked, i.e. when
+ * a filtered service method is called
+ * <p>
+ * Description and priority come from the index, the priority and the status
+ * of the filter instance are not used. A lazy filter is equal to the filter
+ * it represents.
+ *
+ * @param <T>
+ *            The type of the service to filter
+ * @see FilterService#setLazyLoading(boolean)
+ */
+public final class LazyFilter<T> extends Filter<T> {
+
+	private static final Logger logger = LoggerFactory.getLogger(LazyFilter.class);
+
+	private final FilterIndex.Entry entry;
+	private final ClassLoader classLoader;
+
+	private volatile Class<? extends T> service;
+	private volatile Filter<T> filter;
+
+	/**
+	 * Constructor with fields, no class is loaded
+	 *
+	 * @param entry
+	 *            the index entry of the filter
+	 * @param classLoader
+	 *            the class loader of the filter
+	 */
+	public LazyFilter(FilterIndex.Entry entry, ClassLoader classLoader) {
+		super(entry.getDescription(), entry.getPriority());
+		this.entry = entry;
+		this.classLoader = classLoader;
+	}
+
+	/**
+	 * Get the index entry of the filter
+	 *
+	 * @return the index entry
+	 */
+	public FilterIndex.Entry getIndexEntry() {
+		return entry;
+	}
+
+	/**
+	 * Indicate if the filter class has been instantiated
+	 *
+	 * @return true if the filter has been instantiated
+	 */
+	public boolean isInstantiated() {
+		return filter != null;
+	}
+
+	/**
+	 * Instantiate the filter now, if not already done
+	 *
+	 * @throws IllegalStateException
+	 *             if the filter can't be instantiated
+	 */
+	public void instantiate() {
+		getFilter();
+	}
+
+	@Override
+	/* package */String getFilterClassName() {
+		return entry.getFilterClassName();
+	}
+
+	/**
+	 * Load the service class, not initialized
+	 *
+	 * @throws IllegalStateException
+	 *             if the service class can't be loaded
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Class<? extends T> getService() {
+		Class<? extends T> current = service;
+		if (current == null) {
+			try {
+				current = (Class<? extends T>) Class.forName(entry.getServiceClassName(), false, classLoader);
+			} catch (ClassNotFoundException e) {
+				throw new IllegalStateException("Service class of filter <" + getDescription() + "> not found: "
+						+ entry.getServiceClassName(), e);
+			}
+			service = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Instantiate the filter if necessary and get its service implementation
+	 *
+	 * @throws IllegalStateException
+	 *             if the filter can't be instantiated
+	 */
+	@Override
+	public T getFilterServiceImpl(T service) {
+		return getFilter().getFilterServiceImpl(service);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Filter<T> getFilter() {
+		Filter<T> current = filter;
+		if (current == null) {
+			synchronized (this) {
+				current = filter;
+				if (current == null) {
+					logger.debug("Instantiate filter <{}>: {}", getDescription(), entry.getFilterClassName());
+					try {
+						current = Class.forName(entry.getFilterClassName(), true, classLoader)
+								.asSubclass(Filter.class).newInstance();
+					} catch (ReflectiveOperationException e) {
+						throw new IllegalStateException("Can't instantiate filter <" + getDescription() + ">: "
+								+ entry.getFilterClassName(), e);
+					}
+					filter = current;
+				}
+			}
+		}
+		return current;
+	}
+}
@@ -0,0 +1,44 @@
+package org.filterinterceptor;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.filterinterceptor.sample.service.DtoSample1;
+import org.filterinterceptor.sample.service.ServiceImpl;
+import org.filterinterceptor.sample.spi.Test1Filter;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FilterDescriptorTest {
+
+	@Test
+	public void of_filteredMethodsOnly() {
+
+		// test
+		FilterDescriptor descriptor = FilterDescriptor.of(new Test1Filter());
+
+		// check
+		assertEquals(ServiceImpl.class.getName(), descriptor.getServiceClassName());
+		assertTrue("Wrapper class must be the service implementation of the filter", descriptor
+				.getWrapperClassName().startsWith(Test1Filter.class.getName() + "$"));
+		assertEquals(Collections.singletonList("test1(" + DtoSample1.class.getName() + ")"),
+				descriptor.getSignatures());
+		assertEquals(Collections.singletonList(ServiceImpl.class.getName() + ".test1(" + DtoSample1.class.getName()
+				+ ")"), descriptor.getKeys());
+		assertEquals(Collections.singletonList(ServiceImpl.class.getName() + ".test1"), descriptor.getNameKeys());
+	}
+
+	@Test
+	public void constructor_overloadedMethods_oneNameKey() {
+
+		// test
+		FilterDescriptor descriptor = new FilterDescriptor("a.Service", "a.Wrapper", Arrays.asList("test(int)",
+				"test(java.lang.String)", "other()"));
+
+		// check
+		assertEquals(Arrays.asList("a.Service.test(int)", "a.Service.test(java.lang.String)", "a.Service.other()"),
+				descriptor.getKeys());
+		assertEquals(Arrays.asList("a.Service.test", "a.Service.other"), descriptor.getNameKeys());
+	}
+}
@@ -1,7 +1,28 @@
 package org.filterinterceptor;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.MethodInterceptor;
+import net.sf.cglib.proxy.MethodProxy;
+
+import org.filterinterceptor.dispatch.InvocationMode;
+import org.filterinterceptor.loader.JarClassLoader;
+import org.filterinterceptor.management.mbean.FilterManagement;
+import org.filterinterceptor.management.mbean.FilterServiceManagement;
+import org.filterinterceptor.metrics.FilterMetrics;
+import org.filterinterceptor.proxy.dynamic.ServiceProxyFactory;
 import org.filterinterceptor.sample.service.DtoSample1;
 import org.filterinterceptor.sample.service.DtoSample2;
 import org.filterinterceptor.sample.service.DtoSample3;
@@ -9,13 +30,34 @@ import org.filterinterceptor.sample.service.IService;
 import org.filterinterceptor.sample.service.ServiceImpl;
 import org.filterinterceptor.spi.Filter;
 import org.filterinterceptor.spi.FilteredMethod;
+import org.filterinterceptor.spi.LazyFilter;
+import org.junit.Assume;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
 
 import static org.junit.Assert.*;
 
 import static org.easymock.EasyMock.*;
 
 public class FilterServiceTest {
+
+	/**
+	 * Links to the files open by this process, on Linux
+	 */
+	private static final String FD_FOLDER = "/proc/self/fd";
+
+	/**
+	 * Bytes allocated by the measure of the allocations
+	 */
+	private static final long ALLOCATION_SLACK = 4096;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Test(expected = IOException.class)
 	public void initFilter_wrongFolder_throwIOException() throws IOException {
 
@@ -46,6 +88,23 @@ public class FilterServiceTest {
 		assertEquals("Filter for ServiceImpl.test1 must have priority 2", 2, filter.getPriority());
 	}
 
+	@Test
+	public void getActiveFilter_byMethod() throws IOException, NoSuchMethodException {
+
+		// test
+		FilterService fs = new FilterService("./src/test/resources/others_filters");
+		fs.initFilters();
+
+		// check
+		Filter<?> filter = fs.getActiveFilter(ServiceImpl.class, IService.class.getMethod("test1", DtoSample1.class));
+		assertNotNull("Filter for ServiceImpl.test1 must be defined", filter);
+		assertEquals("Filter for ServiceImpl.test1 must have priority 2", 2, filter.getPriority());
+		assertSame("Filter must be the same than the one found by name", fs.getActiveFilter(ServiceImpl.class, "test1"),
+				filter);
+		assertNull("There is no filter on ServiceImpl.test0",
+				fs.getActiveFilter(ServiceImpl.class, IService.class.getMethod("test0", int.class)));
+	}
+
 	@Test
 	public void initFilter_reload() throws IOException {
 
@@ -58,6 +117,268 @@ public class FilterServiceTest {
 		assertEquals("Same filters must be load only one time", 5, fs.getAllFilters().size());
 	}
 
+	@Test
+	public void invoke_methodWithoutFilter_noSearch() throws Throwable {
+
+		// test
+		FilterService fs = new FilterService("./src/test/resources/others_filters", true);
+		fs.initFilters();
+		IService service = new ServiceImpl();
+		Object ret = fs.invoke(service, true, IService.class.getMethod("test0", int.class), 10);
+
+		// check
+		assertEquals("Real service must be called", 10, ret);
+		assertEquals("Method without filter must not be searched", 0, fs.getCacheStatistics().getMissCount());
+		assertEquals("Method without filter must not be cached", 0, fs.getCacheKeys().size());
+
+		// filtered method is searched
+		fs.invoke(service, true, IService.class.getMethod("test", int.class), 10);
+		assertEquals("Filtered method must be searched", 1, fs.getCacheStatistics().getMissCount());
+	}
+
+	@Test
+	public void initFilter_lazyLoading() throws Throwable {
+
+		// test
+		FilterService fs = new FilterService("./src/test/resources/others_filters");
+		fs.setLazyLoading(true);
+		fs.initFilters();
+
+		// check
+		assertEquals("Nb of filters found must be equals to 5", 5, fs.getAllFilters().size());
+		LazyFilter<?> lazyFilter = null;
+		for (Filter<?> filter : fs.getAllFilters())
+			if (filter instanceof LazyFilter)
+				lazyFilter = (LazyFilter<?>) filter;
+		assertNotNull("Indexed filter must be loaded lazily", lazyFilter);
+		assertEquals("Service ServiceImpl Test 1", lazyFilter.getDescription());
+		assertFalse("Lazy filter must not be instantiated at load", lazyFilter.isInstantiated());
+
+		// filter with lower priority: not instantiated
+		IService service = new ServiceImpl();
+		Method test1 = IService.class.getMethod("test1", DtoSample1.class);
+		fs.getTarget(service, true, test1);
+		assertFalse("Filter not used must not be instantiated", lazyFilter.isInstantiated());
+
+		// filter used
+		fs.setFilterPriority(lazyFilter, 100);
+		assertSame(lazyFilter, fs.getActiveFilter(ServiceImpl.class, test1));
+		DtoSample1 in = new DtoSample1(1, 1.0, "a", null);
+		fs.invoke(service, true, test1, in);
+		assertTrue("Filter used must be instantiated", lazyFilter.isInstantiated());
+		assertEquals("Filter must be called", 1000000, in.getA());
+	}
+
+	@Test
+	public void initFilter_removedJar_unloaded() throws Throwable {
+		File jar = folder.newFile("sample2.jar");
+		copy(new File("./src/test/resources/others_filters/sample2.jar"), jar);
+		FilterService fs = new FilterService(folder.getRoot().getPath(), true);
+		fs.initFilters();
+		Method test3 = IService.class.getMethod("test3", DtoSample3.class);
+		IService service = new ServiceImpl();
+
+		// filter of the JAR used and cached
+		Filter<?> filter = fs.getActiveFilter(ServiceImpl.class, test3);
+		assertNotNull("Filter of the JAR must be loaded", filter);
+		assertNotSame(service, fs.getTarget(service, true, test3));
+		WeakReference<ClassLoader> classLoader = new WeakReference<ClassLoader>(filter.getClass().getClassLoader());
+		int nbFilters = fs.getAllFilters().size();
+		filter = null;
+		String jarPath = jar.getCanonicalPath();
+		boolean isFdListed = new File(FD_FOLDER).isDirectory();
+		if (isFdListed)
+			assertTrue("JAR must be open while loaded", isOpen(jarPath));
+
+		// test
+		assertTrue(jar.delete());
+		fs.initFilters();
+
+		// check
+		assertEquals("Filter of the removed JAR must be unloaded", nbFilters - 1, fs.getAllFilters().size());
+		assertNull(fs.getActiveFilter(ServiceImpl.class, test3));
+		assertSame("Real service must be called", service, fs.getTarget(service, true, test3));
+		for (int i = 0; i < 50 && classLoader.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull("Class loader of the removed JAR must be unreachable", classLoader.get());
+		Assume.assumeTrue(isFdListed);
+		assertFalse("File handle of the removed JAR must be released", isOpen(jarPath));
+	}
+
+	/**
+	 * Indicate if a file is open by this process: one of its file descriptors
+	 * links to the file (" (deleted)" is appended to a deleted file)
+	 */
+	private static boolean isOpen(String path) {
+		File[] fds = new File(FD_FOLDER).listFiles();
+		if (fds != null)
+			for (File fd : fds) {
+				try {
+					if (Files.readSymbolicLink(fd.toPath()).toString().startsWith(path))
+						return true;
+				} catch (IOException e) {
+					// descriptor closed meanwhile
+				}
+			}
+		return false;
+	}
+
+	@Test
+	public void initFilter_removedJarWithDuplicate_duplicateLoaded() throws Throwable {
+		copy(new File("./src/test/resources/others_filters/sample2.jar"), folder.newFile("a.jar"));
+		copy(new File("./src/test/resources/others_filters/sample2.jar"), folder.newFile("b.jar"));
+		FilterService fs = new FilterService(folder.getRoot().getPath(), true);
+		fs.initFilters();
+		Method test3 = IService.class.getMethod("test3", DtoSample3.class);
+		Filter<?> filter = fs.getActiveFilter(ServiceImpl.class, test3);
+		assertNotNull("Filter of the JARs must be loaded", filter);
+		ClassLoader classLoader = filter.getClass().getClassLoader();
+		int nbFilters = fs.getAllFilters().size();
+
+		// test
+		assertTrue(new File(((JarClassLoader) classLoader).getFingerprint().getPath()).delete());
+		fs.initFilters();
+
+		// check
+		assertEquals("Filter of the other JAR must be loaded", nbFilters, fs.getAllFilters().size());
+		Filter<?> duplicate = fs.getActiveFilter(ServiceImpl.class, test3);
+		assertEquals(filter, duplicate);
+		assertNotSame(classLoader, duplicate.getClass().getClassLoader());
+		IService service = new ServiceImpl();
+		assertNotSame("Filter must be called", service, fs.getTarget(service, true, test3));
+	}
+
+	@Test
+	public void initFilter_parallelLoading_sameFilters() throws Throwable {
+		for (String name : new String[] { "a.jar", "b.jar", "c.jar", "d.jar" })
+			copy(new File("./src/test/resources/others_filters/sample.jar"), folder.newFile(name));
+		copy(new File("./src/test/resources/others_filters/sample2.jar"), folder.newFile("e.jar"));
+		FilterService sequential = new FilterService(folder.getRoot().getPath());
+		sequential.initFilters();
+
+		// test
+		FilterService parallel = new FilterService(folder.getRoot().getPath());
+		parallel.setLoadingParallelism(4);
+		parallel.initFilters();
+
+		// check
+		assertEquals(5, parallel.getAllFilters().size());
+		assertEquals(sequential.getAllFilters().toString(), parallel.getAllFilters().toString());
+		for (Filter<?> filter : parallel.getAllFilters())
+			if (filter.getClass().getClassLoader() instanceof JarClassLoader) {
+				String jar = ((JarClassLoader) filter.getClass().getClassLoader()).getFingerprint().getPath();
+				assertTrue("Filter of the first JAR must be kept: " + jar, jar.endsWith("a.jar")
+						|| jar.endsWith("e.jar"));
+			}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void setLoadingParallelism_notPositive() {
+		new FilterService(null).setLoadingParallelism(0);
+	}
+
+	@Test
+	public void stageFilters_activate_rollback() throws Throwable {
+		FilterService fs = new FilterService(folder.getRoot().getPath(), true);
+		fs.setLazyLoading(true);
+		fs.initFilters();
+		Method test3 = IService.class.getMethod("test3", DtoSample3.class);
+		IService service = new ServiceImpl();
+		List<Filter<?>> filters = fs.getAllFilters();
+		assertNull(fs.getStagedFilters());
+		assertFalse("Nothing to activate", fs.activateStagedFilters());
+		assertFalse("Nothing to restore", fs.rollbackFilters());
+
+		// test: stage
+		copy(new File("./src/test/resources/others_filters/sample2.jar"), folder.newFile("sample2.jar"));
+		List<Filter<?>> staged = fs.stageFilters();
+
+		// check: current configuration unchanged, lazy filters not instantiated
+		assertEquals(filters.size() + 1, staged.size());
+		for (Filter<?> filter : staged)
+			if (filter instanceof LazyFilter)
+				assertFalse("Lazy filter must not be instantiated by stage",
+						((LazyFilter<?>) filter).isInstantiated());
+		assertEquals(staged, fs.getStagedFilters());
+		assertSame(filters, fs.getAllFilters());
+		assertNull(fs.getActiveFilter(ServiceImpl.class, test3));
+
+		// test: activate
+		long generation = fs.getGeneration();
+		assertTrue(fs.activateStagedFilters());
+
+		// check
+		assertNull(fs.getStagedFilters());
+		assertEquals(staged, fs.getAllFilters());
+		assertEquals(generation + 1, fs.getGeneration());
+		assertTrue(fs.canRollbackFilters());
+		assertNotNull(fs.getActiveFilter(ServiceImpl.class, test3));
+		assertNotSame(service, fs.getTarget(service, true, test3));
+
+		// test: rollback
+		assertTrue(fs.rollbackFilters());
+
+		// check
+		assertFalse(fs.canRollbackFilters());
+		assertEquals(filters, fs.getAllFilters());
+		assertNull(fs.getActiveFilter(ServiceImpl.class, test3));
+		assertSame("Real service must be called", service, fs.getTarget(service, true, test3));
+
+		// JAR still in folder, not loaded: found again by next load
+		fs.initFilters();
+		assertEquals(staged.size(), fs.getAllFilters().size());
+	}
+
+	@Test
+	public void discardStagedFilters() throws Throwable {
+		FilterService fs = new FilterService(folder.getRoot().getPath());
+		fs.initFilters();
+		copy(new File("./src/test/resources/others_filters/sample2.jar"), folder.newFile("sample2.jar"));
+		fs.stageFilters();
+
+		// test
+		fs.discardStagedFilters();
+
+		// check
+		assertNull(fs.getStagedFilters());
+		assertFalse("Nothing to activate", fs.activateStagedFilters());
+	}
+
+	private static void copy(File from, File to) throws IOException {
+		InputStream in = new FileInputStream(from);
+		try {
+			OutputStream out = new FileOutputStream(to);
+			try {
+				byte[] buffer = new byte[8192];
+				for (int read; (read = in.read(buffer)) >= 0;)
+					out.write(buffer, 0, read);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void getGeneration_increasedOnChange() throws IOException {
+
+		// test
+		FilterService fs = new FilterService("./src/test/resources/others_filters");
+		assertEquals("Generation must be 0 before init", 0, fs.getGeneration());
+		fs.initFilters();
+		long generation = fs.getGeneration();
+		assertTrue("Generation must be increased by init", generation > 0);
+
+		Filter<?> filter = fs.getAllFilters().get(0);
+		fs.setFilterPriority(filter, filter.getPriority());
+		assertEquals("Generation must be increased by priority change", generation + 1, fs.getGeneration());
+		fs.setFilterActiveStatus(filter, filter.isActive());
+		assertEquals("Generation must be increased by status change", generation + 2, fs.getGeneration());
+	}
+
 	@Test
 	// if exception occurred while retrieving the filter, the real service is
 	// called
@@ -145,6 +466,70 @@ public class FilterServiceTest {
 		assertEquals("Filter must be called", paramValue + ServiceFilterChangeTreatment.VALUE, ret);
 	}
 
+	@Test
+	public void invoke_newTreatment_methodHandle() throws Throwable {
+
+		IService service = createMock(IService.class);
+
+		// expect
+		int paramValue = 10;
+
+		// replay
+		replay(service);
+
+		// test
+		FilterService fs = new FilterService(null) {
+			@Override
+			public Filter<?> getActiveFilter(java.lang.Class<?> serviceClass, Method method) {
+				return new ServiceFilterChangeTreatment();
+			};
+		};
+		fs.setInvocationMode(InvocationMode.METHOD_HANDLE);
+		Object ret = fs.invoke(service, false, IService.class.getDeclaredMethod("test0", int.class),
+				new Object[] { paramValue });
+
+		// check
+		verify(service);
+		assertNotNull("Result must not be null", ret);
+		assertEquals("Filter must be called", paramValue + ServiceFilterChangeTreatment.VALUE, ret);
+	}
+
+	@Test
+	public void invoke_generatedSubclass_dispatchTable() throws Throwable {
+		final int[] nbSearches = new int[1];
+		Enhancer enhancer = new Enhancer();
+		enhancer.setSuperclass(FilterService.class);
+		enhancer.setCallback(new MethodInterceptor() {
+			@Override
+			public Object intercept(Object obj, Method method, Object[] args, MethodProxy proxy) throws Throwable {
+				if (method.getName().equals("getActiveFilter"))
+					nbSearches[0]++;
+				return proxy.invokeSuper(obj, args);
+			}
+		});
+		FilterService fs = (FilterService) enhancer.create(new Class<?>[] { String.class }, new Object[] { null });
+
+		// test
+		Object ret = fs.invoke(new ServiceImpl(), false, IService.class.getMethod("test", int.class), 3);
+
+		// check
+		assertEquals("Real service must be called", 3, ret);
+		assertEquals("Dispatch table must be used", 0, nbSearches[0]);
+	}
+
+	@Test
+	public void setInvocationMode_publishedWithConfiguration() {
+		FilterService fs = new FilterService(null);
+		long generation = fs.getGeneration();
+
+		// test
+		fs.setInvocationMode(InvocationMode.METHOD_HANDLE);
+
+		// check
+		assertEquals("Mode must be published", InvocationMode.METHOD_HANDLE, fs.getInvocationMode());
+		assertEquals("Filters did not change", generation, fs.getGeneration());
+	}
+
 	private final class ServiceFilterChangeTreatment extends Filter<IService> {
 		public static final int VALUE = 500;
 
@@ -393,6 +778,59 @@ public class FilterServiceTest {
 		assertTrue("New higter priority filter must not be equals to first filter", filter3 == filter1);
 	}
 
+	@Test
+	public void setFilterPriority_samePriority_firstLoadedKept() throws IOException {
+		FilterService fs = new FilterService("./src/test/resources/others_filters");
+		fs.initFilters();
+		Filter<?> filter1 = fs.getActiveFilter(ServiceImpl.class, "test1");
+		fs.setFilterActiveStatus(filter1, false);
+		Filter<?> filter2 = fs.getActiveFilter(ServiceImpl.class, "test1");
+		fs.setFilterActiveStatus(filter1, true);
+		fs.setFilterPriority(filter1, 10);
+		fs.setFilterPriority(filter2, 10);
+		Filter<?> first = fs.getActiveFilter(ServiceImpl.class, "test1");
+		Filter<?> other = first == filter1 ? filter2 : filter1;
+
+		// test
+		fs.setFilterPriority(other, 11);
+		assertSame("Higher priority filter must be active", other, fs.getActiveFilter(ServiceImpl.class, "test1"));
+		fs.setFilterPriority(other, 10);
+
+		// check
+		assertSame("First loaded filter must be active again", first, fs.getActiveFilter(ServiceImpl.class, "test1"));
+	}
+
+	@Test
+	public void setFilterPriority_invalidateChangedMethodsOnly() throws Throwable {
+
+		// test
+		FilterService fs = new FilterService("./src/test/resources/others_filters", true);
+		fs.setCacheActive(true);
+		fs.initFilters();
+		IService service = new ServiceImpl();
+		Method test = IService.class.getMethod("test", int.class);
+		Method test1 = IService.class.getMethod("test1", DtoSample1.class);
+		fs.getTarget(service, true, test);
+		fs.getTarget(service, true, test1);
+		assertEquals(2, fs.getCacheSize());
+
+		// lower priority than the other filter of test1
+		Filter<?> filter = fs.getActiveFilter(ServiceImpl.class, "test1");
+		fs.setFilterPriority(filter, 0);
+
+		// check
+		assertEquals("Only the entry of the changed method must be removed", 1, fs.getCacheSize());
+		fs.getTarget(service, true, test);
+		assertEquals("Entry of an unchanged method must be kept", 1, fs.getCacheStatistics().getHitCount());
+		assertNotSame("Active filter of the changed method must be changed", filter,
+				fs.getActiveFilter(ServiceImpl.class, "test1"));
+
+		// no change of active filter: nothing removed
+		fs.getTarget(service, true, test1);
+		fs.setFilterPriority(filter, 1);
+		assertEquals(2, fs.getCacheSize());
+	}
+
 	@Test
 	public void invoke_realServiceTwice_useCache() throws Throwable {
 
@@ -451,4 +889,236 @@ public class FilterServiceTest {
 		verify(service, service2);
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void getTarget_cacheOff_keptByThread() throws Throwable {
+		FilterService fs = new FilterService("./src/test/resources/others_filters", false);
+		fs.initFilters();
+		IService service = new ServiceImpl();
+		Method test = IService.class.getMethod("test", int.class);
+		Object target = fs.getTarget(service, true, test);
+		assertNotSame(service, target);
+
+		// test
+		System.gc();
+
+		// check
+		assertSame("Implementation must be kept after a GC", target, fs.getTarget(service, true, test));
+		Filter<?> filter = fs.getActiveFilter(ServiceImpl.class, test);
+		fs.setFilterPriority(filter, filter.getPriority() + 1);
+		assertNotSame("Implementation must be created again after a change", target,
+				fs.getTarget(service, true, test));
+	}
+
+	@Test
+	public void invoke_filter_recordMetrics() throws Throwable {
+
+		// test
+		FilterService fs = new FilterService("./src/test/resources/others_filters");
+		fs.initFilters();
+		Method test = IService.class.getMethod("test", int.class);
+		Method test0 = IService.class.getMethod("test0", int.class);
+		Filter<?> filter = fs.findActiveFilter(ServiceImpl.class, true, test);
+		IService service = new CheckedService();
+		fs.invoke(service, true, test, 1);
+		fs.invoke(service, true, test0, 1);
+		new ServiceProxyFactory(fs).createProxy(service, true).test(2);
+		try {
+			fs.invoke(service, true, test, -1);
+			fail("Exception of the service must be thrown");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		// check
+		FilterMetrics metrics = filter.getMetrics();
+		assertEquals("Calls by FilterService and by proxy must be counted", 3, metrics.getInvocationCount());
+		assertEquals(1, metrics.getErrorCount());
+		assertEquals("Calls of the real service must not be counted", 0, metrics.getInvocationCount(test0));
+		assertEquals(3, metrics.getLatencies().getCount());
+		FilterManagement management = new FilterManagement(filter, fs);
+		assertEquals(Collections.singletonList("test(int): 3 calls, 1 errors"), management.getMethodInvocations());
+		assertTrue(management.getLatencyMaxNanos() > 0);
+
+		management.resetMetrics();
+		assertEquals(0, management.getInvocationCount());
+		assertEquals(0, management.getLatencyP99Nanos());
+	}
+
+	@Test
+	public void invoke_countDispatch() throws Throwable {
+
+		// test
+		FilterService fs = new FilterService("./src/test/resources/others_filters", true);
+		fs.initFilters();
+		IService service = new ServiceImpl();
+		Method test = IService.class.getMethod("test", int.class);
+		fs.invoke(service, true, test, 1);
+		fs.invoke(service, true, test, 1);
+		fs.invoke(service, true, IService.class.getMethod("test0", int.class), 1);
+		fs.setFilterPriority(fs.findActiveFilter(ServiceImpl.class, true, test), 5);
+
+		// check
+		DispatchStatistics statistics = fs.getDispatchStatistics();
+		assertEquals(2, statistics.getFilterCallCount());
+		assertEquals(1, statistics.getServiceCallCount());
+		assertEquals(0, statistics.getFallbackCount());
+		assertEquals("Load and priority change must be counted", 2, statistics.getRebuildCount());
+		assertTrue(statistics.getRebuildNanos() > 0);
+		FilterServiceManagement management = new FilterServiceManagement(fs);
+		assertEquals("1 hit for 2 searches", 0.5, management.getFilteredMethodCacheHitRatio(), 0.0);
+
+		management.resetDispatchStatistics();
+		assertEquals(0, management.getFilteredCalls());
+		assertEquals(0, management.getConfigurationRebuildAverageMicros());
+	}
+
+	@Test
+	public void invoke_overheadSampling() throws Throwable {
+
+		// test
+		FilterService fs = new FilterService("./src/test/resources/others_filters");
+		fs.initFilters();
+		IService service = new ServiceImpl();
+		Method test = IService.class.getMethod("test", int.class);
+		fs.invoke(service, true, test, 1);
+		assertEquals("No sampling by default", 0, fs.getDispatchStatistics().getLookupLatencies().getCount());
+
+		fs.setOverheadSamplingRate(1);
+		for (int i = 0; i < 10; i++)
+			fs.invoke(service, true, test, 1);
+		fs.invoke(service, true, IService.class.getMethod("test0", int.class), 1);
+
+		// check
+		DispatchStatistics statistics = fs.getDispatchStatistics();
+		assertEquals("All calls must be measured", 11, statistics.getLookupLatencies().getCount());
+		assertEquals(11, statistics.getCallLatencies().getCount());
+		FilterServiceManagement management = new FilterServiceManagement(fs);
+		assertEquals(11, management.getOverheadSamples());
+		assertTrue(management.getOverheadMaxNanos() >= management.getOverheadP50Nanos());
+
+		management.setOverheadSamplingRate(0);
+		fs.invoke(service, true, test, 1);
+		assertEquals(11, management.getOverheadSamples());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void setOverheadSamplingRate_negative() {
+		new FilterService(null).setOverheadSamplingRate(-1);
+	}
+
+	@Test
+	public void invoke_searchFailed_countFallback() throws Throwable {
+
+		// test
+		FilterService fs = new FilterService(null) {
+			@Override
+			public Filter<?> getActiveFilter(Class<?> serviceClass, Method method) {
+				throw new IllegalStateException("search failed");
+			}
+		};
+		Object ret = fs.invoke(new ServiceImpl(), false, IService.class.getMethod("test", int.class), 3);
+
+		// check
+		assertEquals("Real service must be called", 3, ret);
+		assertEquals(1, fs.getDispatchStatistics().getFallbackCount());
+		assertEquals(1, fs.getDispatchStatistics().getServiceCallCount());
+	}
+
+	/**
+	 * Service throwing an exception on negative values, its proxies implement
+	 * IService
+	 */
+	private static final class CheckedService extends ServiceImpl implements IService {
+		@Override
+		public int test(int in) {
+			if (in < 0)
+				throw new IllegalArgumentException("negative");
+			return in;
+		}
+	}
+
+	@Test
+	public void invoke_steadyState_allocateNothing() throws Throwable {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+				&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled());
+
+		IService service = new ServiceImpl();
+		IService otherService = new ServiceImpl();
+		Method test = IService.class.getMethod("test", int.class);
+		Method test0 = IService.class.getMethod("test0", int.class);
+		Method test1 = IService.class.getMethod("test1", DtoSample1.class);
+		Object[] intArgs = new Object[] { 1 };
+		Object[] dtoArgs = new Object[] { new DtoSample1(1, 1.0, "a", null) };
+		Object[] services = new Object[] { service, otherService, otherService, service };
+		Method[] methods = new Method[] { test, test1, test, test1 };
+		Object[][] args = new Object[][] { intArgs, dtoArgs, intArgs, dtoArgs };
+
+		// production level: logs of the test configuration write each call
+		ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory
+				.getLogger("org.filterinterceptor");
+		Level level = logger.getLevel();
+		logger.setLevel(Level.INFO);
+		try {
+			for (boolean isCacheActive : new boolean[] { true, false })
+				for (InvocationMode mode : InvocationMode.values()) {
+					FilterService fs = new FilterService("./src/test/resources/others_filters", isCacheActive);
+					fs.setInvocationMode(mode);
+					fs.initFilters();
+					String context = mode + (isCacheActive ? " with cache" : " without cache");
+					assertNotSame(service, fs.getTarget(service, true, test));
+					assertNotSame(service, fs.getTarget(service, true, test1));
+					assertSame(service, fs.getTarget(service, true, test0));
+
+					// check
+					assertNoAllocation("Filtered method must allocate nothing, " + context,
+							getAllocatedBytes(fs, service, test, intArgs));
+					assertNoAllocation("Filtered method with DTO must allocate nothing, " + context,
+							getAllocatedBytes(fs, service, test1, dtoArgs));
+					assertNoAllocation("Unfiltered method must allocate nothing, " + context,
+							getAllocatedBytes(fs, service, test0, intArgs));
+					assertNoAllocation("Alternate methods and services must allocate nothing, " + context,
+							getAllocatedBytes(fs, services, methods, args));
+				}
+		} finally {
+			logger.setLevel(level);
+		}
+	}
+
+	/**
+	 * Check that calls allocated less than {@value #ALLOCATION_SLACK} bytes in
+	 * all, the measure itself can allocate a few bytes
+	 */
+	private static void assertNoAllocation(String message, long allocated) {
+		assertTrue(message + ": " + allocated + " bytes", allocated < ALLOCATION_SLACK);
+	}
+
+	/**
+	 * Invoke a method many times after a warm up and get the bytes allocated
+	 * by the current thread
+	 */
+	private static long getAllocatedBytes(FilterService fs, Object service, Method method, Object[] args)
+			throws Throwable {
+		return getAllocatedBytes(fs, new Object[] { service }, new Method[] { method }, new Object[][] { args });
+	}
+
+	/**
+	 * Invoke methods in turn many times after a warm up and get the bytes
+	 * allocated by the current thread
+	 */
+	private static long getAllocatedBytes(FilterService fs, Object[] services, Method[] methods,
+			Object[][] args) throws Throwable {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		int nbCalls = 100000;
+		for (int i = 0; i < nbCalls; i++)
+			fs.invoke(services[i % services.length], true, methods[i % methods.length], args[i % args.length]);
+		long allocated = threads.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < nbCalls; i++)
+			fs.invoke(services[i % services.length], true, methods[i % methods.length], args[i % args.length]);
+		return threads.getThreadAllocatedBytes(threadId) - allocated;
+	}
+
+}
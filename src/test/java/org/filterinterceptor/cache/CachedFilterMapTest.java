@@ -0,0 +1,257 @@
+package org.filterinterceptor.cache;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Set;
+
+import org.filterinterceptor.spi.Filter;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CachedFilterMapTest {
+
+	private static final Method HASH_CODE;
+	private static final Method TO_STRING;
+	static {
+		try {
+			HASH_CODE = Object.class.getMethod("hashCode");
+			TO_STRING = Object.class.getMethod("toString");
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Filtered service referencing its service
+	 */
+	private static final class Wrapper {
+		private final Object service;
+
+		private Wrapper(Object service) {
+			this.service = service;
+		}
+	}
+
+	private static final class WrapperFilter extends Filter<Object> {
+		private int nbCreated;
+
+		private WrapperFilter() {
+			super("wrapper", 1);
+		}
+
+		@Override
+		public Class<? extends Object> getService() {
+			return Object.class;
+		}
+
+		@Override
+		public Object getFilterServiceImpl(Object service) {
+			nbCreated++;
+			return new Wrapper(service);
+		}
+	}
+
+	/**
+	 * Services equal but not identical
+	 */
+	private static final class EqualService {
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof EqualService;
+		}
+
+		@Override
+		public int hashCode() {
+			return 1;
+		}
+	}
+
+	@Test
+	public void get_byIdentity() {
+		CachedFilterMap map = new CachedFilterMap();
+		Object service1 = new EqualService();
+		Object service2 = new EqualService();
+		CachedFilter filtered = new CachedFilter("filter", new Object());
+
+		assertNull(map.put(service1, HASH_CODE, filtered));
+		assertSame(filtered, map.get(service1, HASH_CODE));
+		assertNull("Services are compared by identity", map.get(service2, HASH_CODE));
+		assertNull("Methods are distinguished", map.get(service1, TO_STRING));
+
+		assertSame(filtered, map.put(service1, HASH_CODE, CachedFilter.REAL_SERVICE));
+		assertSame(CachedFilter.REAL_SERVICE, map.get(service1, HASH_CODE));
+		assertEquals(1, map.size());
+
+		CacheStatistics statistics = map.getStatistics();
+		assertEquals(2, statistics.getHitCount());
+		assertEquals(2, statistics.getMissCount());
+		assertEquals(0, statistics.getEvictionCount());
+	}
+
+	@Test
+	public void put_bounded() {
+		CachedFilterMap map = new CachedFilterMap(2, new CacheStatistics());
+		Object service1 = new Object();
+		Object service2 = new Object();
+		Object service3 = new Object();
+
+		map.put(service1, HASH_CODE, CachedFilter.REAL_SERVICE);
+		map.put(service2, HASH_CODE, CachedFilter.REAL_SERVICE);
+		// all entries are new: the oldest is evicted
+		map.put(service3, HASH_CODE, CachedFilter.REAL_SERVICE);
+		assertEquals(2, map.size());
+		assertNull(map.get(service1, HASH_CODE));
+		assertEquals(1, map.getStatistics().getEvictionCount());
+
+		// service2 is used: service3 is evicted
+		map.get(service2, HASH_CODE);
+		map.put(service1, HASH_CODE, CachedFilter.REAL_SERVICE);
+		assertEquals(2, map.size());
+		assertNotNull(map.get(service1, HASH_CODE));
+		assertNotNull(map.get(service2, HASH_CODE));
+		assertNull(map.get(service3, HASH_CODE));
+		assertEquals(2, map.getStatistics().getEvictionCount());
+
+		// reduce size
+		map.setMaxSize(1);
+		map.put(service3, HASH_CODE, CachedFilter.REAL_SERVICE);
+		assertEquals(1, map.size());
+		assertNotNull(map.get(service3, HASH_CODE));
+		assertEquals(4, map.getStatistics().getEvictionCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void setMaxSize_invalid() {
+		new CachedFilterMap().setMaxSize(0);
+	}
+
+	@Test
+	public void put_weakService() throws InterruptedException {
+		CachedFilterMap map = new CachedFilterMap();
+		Object service = new Object();
+		map.put(service, HASH_CODE, CachedFilter.REAL_SERVICE);
+		assertEquals(1, map.size());
+
+		service = null;
+		for (int i = 0; i < 50 && map.size() > 0; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertEquals("Entry must be removed once service is collected", 0, map.size());
+	}
+
+	@Test
+	public void put_weakFilteredService() throws InterruptedException {
+		CachedFilterMap map = new CachedFilterMap();
+		WrapperFilter filter = new WrapperFilter();
+		Object service = new Object();
+		map.put(service, HASH_CODE, new CachedFilter(filter, filter.getFilterServiceImpl(service)));
+		assertEquals(1, map.size());
+
+		service = null;
+		for (int i = 0; i < 50 && map.size() > 0; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertEquals("Entry of a filtered service must be removed once service is collected", 0, map.size());
+	}
+
+	@Test
+	public void get_filteredServiceCollected_createdAgain() throws InterruptedException {
+		CachedFilterMap map = new CachedFilterMap();
+		WrapperFilter filter = new WrapperFilter();
+		Object service = new Object();
+		map.put(service, HASH_CODE, new CachedFilter(filter, filter.getFilterServiceImpl(service)));
+		for (int i = 0; i < 50 && filter.nbCreated == 1; i++) {
+			System.gc();
+			Thread.sleep(10);
+			map.get(service, HASH_CODE);
+		}
+
+		// test
+		CachedFilter value = map.get(service, HASH_CODE);
+
+		// check
+		assertEquals("Filtered service must be created again once collected", 2, filter.nbCreated);
+		assertSame(service, ((Wrapper) value.getFilteredService()).service);
+		assertSame(filter.getMetrics(), value.getMetrics());
+		assertSame("Filtered service must be reused", value, map.get(service, HASH_CODE));
+	}
+
+	@Test
+	public void put_bounded_collectedServicesNotCounted() throws InterruptedException {
+		CachedFilterMap map = new CachedFilterMap(4, new CacheStatistics());
+		Object[] services = new Object[5];
+		for (int i = 0; i < 4; i++) {
+			services[i] = new Object();
+			map.put(services[i], HASH_CODE, CachedFilter.REAL_SERVICE);
+		}
+		// the cache is full: the first service is evicted
+		Object dropped = new Object();
+		map.put(dropped, HASH_CODE, CachedFilter.REAL_SERVICE);
+		assertEquals(1, map.getStatistics().getEvictionCount());
+
+		// a service is collected
+		dropped = null;
+		for (int i = 0; i < 50 && map.size() > 3; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertEquals("Entry must be removed once service is collected", 3, map.size());
+
+		// test
+		services[4] = new Object();
+		map.put(services[4], HASH_CODE, CachedFilter.REAL_SERVICE);
+
+		// check: the entry of the collected service made room
+		assertEquals(4, map.size());
+		for (int i = 1; i < 5; i++)
+			assertNotNull("Live entries must be kept", map.get(services[i], HASH_CODE));
+		assertEquals("No live entry must be evicted", 1, map.getStatistics().getEvictionCount());
+	}
+
+	@Test
+	public void remove_byValueAndMethods() {
+		CachedFilterMap map = new CachedFilterMap();
+		Object service1 = new Object();
+		Object service2 = new Object();
+		CachedFilter filtered = new CachedFilter("filter", new Object());
+		map.put(service1, HASH_CODE, filtered);
+		map.put(service1, TO_STRING, CachedFilter.REAL_SERVICE);
+		map.put(service2, HASH_CODE, CachedFilter.REAL_SERVICE);
+
+		assertFalse("Another value must not be removed", map.remove(service1, HASH_CODE, CachedFilter.REAL_SERVICE));
+		assertTrue(map.remove(service1, HASH_CODE, filtered));
+		assertNull(map.get(service1, HASH_CODE));
+		assertEquals(2, map.size());
+
+		assertEquals("Entries of all services are removed", 1,
+				map.removeMethods(Collections.singleton("hashCode()")));
+		assertNull(map.get(service2, HASH_CODE));
+		assertNotNull("Other methods are kept", map.get(service1, TO_STRING));
+		assertEquals(1, map.size());
+
+		map.put(service2, TO_STRING, filtered);
+		map.put(service2, TO_STRING, CachedFilter.REAL_SERVICE);
+		assertEquals("A replaced entry must be removed once", 2,
+				map.removeMethods(Collections.singleton("toString()")));
+		assertEquals(0, map.size());
+	}
+
+	@Test
+	public void keySet_copy() {
+		CachedFilterMap map = new CachedFilterMap();
+		Object service = new Object();
+		map.put(service, HASH_CODE, CachedFilter.REAL_SERVICE);
+
+		Set<String> keys = map.keySet();
+		assertEquals(1, keys.size());
+		assertTrue(keys.iterator().next().endsWith(".hashCode()"));
+
+		map.clear();
+		assertEquals("Keys are a copy", 1, keys.size());
+		assertEquals(0, map.keySet().size());
+		assertEquals(0, map.size());
+	}
+}
@@ -0,0 +1,184 @@
+package org.filterinterceptor.dispatch;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.filterinterceptor.spi.Filter;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DispatchTableTest {
+
+	@Test
+	public void getKey_withParameterTypes() throws NoSuchMethodException {
+		Method method = OverloadedService.class.getDeclaredMethod("call", int.class, String.class);
+
+		// test
+		String key = DispatchTable.getKey("Service", method);
+
+		// check
+		assertEquals("Key must contain the method name and the parameter types", "Service.call(int,java.lang.String)",
+				key);
+	}
+
+	@Test
+	public void get_overloadedMethods() throws NoSuchMethodException {
+		Method callInt = OverloadedService.class.getDeclaredMethod("call", int.class);
+		Method callString = OverloadedService.class.getDeclaredMethod("call", String.class);
+		Filter<?> filter = new OverloadedServiceFilter();
+
+		Map<String, Filter<?>> filters = new HashMap<String, Filter<?>>();
+		filters.put(DispatchTable.getKey(OverloadedService.class.getName(), callString), filter);
+
+		// test
+		DispatchTable table = new DispatchTable(filters);
+
+		// check
+		assertSame("Filter must be found on the filtered overloaded method", filter,
+				table.get(OverloadedService.class, callString));
+		assertNull("Filter must not be found on the other overloaded method",
+				table.get(OverloadedService.class, callInt));
+		// second call: read by method identity
+		assertSame("Filter must be found on the filtered overloaded method", filter,
+				table.get(OverloadedService.class, callString));
+		assertNull("Filter must not be found on the other overloaded method",
+				table.get(OverloadedService.class, callInt));
+	}
+
+	@Test
+	public void get_otherServiceClass() throws NoSuchMethodException {
+		Method callString = OverloadedService.class.getDeclaredMethod("call", String.class);
+
+		Map<String, Filter<?>> filters = new HashMap<String, Filter<?>>();
+		filters.put(DispatchTable.getKey(OverloadedService.class.getName(), callString),
+				new OverloadedServiceFilter());
+
+		// test
+		DispatchTable table = new DispatchTable(filters);
+
+		// check
+		assertNull("Filter must not be found on an other service class", table.get(Object.class, callString));
+	}
+
+	@Test
+	public void mayBeFiltered() throws NoSuchMethodException {
+		Method callString = OverloadedService.class.getDeclaredMethod("call", String.class);
+		Method toString = Object.class.getMethod("toString");
+
+		Map<String, Filter<?>> filters = new HashMap<String, Filter<?>>();
+		filters.put(DispatchTable.getKey(OverloadedService.class.getName(), callString),
+				new OverloadedServiceFilter());
+
+		// test
+		DispatchTable table = new DispatchTable(filters);
+
+		// check
+		assertTrue("Filtered method of filtered class", table.mayBeFiltered(OverloadedService.class, false, callString));
+		assertFalse("Method without filter", table.mayBeFiltered(OverloadedService.class, true, toString));
+		assertFalse("Class without filter", table.mayBeFiltered(Object.class, true, callString));
+		assertFalse("Interface must not be used",
+				table.mayBeFiltered(OverloadedServiceImpl.class, false, callString));
+		assertTrue("Interface must be used", table.mayBeFiltered(OverloadedServiceImpl.class, true, callString));
+		assertFalse("Empty table", DispatchTable.EMPTY.mayBeFiltered(OverloadedService.class, true, callString));
+	}
+
+	@Test
+	public void update_changedKeys() throws NoSuchMethodException {
+		Method callInt = OverloadedService.class.getDeclaredMethod("call", int.class);
+		Method callString = OverloadedService.class.getDeclaredMethod("call", String.class);
+		String callIntKey = DispatchTable.getKey(OverloadedService.class.getName(), callInt);
+		String callStringKey = DispatchTable.getKey(OverloadedService.class.getName(), callString);
+		Filter<?> filter = new OverloadedServiceFilter();
+
+		Map<String, Filter<?>> filters = new HashMap<String, Filter<?>>();
+		filters.put(callIntKey, filter);
+		filters.put(callStringKey, filter);
+		DispatchTable table = new DispatchTable(filters);
+		Map<String, Filter<?>> newFilters = new HashMap<String, Filter<?>>(filters);
+		newFilters.remove(callIntKey);
+
+		// test
+		DispatchTable updated = table.update(newFilters, Collections.singleton(callIntKey));
+
+		// check
+		assertNull("Filter of the changed key must be removed", updated.get(OverloadedService.class, callInt));
+		assertSame(filter, updated.get(OverloadedService.class, callString));
+		assertTrue("Name of another key must be kept", updated.mayBeFiltered(OverloadedService.class, false, callInt));
+		assertSame("Previous table must not change", filter, table.get(OverloadedService.class, callInt));
+
+		// test: last key of the names removed
+		newFilters = new HashMap<String, Filter<?>>();
+		updated = updated.update(newFilters, Collections.singleton(callStringKey));
+
+		// check
+		assertFalse("Names without key must be removed",
+				updated.mayBeFiltered(OverloadedService.class, false, callString));
+	}
+
+	@Test
+	public void find_typeHierarchy() throws NoSuchMethodException {
+		Method callString = OverloadedService.class.getDeclaredMethod("call", String.class);
+		Filter<?> filter = new OverloadedServiceFilter();
+
+		Map<String, Filter<?>> filters = new HashMap<String, Filter<?>>();
+		filters.put(DispatchTable.getKey(OverloadedService.class.getName(), callString), filter);
+
+		// test
+		DispatchTable table = new DispatchTable(filters);
+
+		// check: interface of a superclass
+		assertNull("Class only must not use its hierarchy", table.find(SubOverloadedService.class, false, callString));
+		assertSame("Filter of an interface of a superclass must be found", filter,
+				table.find(SubOverloadedService.class, true, callString));
+		assertSame("Filter must be kept", filter, table.find(SubOverloadedService.class, true, callString));
+		assertTrue(table.mayBeFiltered(SubOverloadedService.class, true, callString));
+		assertFalse(table.mayBeFiltered(SubOverloadedService.class, false, callString));
+	}
+
+	interface OverloadedService {
+		int call(int in);
+
+		int call(String in);
+
+		int call(int in1, String in2);
+	}
+
+	private static final class OverloadedServiceFilter extends Filter<OverloadedService> {
+		private OverloadedServiceFilter() {
+			super("overloaded service filter", 1);
+		}
+
+		@Override
+		public Class<? extends OverloadedService> getService() {
+			return OverloadedService.class;
+		}
+
+		@Override
+		public OverloadedService getFilterServiceImpl(OverloadedService service) {
+			return service;
+		}
+	}
+
+	private static class OverloadedServiceImpl implements OverloadedService {
+		@Override
+		public int call(int in) {
+			return in;
+		}
+
+		@Override
+		public int call(String in) {
+			return in.length();
+		}
+
+		@Override
+		public int call(int in1, String in2) {
+			return in1;
+		}
+	}
+
+	private static final class SubOverloadedService extends OverloadedServiceImpl {
+	}
+}
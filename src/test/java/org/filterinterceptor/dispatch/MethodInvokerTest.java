@@ -0,0 +1,98 @@
+package org.filterinterceptor.dispatch;
+
+import java.lang.reflect.Method;
+
+import org.filterinterceptor.sample.service.DtoSample1;
+import org.filterinterceptor.sample.service.IService;
+import org.filterinterceptor.sample.service.ServiceImpl;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MethodInvokerTest {
+
+	@Test
+	public void invoke_reflection() throws Throwable {
+		invoke(InvocationMode.REFLECTION);
+	}
+
+	@Test
+	public void invoke_methodHandle() throws Throwable {
+		invoke(InvocationMode.METHOD_HANDLE);
+	}
+
+	private void invoke(InvocationMode mode) throws Throwable {
+		IService service = new ServiceImpl();
+		DtoSample1 in = new DtoSample1(3, 0, null, null);
+
+		// test
+		Object ret = MethodInvoker.create(IService.class.getMethod("test4", DtoSample1.class, Integer.class), mode)
+				.invoke(service, new Object[] { in, 2 });
+
+		// check
+		assertEquals("Primitive result must be boxed", 6, ret);
+
+		// test
+		ret = MethodInvoker.create(IService.class.getMethod("test1", DtoSample1.class), mode).invoke(service,
+				new Object[] { in });
+
+		// check
+		assertSame("Service must be called", in, ret);
+	}
+
+	@Test
+	public void create_methodHandle_generatedClass() throws Throwable {
+		// test
+		Method method = IService.class.getMethod("test", int.class);
+		MethodInvoker invoker1 = MethodInvoker.create(method, InvocationMode.METHOD_HANDLE);
+		MethodInvoker invoker2 = MethodInvoker.create(method, InvocationMode.METHOD_HANDLE);
+
+		// check: one class by invoker, holding its handle as a constant
+		assertTrue("Invoker class must be generated", invoker1.getClass().getName().contains("$$Handle$$"));
+		assertNotSame("Each invoker must have its class", invoker1.getClass(), invoker2.getClass());
+		assertEquals("Generated invoker must call the method", new ServiceImpl().test(3),
+				invoker1.invoke(new ServiceImpl(), new Object[] { 3 }));
+	}
+
+	@Test
+	public void invoke_noParameter_reflection() throws Throwable {
+		invokeNoParameter(InvocationMode.REFLECTION);
+	}
+
+	@Test
+	public void invoke_noParameter_methodHandle() throws Throwable {
+		invokeNoParameter(InvocationMode.METHOD_HANDLE);
+	}
+
+	private void invokeNoParameter(InvocationMode mode) throws Throwable {
+		// test: proxies give null arguments for method without parameter
+		Object ret = MethodInvoker.create(Object.class.getMethod("toString"), mode).invoke("value", null);
+
+		// check
+		assertEquals("Method must be called", "value", ret);
+	}
+
+	@Test
+	public void invoke_exception_reflection() throws Throwable {
+		invokeException(InvocationMode.REFLECTION);
+	}
+
+	@Test
+	public void invoke_exception_methodHandle() throws Throwable {
+		invokeException(InvocationMode.METHOD_HANDLE);
+	}
+
+	private void invokeException(InvocationMode mode) throws Throwable {
+		Method method = IService.class.getMethod("test4", DtoSample1.class, Integer.class);
+
+		// test
+		try {
+			MethodInvoker.create(method, mode).invoke(new ServiceImpl(), new Object[] { null, 2 });
+			fail("Exception of the service must be thrown");
+		} catch (NullPointerException e) {
+			// check
+			assertEquals("Exception must be thrown from the service", ServiceImpl.class.getName(),
+					e.getStackTrace()[0].getClassName());
+		}
+	}
+}
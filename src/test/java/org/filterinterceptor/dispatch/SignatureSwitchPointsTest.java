@@ -0,0 +1,52 @@
+package org.filterinterceptor.dispatch;
+
+import java.lang.invoke.SwitchPoint;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.filterinterceptor.sample.service.DtoSample1;
+import org.filterinterceptor.sample.service.IService;
+import org.filterinterceptor.sample.service.ServiceImpl;
+import org.filterinterceptor.sample.spi.Test1Filter;
+import org.filterinterceptor.sample.spi.TestFilter;
+import org.filterinterceptor.spi.Filter;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SignatureSwitchPointsTest {
+
+	@Test
+	public void invalidateChanges_changedSignaturesOnly() throws NoSuchMethodException {
+		SignatureSwitchPoints switchPoints = new SignatureSwitchPoints();
+		Method test = IService.class.getMethod("test", int.class);
+		Method test1 = IService.class.getMethod("test1", DtoSample1.class);
+		String testKey = DispatchTable.getKey(ServiceImpl.class.getName(), test);
+		String test1Key = DispatchTable.getKey(ServiceImpl.class.getName(), test1);
+		Filter<?> filter = new TestFilter();
+
+		SwitchPoint testSwitchPoint = switchPoints.get(test);
+		SwitchPoint test1SwitchPoint = switchPoints.get(test1);
+		assertSame("Same switch point must be returned while valid", testSwitchPoint, switchPoints.get(test));
+
+		// new filter on test
+		Map<String, Filter<?>> oldFilters = Collections.<String, Filter<?>> singletonMap(test1Key, new Test1Filter());
+		Map<String, Filter<?>> newFilters = new HashMap<String, Filter<?>>(oldFilters);
+		newFilters.put(testKey, filter);
+		Set<String> signatures = switchPoints.invalidateChanges(oldFilters, newFilters);
+
+		assertEquals(Collections.singleton("test(int)"), signatures);
+		assertTrue("Switch point of test must be invalidated", testSwitchPoint.hasBeenInvalidated());
+		assertFalse("Switch point of test1 must stay valid", test1SwitchPoint.hasBeenInvalidated());
+		SwitchPoint newTestSwitchPoint = switchPoints.get(test);
+		assertNotSame("A new switch point must be created", testSwitchPoint, newTestSwitchPoint);
+
+		// filter removed
+		switchPoints.invalidateChanges(newFilters, oldFilters);
+		assertTrue("New switch point of test must be invalidated", newTestSwitchPoint.hasBeenInvalidated());
+		assertFalse("Switch point of test1 must stay valid", test1SwitchPoint.hasBeenInvalidated());
+	}
+}
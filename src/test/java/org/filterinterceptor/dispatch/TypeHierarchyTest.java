@@ -0,0 +1,46 @@
+package org.filterinterceptor.dispatch;
+
+import java.io.Serializable;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TypeHierarchyTest {
+
+	interface Root {
+	}
+
+	interface Left extends Root {
+	}
+
+	interface Right extends Root, Serializable {
+	}
+
+	static class Base implements Right {
+		private static final long serialVersionUID = 1L;
+	}
+
+	static class Service extends Base implements Left {
+		private static final long serialVersionUID = 1L;
+	}
+
+	@Test
+	public void of_classesThenInterfacesBreadthFirst() {
+		// test
+		Class<?>[] hierarchy = TypeHierarchy.of(Service.class);
+
+		// check
+		assertArrayEquals("Classes first, then interfaces breadth first", new Class<?>[] { Service.class, Base.class,
+				Left.class, Right.class, Root.class, Serializable.class }, hierarchy);
+		assertSame("Hierarchy must be computed once", hierarchy, TypeHierarchy.of(Service.class));
+	}
+
+	@Test
+	public void of_objectAndInterface() {
+		assertArrayEquals("Object is kept only for itself", new Class<?>[] { Object.class },
+				TypeHierarchy.of(Object.class));
+		assertArrayEquals("Interface and its super-interfaces", new Class<?>[] { Left.class, Root.class },
+				TypeHierarchy.of(Left.class));
+	}
+}
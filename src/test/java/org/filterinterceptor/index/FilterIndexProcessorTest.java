@@ -0,0 +1,104 @@
+package org.filterinterceptor.index;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.filterinterceptor.sample.service.DtoSample1;
+import org.filterinterceptor.sample.service.ServiceImpl;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class FilterIndexProcessorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String FILTER_HEADER = "package sample;\n" //
+			+ "import org.filterinterceptor.sample.service.*;\n" //
+			+ "import org.filterinterceptor.spi.*;\n";
+
+	@Test
+	public void process_writeIndex() throws IOException {
+		String source = FILTER_HEADER //
+				+ "@IndexedFilter(description = \"Sample filter\", priority = 5)\n" //
+				+ "public class SampleFilter extends Filter<IService> {\n" //
+				+ "  public SampleFilter() { super(\"Sample filter\", 5); }\n" //
+				+ "  public Class<ServiceImpl> getService() { return ServiceImpl.class; }\n" //
+				+ "  public IService getFilterServiceImpl(IService service) { return new Impl(); }\n" //
+				+ "  static class Impl extends ServiceImpl {\n" //
+				+ "    @FilteredMethod public DtoSample1 test1(DtoSample1 in) { return in; }\n" //
+				+ "    @FilteredMethod public int test4(DtoSample1 in1, Integer in2) { return 0; }\n" //
+				+ "    public int test(int in) { return in; }\n" //
+				+ "  }\n" //
+				+ "}\n";
+
+		// test
+		assertTrue("Compilation must succeed", compile("sample.SampleFilter", source));
+
+		// check
+		File indexFile = new File(folder.getRoot(), FilterIndex.RESOURCE);
+		assertTrue("Index must be written", indexFile.isFile());
+		List<FilterIndex.Entry> entries;
+		InputStreamReader reader = new InputStreamReader(new FileInputStream(indexFile), "UTF-8");
+		try {
+			entries = FilterIndex.read(reader, indexFile.getName());
+		} finally {
+			reader.close();
+		}
+		assertEquals(1, entries.size());
+		FilterIndex.Entry entry = entries.get(0);
+		assertEquals("sample.SampleFilter", entry.getFilterClassName());
+		assertEquals("Sample filter", entry.getDescription());
+		assertEquals(5, entry.getPriority());
+		assertEquals(ServiceImpl.class.getName(), entry.getServiceClassName());
+		assertEquals("sample.SampleFilter$Impl", entry.getImplementationClassName());
+		assertEquals(Arrays.asList("test1(" + DtoSample1.class.getName() + ")", "test4(" + DtoSample1.class.getName()
+				+ ",java.lang.Integer)"), entry.getSignatures());
+	}
+
+	@Test
+	public void process_noImplementation_error() throws IOException {
+		String source = FILTER_HEADER //
+				+ "@IndexedFilter(description = \"Sample filter\", priority = 5)\n" //
+				+ "public class SampleFilter extends Filter<IService> {\n" //
+				+ "  public SampleFilter() { super(\"Sample filter\", 5); }\n" //
+				+ "  public Class<ServiceImpl> getService() { return ServiceImpl.class; }\n" //
+				+ "  public IService getFilterServiceImpl(IService service) { return new ServiceImpl(); }\n" //
+				+ "}\n";
+
+		// test
+		assertFalse("Filter without implementation class can't be indexed", compile("sample.SampleFilter", source));
+	}
+
+	private boolean compile(String className, final String source) {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		Assume.assumeNotNull(compiler);
+		JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/')
+				+ JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		List<String> options = Arrays.asList("-proc:only", "-processor", FilterIndexProcessor.class.getName(),
+				"-classpath", System.getProperty("java.class.path"), "-d", folder.getRoot().getPath());
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		return compiler.getTask(null, null, diagnostics, options, null, Collections.singletonList(file)).call();
+	}
+}
@@ -0,0 +1,73 @@
+package org.filterinterceptor.index;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FilterIndexTest {
+
+	@Test
+	public void write_read() throws IOException {
+		FilterIndex.Entry entry = new FilterIndex.Entry("a.MyFilter", "My filter", 3, "a.Service", "a.MyFilter$Impl",
+				Arrays.asList("test(int)", "test([Ljava.lang.String;,a.Dto)"));
+		FilterIndex.Entry noMethod = new FilterIndex.Entry("a.Other", "Other", -1, "a.Service", "a.Other$Impl",
+				Collections.<String> emptyList());
+
+		// test
+		StringWriter writer = new StringWriter();
+		new FilterIndex(Arrays.asList(entry, noMethod)).write(writer);
+		List<FilterIndex.Entry> read = FilterIndex.read(new StringReader(writer.toString()), "test");
+
+		// check
+		assertEquals(2, read.size());
+		FilterIndex.Entry readEntry = read.get(0);
+		assertEquals("a.MyFilter", readEntry.getFilterClassName());
+		assertEquals("My filter", readEntry.getDescription());
+		assertEquals(3, readEntry.getPriority());
+		assertEquals("a.Service", readEntry.getServiceClassName());
+		assertEquals("a.MyFilter$Impl", readEntry.getImplementationClassName());
+		assertEquals(entry.getSignatures(), readEntry.getSignatures());
+		assertEquals(-1, read.get(1).getPriority());
+		assertTrue(read.get(1).getSignatures().isEmpty());
+	}
+
+	@Test
+	public void read_malformedLinesIgnored() throws IOException {
+
+		// test
+		List<FilterIndex.Entry> read = FilterIndex.read(new StringReader("# comment\n\na.F\tdesc\n"
+				+ "a.F\tdesc\tNaN\ta.S\ta.I\n" + "a.G\tdesc\t1\ta.S\ta.I\tm()\n"), "test");
+
+		// check
+		assertEquals(1, read.size());
+		assertEquals("a.G", read.get(0).getFilterClassName());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void entry_separatorInField() {
+		new FilterIndex.Entry("a.F", "with\ttab", 1, "a.S", "a.I", Collections.<String> emptyList());
+	}
+
+	@Test
+	public void get_firstEntryKept() {
+		FilterIndex.Entry first = new FilterIndex.Entry("a.F", "first", 1, "a.S", "a.I",
+				Collections.<String> emptyList());
+		FilterIndex.Entry second = new FilterIndex.Entry("a.F", "second", 1, "a.S", "a.I",
+				Collections.<String> emptyList());
+
+		// test
+		FilterIndex index = new FilterIndex(Arrays.asList(first, second));
+
+		// check
+		assertEquals(1, index.size());
+		assertSame(first, index.get("a.F"));
+		assertNull(index.get("a.G"));
+	}
+}
@@ -0,0 +1,109 @@
+package org.filterinterceptor.loader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class JarFolderTest {
+
+	private static final File SAMPLE_JAR = new File("./src/test/resources/others_filters/sample.jar");
+	private static final File SAMPLE2_JAR = new File("./src/test/resources/others_filters/sample2.jar");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static void copy(File from, File to) throws IOException {
+		InputStream in = new FileInputStream(from);
+		try {
+			OutputStream out = new FileOutputStream(to);
+			try {
+				byte[] buffer = new byte[8192];
+				for (int read; (read = in.read(buffer)) >= 0;)
+					out.write(buffer, 0, read);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void scan_wrongFolder_throwIOException() throws IOException {
+		new JarFolder(new File(folder.getRoot(), "FAKE"), getClass().getClassLoader()).scan();
+	}
+
+	@Test
+	public void scan_newAndChangedJarsOnly() throws IOException {
+		File jar1 = new File(folder.getRoot(), "a.jar");
+		File jar2 = new File(folder.getRoot(), "b.jar");
+		copy(SAMPLE_JAR, jar1);
+		copy(SAMPLE2_JAR, jar2);
+		new File(folder.getRoot(), "not-a-jar.txt").createNewFile();
+		JarFolder jars = new JarFolder(folder.getRoot(), getClass().getClassLoader());
+
+		// first scan: all JARs
+		JarFolder.Changes changes = jars.scan();
+		assertEquals(2, changes.getLoaded().size());
+		assertTrue(changes.getUnloaded().isEmpty());
+		JarClassLoader loader1 = changes.getLoaded().get(0);
+		assertEquals(jar1.getCanonicalPath(), loader1.getFingerprint().getPath());
+		assertEquals(jar1.length(), loader1.getFingerprint().getSize());
+		assertTrue("Each JAR must have its own class loader", changes.getLoaded().get(1) != loader1);
+
+		// nothing changed
+		assertTrue("Unchanged JARs must not be loaded again", jars.scan().isEmpty());
+
+		// touched: content unchanged
+		assertTrue(jar1.setLastModified(jar1.lastModified() + 10000));
+		assertTrue("Touched JAR must not be loaded again", jars.scan().isEmpty());
+
+		// content changed
+		copy(SAMPLE2_JAR, jar1);
+		assertTrue(jar1.setLastModified(jar1.lastModified() + 20000));
+		changes = jars.scan();
+		assertEquals("Changed JAR must be loaded again", 1, changes.getLoaded().size());
+		assertEquals(jar1.getCanonicalPath(), changes.getLoaded().get(0).getFingerprint().getPath());
+		assertFalse(loader1.getFingerprint().getHash().equals(
+				changes.getLoaded().get(0).getFingerprint().getHash()));
+		assertEquals(1, changes.getUnloaded().size());
+		assertSame(loader1, changes.getUnloaded().get(0));
+
+		// removed
+		assertTrue(jar2.delete());
+		changes = jars.scan();
+		assertTrue(changes.getLoaded().isEmpty());
+		assertEquals(1, changes.getUnloaded().size());
+		assertEquals(1, jars.getLoaders().size());
+	}
+
+	@Test
+	public void getOwnResources_jarOnly() throws IOException {
+		File jar = new File(folder.getRoot(), "a.jar");
+		copy(SAMPLE_JAR, jar);
+		JarClassLoader loader = new JarFolder(folder.getRoot(), getClass().getClassLoader()).scan().getLoaded()
+				.get(0);
+
+		// check
+		int own = 0;
+		for (Enumeration<?> e = loader.getOwnResources(FilterLoader.PROVIDERS_RESOURCE); e
+				.hasMoreElements(); e.nextElement())
+			own++;
+		int all = 0;
+		for (Enumeration<?> e = loader.getResources(FilterLoader.PROVIDERS_RESOURCE); e
+				.hasMoreElements(); e.nextElement())
+			all++;
+		assertEquals("JAR declares its filters", 1, own);
+		assertTrue("Parent declares filters too", all > own);
+	}
+}
@@ -0,0 +1,73 @@
+package org.filterinterceptor.loader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.filterinterceptor.FilterService;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class JarFolderWatcherTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static void copy(File from, File to) throws IOException {
+		InputStream in = new FileInputStream(from);
+		try {
+			OutputStream out = new FileOutputStream(to);
+			try {
+				byte[] buffer = new byte[8192];
+				for (int read; (read = in.read(buffer)) >= 0;)
+					out.write(buffer, 0, read);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructor_noFolder() {
+		new JarFolderWatcher(new FilterService(null));
+	}
+
+	@Test
+	public void start_reloadOnJarChanges() throws Exception {
+		FilterService fs = new FilterService(folder.getRoot().getPath());
+		fs.initFilters();
+		int nbFilters = fs.getAllFilters().size();
+		JarFolderWatcher watcher = new JarFolderWatcher(fs, 100);
+
+		// test
+		watcher.start();
+		try {
+			assertTrue(watcher.isWatching());
+			copy(new File("./src/test/resources/others_filters/sample2.jar"), new File(folder.getRoot(),
+					"sample2.jar"));
+
+			// check
+			for (int i = 0; i < 200 && fs.getAllFilters().size() == nbFilters; i++)
+				Thread.sleep(50);
+			assertEquals("Filter of the new JAR must be loaded", nbFilters + 1, fs.getAllFilters().size());
+			assertEquals(1, watcher.getReloadCount());
+
+			// removed
+			assertTrue(new File(folder.getRoot(), "sample2.jar").delete());
+			for (int i = 0; i < 200 && fs.getAllFilters().size() != nbFilters; i++)
+				Thread.sleep(50);
+			assertEquals("Filter of the removed JAR must be unloaded", nbFilters, fs.getAllFilters().size());
+		} finally {
+			watcher.stop();
+		}
+		assertFalse(watcher.isWatching());
+	}
+}
@@ -1,5 +1,10 @@
 package org.filterinterceptor.management;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.Observer;
@@ -9,6 +14,7 @@ import javax.management.InstanceNotFoundException;
 import javax.management.IntrospectionException;
 import javax.management.MBeanRegistrationException;
 import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
 import javax.management.MalformedObjectNameException;
 import javax.management.NotCompliantMBeanException;
 import javax.management.ObjectName;
@@ -19,7 +25,9 @@ import org.filterinterceptor.management.mbean.FilterManagement;
 import org.filterinterceptor.management.mbean.FilterServiceManagement;
 import org.filterinterceptor.sample.spi.Test1Filter;
 import org.filterinterceptor.spi.Filter;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import static org.junit.Assert.*;
 
@@ -27,6 +35,9 @@ import static org.easymock.EasyMock.*;
 
 public class FilterServiceMBeansRegisterTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@SuppressWarnings("serial")
 	@Test
 	public void initMBean_testFirstCall() throws MalformedObjectNameException, InstanceAlreadyExistsException,
@@ -97,4 +108,40 @@ public class FilterServiceMBeansRegisterTest {
 		FilterServiceMBeansRegister.MBEAN_DEFAULT_SERVER.getObjectInstance(objectName);
 		fail("Previous line must throw an exception, been FilterServiceManagement must have removed");
 	}
+
+	@Test
+	public void refreshMBean_unloadedFilter_unregistered() throws Exception {
+		File jar = folder.newFile("sample2.jar");
+		InputStream in = new FileInputStream("./src/test/resources/others_filters/sample2.jar");
+		try {
+			OutputStream out = new FileOutputStream(jar);
+			try {
+				byte[] buffer = new byte[8192];
+				for (int read; (read = in.read(buffer)) >= 0;)
+					out.write(buffer, 0, read);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		FilterService fs = new FilterService(folder.getRoot().getPath());
+		MBeanServer mbs = MBeanServerFactory.newMBeanServer();
+		FilterServiceMBeansRegister register = new FilterServiceMBeansRegister(fs);
+		register.setMBeanServer(mbs);
+		fs.initFilters();
+		register.initMBean();
+		ObjectName filterNames = new ObjectName(FilterServiceMBeansRegister.MBEAN_DEFAULT_DOMAIN
+				+ ":filter=ServiceImpl,*");
+		int nbFilters = mbs.queryNames(filterNames, null).size();
+		assertEquals(fs.getAllFilters().size(), nbFilters);
+
+		// test
+		assertTrue(jar.delete());
+		fs.initFilters();
+
+		// check
+		assertEquals("MBean of the unloaded filter must be unregistered", nbFilters - 1,
+				mbs.queryNames(filterNames, null).size());
+	}
 }
\ No newline at end of file
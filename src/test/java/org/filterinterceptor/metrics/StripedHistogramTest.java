@@ -0,0 +1,76 @@
+package org.filterinterceptor.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StripedHistogramTest {
+
+	@Test
+	public void getPercentile_empty() {
+		StripedHistogram histogram = new StripedHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(50));
+		assertEquals(0, histogram.getMax());
+	}
+
+	@Test
+	public void getPercentile_exactUnder8ns() {
+		StripedHistogram histogram = new StripedHistogram();
+		for (int i = 0; i < 4; i++)
+			histogram.record(i);
+
+		assertEquals(4, histogram.getCount());
+		assertEquals(1, histogram.getPercentile(50));
+		assertEquals(3, histogram.getPercentile(99));
+	}
+
+	@Test
+	public void getPercentile_bucketError() {
+		StripedHistogram histogram = new StripedHistogram();
+		for (int i = 1; i <= 1000; i++)
+			histogram.record(i * 1000L);
+
+		long p50 = histogram.getPercentile(50);
+		assertTrue("p50 must be in [500us, 625us]: " + p50, p50 >= 500000 && p50 <= 625000);
+		long p99 = histogram.getPercentile(99);
+		assertTrue("p99 must be in [990us, 1000us]: " + p99, p99 >= 990000 && p99 <= 1000000);
+		assertEquals("Max must be exact", 1000000, histogram.getMax());
+		assertEquals("Percentile can't be higher than max", 1000000, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void record_outOfRange() {
+		StripedHistogram histogram = new StripedHistogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+
+		assertEquals(2, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(50));
+		assertEquals(Long.MAX_VALUE, histogram.getMax());
+	}
+
+	@Test
+	public void reset() {
+		StripedHistogram histogram = new StripedHistogram();
+		histogram.record(100);
+		histogram.reset();
+
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+	}
+
+	@Test
+	public void record_rowCreatedByCellUsed() {
+		StripedHistogram histogram = new StripedHistogram();
+		assertEquals(0, histogram.getRowCount());
+
+		// test
+		histogram.record(100);
+		histogram.record(200);
+
+		// check
+		assertEquals(1, histogram.getRowCount());
+		assertEquals(2, histogram.getCount());
+	}
+}
@@ -0,0 +1,341 @@
+package org.filterinterceptor.proxy.bytecode;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.filterinterceptor.FilterService;
+import org.filterinterceptor.dispatch.InvocationMode;
+import org.filterinterceptor.sample.service.DtoSample1;
+import org.filterinterceptor.sample.service.DtoSample2;
+import org.filterinterceptor.sample.service.DtoSample3;
+import org.filterinterceptor.sample.service.IService;
+import org.filterinterceptor.sample.service.ServiceImpl;
+import org.filterinterceptor.spi.Filter;
+import org.filterinterceptor.spi.FilteredMethod;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BytecodeProxyFactoryTest {
+
+	@Test(expected = IllegalStateException.class)
+	public void createProxy_withoutFilterService_throwException() {
+		BytecodeProxyFactory proxyFactory = new BytecodeProxyFactory(null);
+
+		// test
+		proxyFactory.createProxy(null, false);
+
+		// check
+		fail("Create proxy with no FilterService defined must throw an IllegalStateException");
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void createProxy_withoutService_throwException() {
+		BytecodeProxyFactory proxyFactory = new BytecodeProxyFactory(new FilterService("FAKE"));
+
+		// test
+		proxyFactory.createProxy(null, false);
+
+		// check
+		fail("Create proxy with no service defined must throw an NPE");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void createClassProxy_finalClass_throwException() {
+		BytecodeProxyFactory proxyFactory = new BytecodeProxyFactory(new FilterService("FAKE"));
+
+		// test
+		proxyFactory.createClassProxy("final class", false);
+
+		// check
+		fail("Create class proxy of a final class must throw an IllegalArgumentException");
+	}
+
+	@Test
+	public void createProxy_realService() {
+		IService service = new ServiceImpl();
+
+		// test
+		IService proxyService = new BytecodeProxyFactory(new FilterServiceOnTest0(null)).createProxy(service, false);
+
+		// check
+		assertNotNull("Proxy must not be null", proxyService);
+		assertFalse("Proxy must not extend the service class", proxyService instanceof ServiceImpl);
+		assertEquals("Real service must be called", 10, proxyService.test(10));
+		DtoSample1 in = new DtoSample1(2, 0, null, null);
+		assertSame("Real service must be called", in, proxyService.test1(in));
+		assertEquals("Real service must be called", 6, proxyService.test4(in, 3));
+		assertEquals("toString must be called on real service", service.toString(), proxyService.toString());
+		assertEquals("hashCode must be called on real service", service.hashCode(), proxyService.hashCode());
+	}
+
+	@Test
+	public void createProxy_callSite_boundUntilMethodChange() throws IOException {
+		final Map<String, AtomicInteger> nbSearches = new HashMap<String, AtomicInteger>();
+		FilterService fs = new FilterService("./src/test/resources/others_filters") {
+			@Override
+			public Filter<?> getActiveFilter(Class<?> serviceClass, Method method) {
+				AtomicInteger nb = nbSearches.get(method.getName());
+				if (nb == null)
+					nbSearches.put(method.getName(), nb = new AtomicInteger());
+				nb.incrementAndGet();
+				return super.getActiveFilter(serviceClass, method);
+			}
+		};
+		fs.initFilters();
+		Filter<?> testFilter = getFilter(fs, "Service ServiceImpl Test");
+		fs.setFilterActiveStatus(testFilter, false);
+		fs.setInvocationMode(InvocationMode.CALL_SITE);
+		IService proxy = new BytecodeProxyFactory(fs).createProxy((IService) new ServiceImpl(), false);
+
+		// first calls bind call sites
+		assertEquals(1, proxy.test0(1));
+		assertEquals(2, proxy.test(2));
+		assertEquals(1, nbSearches.get("test0").get());
+		assertEquals(1, nbSearches.get("test").get());
+		assertEquals("Calls from call sites must be plain calls", 0, fs.getDispatchStatistics().getServiceCallCount());
+
+		// next calls use bound call sites
+		assertEquals(3, proxy.test0(3));
+		assertEquals(4, proxy.test(4));
+		assertEquals("Call site must not be bound again", 1, nbSearches.get("test0").get());
+		assertEquals("Call site must not be bound again", 1, nbSearches.get("test").get());
+
+		// change of filter on test2 only
+		fs.setFilterActiveStatus(getFilter(fs, "Service ServiceImpl Test 2"), false);
+		assertEquals(5, proxy.test0(5));
+		assertEquals(6, proxy.test(6));
+		assertEquals("Call site of another method must not be bound again", 1, nbSearches.get("test0").get());
+		assertEquals("Call site of another method must not be bound again", 1, nbSearches.get("test").get());
+
+		// change of filter on test
+		fs.setFilterActiveStatus(testFilter, true);
+		assertEquals(7, proxy.test0(7));
+		assertEquals("Call site of another method must not be bound again", 1, nbSearches.get("test0").get());
+		long invocations = testFilter.getMetrics().getInvocationCount();
+		assertEquals(8, proxy.test(8));
+		assertTrue("Call site of the method changed must be bound again", nbSearches.get("test").get() > 1);
+		assertEquals("Filter called from a call site must be measured", invocations + 1, testFilter.getMetrics()
+				.getInvocationCount());
+
+		// change of mode: call sites call the binding
+		fs.setInvocationMode(InvocationMode.REFLECTION);
+		assertEquals(9, proxy.test0(9));
+		assertEquals(10, proxy.test(10));
+		assertEquals("Filter must be measured", invocations + 2, testFilter.getMetrics().getInvocationCount());
+	}
+
+	@Test
+	public void createProxy_sampled_overheadMeasured() throws IOException {
+		for (InvocationMode mode : new InvocationMode[] { InvocationMode.REFLECTION, InvocationMode.CALL_SITE }) {
+			FilterService fs = new FilterService("./src/test/resources/others_filters");
+			fs.initFilters();
+			fs.setInvocationMode(mode);
+			fs.setOverheadSamplingRate(1);
+			Filter<?> testFilter = getFilter(fs, "Service ServiceImpl Test");
+			IService proxy = new BytecodeProxyFactory(fs).createProxy((IService) new ServiceImpl(), true);
+
+			// test
+			assertEquals(1, proxy.test0(1));
+			proxy.test(2);
+
+			// check: the real service is called directly by the proxy
+			assertEquals("Sampled calls must be measured, " + mode, 1, fs.getDispatchStatistics()
+					.getLookupLatencies().getCount());
+			assertEquals(1, fs.getDispatchStatistics().getCallLatencies().getCount());
+			assertEquals(1, fs.getDispatchStatistics().getFilterCallCount());
+			assertEquals(0, fs.getDispatchStatistics().getServiceCallCount());
+			assertEquals("Filter must be measured, " + mode, 1, testFilter.getMetrics().getInvocationCount());
+		}
+	}
+
+	private static Filter<?> getFilter(FilterService fs, String description) {
+		for (Filter<?> filter : fs.getAllFilters())
+			if (filter.getDescription().equals(description))
+				return filter;
+		throw new IllegalArgumentException(description);
+	}
+
+	@Test
+	public void createProxy_filter() {
+		Filter<?> filter = new ServiceFilterChangeTreatment();
+		FilterService fs = new FilterServiceOnTest0(filter);
+
+		// test
+		IService proxyService = new BytecodeProxyFactory(fs).createProxy(new ServiceImpl(), false);
+
+		// check
+		assertEquals("Filter must be called", 10 + ServiceFilterChangeTreatment.VALUE, proxyService.test0(10));
+		assertEquals("Real service must be called on a method not filtered", 10, proxyService.test(10));
+		assertEquals("Filter must be measured", 1, filter.getMetrics().getInvocationCount());
+		assertEquals(1, filter.getMetrics().getLatencies().getCount());
+		assertEquals("Filter call must be counted", 1, fs.getDispatchStatistics().getFilterCallCount());
+		assertEquals("Service call must be direct", 0, fs.getDispatchStatistics().getServiceCallCount());
+	}
+
+	@Test
+	public void createProxy_filterImplCreatedAtFirstCall() {
+		ServiceFilterChangeTreatment filter = new ServiceFilterChangeTreatment();
+		IService proxyService = new BytecodeProxyFactory(new FilterServiceOnTest0(filter)).createProxy(
+				new ServiceImpl(), false);
+
+		// test
+		proxyService.test(10);
+
+		// check
+		assertEquals("Filter implementation must not be created before a filtered call", 0, filter.nbCreated);
+		proxyService.test0(10);
+		proxyService.test0(10);
+		assertEquals("Filter implementation must be created once", 1, filter.nbCreated);
+	}
+
+	@Test
+	public void createClassProxy_filterOnInterface() {
+		// test
+		ServiceImpl proxyService = new BytecodeProxyFactory(new FilterServiceOnTest0(
+				new ServiceFilterChangeTreatment())).createClassProxy(new ServiceImpl(), false);
+
+		// check
+		assertEquals("Filter implementing the interface must be called", 10 + ServiceFilterChangeTreatment.VALUE,
+				proxyService.test0(10));
+		assertEquals("Real service must be called on a method not filtered", 10, proxyService.test(10));
+	}
+
+	@Test
+	public void createClassProxy_serviceWithoutInterface() {
+		ClassService service = new ClassService();
+
+		// test
+		ClassService proxyService = new BytecodeProxyFactory(new FilterService(null) {
+			@Override
+			public Filter<?> getActiveFilter(Class<?> serviceClass, Method method) {
+				return method.getName().equals("add") ? new ClassServiceFilter() : null;
+			}
+		}).createClassProxy(service, false);
+
+		// check
+		assertTrue("Proxy must extend the service class", proxyService.getClass() != ClassService.class);
+		assertEquals("Filter extending the service class must be called", 2L * (3L + 4), proxyService.add(3L, 4));
+		assertEquals("Real service must be called on a method not filtered", "service", proxyService.name());
+	}
+
+	@Test
+	public void createClassProxy_filterNotExtendingClass_callRealService() {
+		ClassService service = new ClassService();
+
+		// test
+		ClassService proxyService = new BytecodeProxyFactory(new FilterService(null) {
+			@Override
+			public Filter<?> getActiveFilter(Class<?> serviceClass, Method method) {
+				return new ServiceFilterChangeTreatment();
+			}
+		}).createClassProxy(service, false);
+
+		// check
+		assertEquals("Real service must be called", 7L, proxyService.add(3L, 4));
+	}
+
+	/*
+	 * Usefull for test
+	 */
+	class FilterServiceOnTest0 extends FilterService {
+		private final Filter<?> filter;
+
+		FilterServiceOnTest0(Filter<?> filter) {
+			super(null);
+			this.filter = filter;
+		}
+
+		@Override
+		public Filter<?> getActiveFilter(Class<?> serviceClass, Method method) {
+			return method.getName().equals("test0") ? filter : null;
+		}
+	}
+
+	public static class ClassService {
+		public long add(long a, int b) {
+			return a + b;
+		}
+
+		public String name() {
+			return "service";
+		}
+	}
+
+	private static final class ClassServiceFilter extends Filter<ClassService> {
+		private ClassServiceFilter() {
+			super("class service filter", 1);
+		}
+
+		@Override
+		public Class<? extends ClassService> getService() {
+			return ClassService.class;
+		}
+
+		@Override
+		public ClassService getFilterServiceImpl(final ClassService service) {
+			return new ClassService() {
+				@Override
+				@FilteredMethod
+				public long add(long a, int b) {
+					return 2 * service.add(a, b);
+				}
+			};
+		}
+	}
+
+	private static final class ServiceFilterChangeTreatment extends Filter<IService> {
+		public static final int VALUE = 500;
+
+		private int nbCreated;
+
+		private ServiceFilterChangeTreatment() {
+			super("change treatment filter", 1);
+		}
+
+		@Override
+		public Class<? extends IService> getService() {
+			return IService.class;
+		}
+
+		@Override
+		public IService getFilterServiceImpl(IService service) {
+			nbCreated++;
+			return new IService() {
+				@Override
+				public int test4(DtoSample1 in1, Integer in2) {
+					return 0;
+				}
+
+				@Override
+				public DtoSample3 test3(DtoSample3 in) {
+					return null;
+				}
+
+				@Override
+				public DtoSample2 test2(DtoSample2 in) {
+					return null;
+				}
+
+				@Override
+				public DtoSample1 test1(DtoSample1 in) {
+					return null;
+				}
+
+				@Override
+				public int test(int in) {
+					return 0;
+				}
+
+				@Override
+				@FilteredMethod
+				public int test0(int in) {
+					return in + VALUE;
+				}
+			};
+		}
+	}
+}
@@ -1,10 +1,16 @@
 package org.filterinterceptor.proxy.dynamic;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.filterinterceptor.DispatchStatistics;
 import org.filterinterceptor.FilterService;
+import org.filterinterceptor.dispatch.InvocationMode;
 import org.filterinterceptor.proxy.dynamic.FilterInterceptor;
 import org.filterinterceptor.sample.service.IService;
+import org.filterinterceptor.sample.service.ServiceImpl;
+import org.filterinterceptor.sample.spi.TestFilter;
+import org.filterinterceptor.spi.Filter;
 import org.junit.Test;
 
 
@@ -32,7 +38,13 @@ public class FilterInterceptorTest {
 		int paramValue = 10;
 		Object retValue = new Object();
 		Method method = IService.class.getDeclaredMethod("test0", int.class);
-		expect(fs.invoke(service, extendToInterfaces, method, paramValue)).andReturn(retValue);
+		expect(fs.getInvocationMode()).andReturn(InvocationMode.REFLECTION).anyTimes();
+		expect(fs.getGeneration()).andReturn(1L).anyTimes();
+		expect(fs.getDispatchStatistics()).andReturn(new DispatchStatistics()).anyTimes();
+		expect(fs.isCallSampled()).andReturn(false).anyTimes();
+		expect(fs.findActiveFilter((Class<?>) anyObject(), eq(extendToInterfaces), (Method) anyObject())).andReturn(
+				null).anyTimes();
+		expect(fs.invokeTarget(service, method, paramValue)).andReturn(retValue);
 
 		// replay
 		replay(service, fs);
@@ -46,4 +58,33 @@ public class FilterInterceptorTest {
 		assertNotNull("Result must not be null", ret);
 		assertEquals("FilterService must be called", retValue, ret);
 	}
+
+	@Test
+	public void invoke_resolveOncePerGeneration() throws Throwable {
+		final AtomicInteger nbSearches = new AtomicInteger();
+		FilterService fs = new FilterService(null) {
+			@Override
+			public Filter<?> getActiveFilter(Class<?> serviceClass, Method method) {
+				nbSearches.incrementAndGet();
+				return null;
+			}
+		};
+		Method method = IService.class.getDeclaredMethod("test0", int.class);
+		IService service = new ServiceImpl();
+		FilterInterceptor<IService> fi = new FilterInterceptor<IService>(fs, service, false);
+
+		// first call resolves targets
+		assertEquals(3, fi.invoke(service, method, new Object[] { 3 }));
+		int nbSearchesByResolution = nbSearches.get();
+		assertTrue("Targets must be resolved", nbSearchesByResolution > 0);
+
+		// next calls use resolved targets
+		assertEquals(4, fi.invoke(service, method, new Object[] { 4 }));
+		assertEquals("Filters must not be searched again", nbSearchesByResolution, nbSearches.get());
+
+		// configuration change
+		fs.setFilterPriority(new TestFilter(), 2);
+		assertEquals(5, fi.invoke(service, method, new Object[] { 5 }));
+		assertEquals("Filters must be searched again after a change", 2 * nbSearchesByResolution, nbSearches.get());
+	}
 }
@@ -1,8 +1,15 @@
 package org.filterinterceptor.proxy.dynamic;
 
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+import org.filterinterceptor.DispatchStatistics;
 import org.filterinterceptor.FilterService;
+import org.filterinterceptor.dispatch.InvocationMode;
+import org.filterinterceptor.management.mbean.FilterServiceManagement;
 import org.filterinterceptor.proxy.dynamic.ServiceProxyFactory;
 import org.filterinterceptor.sample.service.IService;
+import org.filterinterceptor.sample.service.ServiceImpl;
 import org.junit.Test;
 
 
@@ -63,6 +70,23 @@ public class ServiceProxyFactoryTest {
 		invoke(true);
 	}
 
+	@Test
+	public void invoke_countedInMBean() throws IOException {
+		FilterService fs = new FilterService("./src/test/resources/others_filters");
+		fs.initFilters();
+		FilterServiceManagement management = new FilterServiceManagement(fs);
+		IService proxyService = new ServiceProxyFactory(fs).createProxy((IService) new ServiceImpl(), true);
+
+		// test
+		assertEquals(1, proxyService.test0(1));
+		proxyService.test(2);
+		proxyService.test(3);
+
+		// check
+		assertEquals("Calls of the filter must be counted", 2, management.getFilteredCalls());
+		assertEquals("Calls of the real service must be counted", 1, management.getRealServiceCalls());
+	}
+
 	private void invoke(boolean extendToInterfaces) throws Throwable, NoSuchMethodException {
 		FilterService fs = createMock(FilterService.class);
 		IService service = createMock(IService.class);
@@ -70,9 +94,14 @@ public class ServiceProxyFactoryTest {
 		// expect
 		int paramValue = 1;
 		int retValue = 2;
-		expect(
-				fs.invoke(anyObject(), eq(extendToInterfaces),
-						eq(IService.class.getDeclaredMethod("test0", int.class)), eq(paramValue))).andReturn(retValue);
+		expect(fs.getInvocationMode()).andReturn(InvocationMode.REFLECTION).anyTimes();
+		expect(fs.getGeneration()).andReturn(1L).anyTimes();
+		expect(fs.getDispatchStatistics()).andReturn(new DispatchStatistics()).anyTimes();
+		expect(fs.isCallSampled()).andReturn(false).anyTimes();
+		expect(fs.findActiveFilter((Class<?>) anyObject(), eq(extendToInterfaces), (Method) anyObject())).andReturn(
+				null).anyTimes();
+		expect(fs.invokeTarget(service, IService.class.getDeclaredMethod("test0", int.class), paramValue)).andReturn(
+				retValue);
 
 		// replay
 		replay(service, fs);
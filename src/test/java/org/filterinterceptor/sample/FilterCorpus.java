@@ -0,0 +1,215 @@
+package org.filterinterceptor.sample;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.filterinterceptor.loader.FilterLoader;
+
+/**
+ * Generator of synthetic filter JARs, for load benchmarks
+ * <p>
+ * A corpus has services (an interface <code>gen.service.ServiceK</code> with
+ * {@value #NB_METHODS} methods and its implementation
+ * <code>gen.service.ServiceKImpl</code>) and filters, the filter <i>i</i>
+ * filtering one method of the service <i>i % services</i>. Filters are
+ * spread on JAR files, each one with its
+ * <code>META-INF/services/org.filterinterceptor.spi.Filter</code> and the
+ * classes of the services its filters use (JARs are loaded by distinct class
+ * loaders, whose parent is the application class loader).
+ * <p>
+ * Sources are compiled at once with the system Java compiler, the classes are
+ * kept in memory.
+ */
+public final class FilterCorpus {
+
+	/**
+	 * Number of methods by service
+	 */
+	public static final int NB_METHODS = 4;
+
+	private FilterCorpus() {
+	}
+
+	/**
+	 * Write the JAR files of a corpus
+	 *
+	 * @param folder
+	 *            the folder of the JAR files, must exist
+	 * @param name
+	 *            the name of the corpus: prefix of the JAR files, package and
+	 *            descriptions of the filters, so several corpora can be in the
+	 *            same folder
+	 * @param nbServices
+	 *            the number of services
+	 * @param nbFilters
+	 *            the number of filters
+	 * @param nbJars
+	 *            the number of JAR files, filters are spread evenly
+	 * @return the JAR files written
+	 * @throws IOException
+	 *             if a JAR can't be written
+	 * @throws IllegalStateException
+	 *             if there is no Java compiler or the sources can't be
+	 *             compiled
+	 */
+	public static List<File> generate(File folder, String name, int nbServices, int nbFilters, int nbJars)
+			throws IOException {
+		List<JavaFileObject> sources = new ArrayList<JavaFileObject>();
+		for (int k = 0; k < nbServices; k++) {
+			sources.add(source("gen.service.Service" + k, serviceSource(k)));
+			sources.add(source("gen.service.Service" + k + "Impl", serviceImplSource(k)));
+		}
+		for (int i = 0; i < nbFilters; i++)
+			sources.add(source(filterClassName(name, i), filterSource(name, i, i % nbServices)));
+		Map<String, byte[]> classes = compile(sources);
+
+		List<File> jars = new ArrayList<File>();
+		int filtersByJar = (nbFilters + nbJars - 1) / nbJars;
+		for (int j = 0; j < nbJars; j++) {
+			File jar = new File(folder, String.format("%s-%05d.jar", name, j));
+			int first = j * filtersByJar;
+			int last = Math.min(first + filtersByJar, nbFilters);
+			writeJar(jar, name, first, last, nbServices, classes);
+			jars.add(jar);
+		}
+		return jars;
+	}
+
+	private static void writeJar(File jar, String name, int first, int last, int nbServices,
+			Map<String, byte[]> classes) throws IOException {
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+		try {
+			StringBuilder providers = new StringBuilder();
+			boolean[] services = new boolean[nbServices];
+			for (int i = first; i < last; i++) {
+				String filterClassName = filterClassName(name, i);
+				providers.append(filterClassName).append('\n');
+				writeClass(out, filterClassName, classes);
+				writeClass(out, filterClassName + "$Impl", classes);
+				services[i % nbServices] = true;
+			}
+			for (int k = 0; k < nbServices; k++)
+				if (services[k]) {
+					writeClass(out, "gen.service.Service" + k, classes);
+					writeClass(out, "gen.service.Service" + k + "Impl", classes);
+				}
+			out.putNextEntry(new JarEntry(FilterLoader.PROVIDERS_RESOURCE));
+			out.write(providers.toString().getBytes("UTF-8"));
+			out.closeEntry();
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeClass(JarOutputStream out, String className, Map<String, byte[]> classes)
+			throws IOException {
+		out.putNextEntry(new JarEntry(className.replace('.', '/') + ".class"));
+		out.write(classes.get(className));
+		out.closeEntry();
+	}
+
+	private static String filterClassName(String name, int i) {
+		return "gen." + name + ".Filter" + i;
+	}
+
+	private static String serviceSource(int k) {
+		StringBuilder source = new StringBuilder("package gen.service;\npublic interface Service" + k + " {\n");
+		for (int m = 0; m < NB_METHODS; m++)
+			source.append("  int method").append(m).append("(int in);\n");
+		return source.append("}\n").toString();
+	}
+
+	private static String serviceImplSource(int k) {
+		StringBuilder source = new StringBuilder("package gen.service;\npublic class Service" + k
+				+ "Impl implements Service" + k + " {\n");
+		for (int m = 0; m < NB_METHODS; m++)
+			source.append("  public int method").append(m).append("(int in) { return in; }\n");
+		return source.append("}\n").toString();
+	}
+
+	private static String filterSource(String name, int i, int k) {
+		String service = "gen.service.Service" + k;
+		return "package gen." + name + ";\n" //
+				+ "import org.filterinterceptor.spi.*;\n" //
+				+ "public class Filter" + i + " extends Filter<" + service + "> {\n" //
+				+ "  public Filter" + i + "() { super(\"" + name + " filter " + i + "\", " + i + "); }\n" //
+				+ "  public Class<" + service + "Impl> getService() { return " + service + "Impl.class; }\n" //
+				+ "  public " + service + " getFilterServiceImpl(" + service + " service) { return new Impl(); }\n" //
+				+ "  static class Impl extends " + service + "Impl {\n" //
+				+ "    @FilteredMethod public int method" + (i / NB_METHODS % NB_METHODS)
+				+ "(int in) { return in + 1; }\n" //
+				+ "  }\n" //
+				+ "}\n";
+	}
+
+	private static JavaFileObject source(String className, final String source) {
+		return new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/')
+				+ JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+	}
+
+	/**
+	 * Compile sources in memory
+	 *
+	 * @return the bytecode by class name
+	 */
+	private static Map<String, byte[]> compile(List<JavaFileObject> sources) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null)
+			throw new IllegalStateException("No Java compiler, a JDK is needed");
+		final Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(diagnostics, null, null);
+		JavaFileManager fileManager = new ForwardingJavaFileManager<StandardJavaFileManager>(standardFileManager) {
+			@Override
+			public JavaFileObject getJavaFileForOutput(Location location, final String className,
+					JavaFileObject.Kind kind, FileObject sibling) {
+				return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension),
+						kind) {
+					@Override
+					public OutputStream openOutputStream() {
+						return new ByteArrayOutputStream() {
+							@Override
+							public void close() {
+								classes.put(className, toByteArray());
+							}
+						};
+					}
+				};
+			}
+		};
+		try {
+			List<String> options = Arrays.asList("-proc:none", "-classpath", System.getProperty("java.class.path"));
+			if (!compiler.getTask(null, fileManager, diagnostics, options, null, sources).call())
+				throw new IllegalStateException("Can't compile the corpus: " + diagnostics.getDiagnostics());
+		} finally {
+			fileManager.close();
+		}
+		return classes;
+	}
+}
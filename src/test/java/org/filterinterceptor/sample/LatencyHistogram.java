@@ -0,0 +1,97 @@
+package org.filterinterceptor.sample;
+
+/**
+ * Histogram of latencies in nanoseconds, for benchmarks
+ * <p>
+ * Values are counted in log-linear buckets: exact under 128 ns, then 64
+ * buckets by power of two (less than 1.6% of error). Recording is not
+ * synchronized: use one histogram by thread, then {@link #add(LatencyHistogram)}
+ * them.
+ */
+public final class LatencyHistogram {
+
+	private static final int LINEAR = 128;
+	private static final int SUB_BUCKETS = 64;
+	private static final int SUB_BITS = 6;
+
+	private final long[] counts = new long[LINEAR + 58 * SUB_BUCKETS];
+	private long count;
+	private long max;
+
+	/**
+	 * Count a latency
+	 *
+	 * @param nanos
+	 *            the latency, negative values are counted as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts[index(value)]++;
+		count++;
+		if (value > max)
+			max = value;
+	}
+
+	/**
+	 * Add the latencies of another histogram
+	 *
+	 * @param other
+	 *            the histogram to add
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < counts.length; i++)
+			counts[i] += other.counts[i];
+		count += other.count;
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * @return the number of latencies recorded
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the highest latency, exact
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Get a percentile: the highest value of the bucket of the latency
+	 *
+	 * @param percentile
+	 *            the percentile, from 0 to 100
+	 * @return the latency, 0 if nothing is recorded
+	 */
+	public long getPercentile(double percentile) {
+		if (count == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(max, highestValue(i));
+		}
+		return max;
+	}
+
+	private static int index(long value) {
+		if (value < LINEAR)
+			return (int) value;
+		// value >> shift is in [64, 127]
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (value >> shift) - SUB_BUCKETS;
+	}
+
+	private static long highestValue(int index) {
+		if (index < LINEAR)
+			return index;
+		int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+		long mantissa = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((mantissa + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,139 @@
+package org.filterinterceptor.sample;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.filterinterceptor.FilterService;
+import org.filterinterceptor.cache.CachedFilter;
+import org.filterinterceptor.cache.CachedFilterMap;
+import org.filterinterceptor.sample.service.DtoSample1;
+import org.filterinterceptor.sample.service.IService;
+import org.filterinterceptor.sample.service.ServiceImpl;
+
+/**
+ * Contention benchmark of the filter lookup done on each proxied call
+ * <p>
+ * Compares the lock-free configuration snapshot with the same lookups done
+ * under a shared read lock (how filters were read before snapshots), with
+ * many threads.
+ * <p>
+ * Arguments: [number of threads (default 64)] [duration of each run in
+ * seconds (default 5)]
+ */
+public final class MainContentionTest {
+
+	/**
+	 * Written with lookup results so they are not optimized away
+	 */
+	static volatile int blackhole;
+
+	public static void main(String[] args) throws Exception {
+		int nbThreads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int duration = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		// Create Filter bean service
+		final FilterService filterService = new FilterService("./src/test/resources/others_filters");
+		try {
+			filterService.initFilters();
+		} catch (IOException e) {
+			throw new RuntimeException("Can't init filters: " + e.getMessage(), e);
+		}
+		final Method filteredMethod = IService.class.getMethod("test1", DtoSample1.class);
+		final Method unfilteredMethod = IService.class.getMethod("test0", int.class);
+		final IService service = new ServiceImpl();
+		final CachedFilterMap cache = new CachedFilterMap();
+		cache.put(service, filteredMethod, CachedFilter.REAL_SERVICE);
+
+		final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+		final Lock readLock = rwLock.readLock();
+
+		System.out.printf("%d threads, %ds by run%n", nbThreads, duration);
+
+		// warm up
+		run(nbThreads, 1, new Lookup() {
+			@Override
+			public Object lookup(int i) {
+				return filterService.getActiveFilter(ServiceImpl.class, (i & 1) == 0 ? filteredMethod
+						: unfilteredMethod);
+			}
+		});
+
+		long locked = run(nbThreads, duration, new Lookup() {
+			@Override
+			public Object lookup(int i) {
+				Object filter;
+				readLock.lock();
+				try {
+					filter = filterService.getActiveFilter(ServiceImpl.class, (i & 1) == 0 ? filteredMethod
+							: unfilteredMethod);
+				} finally {
+					readLock.unlock();
+				}
+				readLock.lock();
+				try {
+					return filter != null ? cache.get(service, filteredMethod) : filter;
+				} finally {
+					readLock.unlock();
+				}
+			}
+		});
+		System.out.printf("Read lock (before): %,d lookups/s%n", locked / duration);
+
+		long snapshot = run(nbThreads, duration, new Lookup() {
+			@Override
+			public Object lookup(int i) {
+				Object filter = filterService.getActiveFilter(ServiceImpl.class, (i & 1) == 0 ? filteredMethod
+						: unfilteredMethod);
+				return filter != null ? cache.get(service, filteredMethod) : filter;
+			}
+		});
+		System.out.printf("Snapshot (after)  : %,d lookups/s (x%.1f)%n", snapshot / duration, (double) snapshot
+				/ locked);
+	}
+
+	/**
+	 * Run lookups on several threads
+	 *
+	 * @return the number of lookups done
+	 */
+	private static long run(int nbThreads, int duration, final Lookup lookup) throws InterruptedException {
+		final AtomicLong total = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		final long end = System.nanoTime() + duration * 1000000000L;
+		Thread[] threads = new Thread[nbThreads];
+		for (int t = 0; t < nbThreads; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					long count = 0;
+					int sink = 0;
+					while (System.nanoTime() < end) {
+						for (int i = 0; i < 1000; i++)
+							sink += lookup.lookup(i) == null ? 0 : 1;
+						count += 1000;
+					}
+					blackhole = sink;
+					total.addAndGet(count);
+				}
+			};
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+		return total.get();
+	}
+
+	private interface Lookup {
+		Object lookup(int i);
+	}
+}
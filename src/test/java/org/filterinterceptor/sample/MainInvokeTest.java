@@ -0,0 +1,251 @@
+package org.filterinterceptor.sample;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+
+import org.filterinterceptor.FilterService;
+import org.filterinterceptor.proxy.dynamic.ServiceProxyFactory;
+import org.filterinterceptor.proxy.spring.FilterInterceptor;
+import org.filterinterceptor.sample.service.DtoSample1;
+import org.filterinterceptor.sample.service.IService;
+import org.filterinterceptor.sample.service.ServiceImpl;
+import org.filterinterceptor.spi.Filter;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.framework.ProxyFactory;
+
+/**
+ * Benchmark of the calls of a service through a proxy calling
+ * {@link FilterService#invoke(Object, boolean, Method, Object...)}
+ * <p>
+ * Cases: JDK proxy ({@link ServiceProxyFactory}) or Spring AOP proxy (
+ * {@link FilterInterceptor}), cache on or off, filters active or not, method
+ * with primitive ({@link IService#test(int)}) or DTO (
+ * {@link IService#test4(DtoSample1, Integer)}, and
+ * {@link IService#test1(DtoSample1)} which has a sample filter) parameters;
+ * each case with 1, 4, 16 and 64 threads.
+ * <p>
+ * Each case is run in warm up iterations then in measured iterations, like
+ * JMH does (which can't be used offline): results are the throughput of all
+ * threads (mean and standard deviation of the iterations), the average time of
+ * a call and the bytes allocated by call (JVM thread allocation counters, as
+ * JMH <code>-prof gc</code>).
+ * <p>
+ * Logs must be off: run with
+ * <code>-Dlogback.configurationFile=logback-benchmark.xml</code>
+ * <p>
+ * Arguments: [numbers of threads (default 1,4,16,64)] [measured iterations
+ * (default 5)] [duration of an iteration in ms (default 1000)] [warm up
+ * iterations (default 3)]
+ */
+public final class MainInvokeTest {
+
+	/**
+	 * Written with call results so they are not optimized away
+	 */
+	static volatile Object blackhole;
+
+	private static final Integer IN2 = 2;
+
+	/**
+	 * Proxies tested
+	 */
+	private enum Proxy {
+		DYNAMIC {
+			@Override
+			IService create(FilterService filterService, IService service) {
+				return new ServiceProxyFactory(filterService).createProxy(service, true);
+			}
+		},
+		SPRING {
+			@Override
+			IService create(FilterService filterService, IService service) {
+				FilterInterceptor interceptor = new FilterInterceptor();
+				interceptor.setFilterService(filterService);
+				interceptor.setExtendToInterfaces(true);
+				ProxyFactory proxyFactory = new ProxyFactory(service);
+				proxyFactory.addAdvice(interceptor);
+				return (IService) proxyFactory.getProxy();
+			}
+		};
+
+		abstract IService create(FilterService filterService, IService service);
+	}
+
+	/**
+	 * Methods tested
+	 */
+	private enum Call {
+		PRIMITIVE("test") {
+			@Override
+			Object call(IService service, DtoSample1 dto) {
+				return service.test(1);
+			}
+
+			@Override
+			Method getMethod() throws NoSuchMethodException {
+				return IService.class.getMethod("test", int.class);
+			}
+		},
+		DTO_FILTERED("test1") {
+			@Override
+			Object call(IService service, DtoSample1 dto) {
+				return service.test1(dto);
+			}
+
+			@Override
+			Method getMethod() throws NoSuchMethodException {
+				return IService.class.getMethod("test1", DtoSample1.class);
+			}
+		},
+		DTO("test4") {
+			@Override
+			Object call(IService service, DtoSample1 dto) {
+				return service.test4(dto, IN2);
+			}
+
+			@Override
+			Method getMethod() throws NoSuchMethodException {
+				return IService.class.getMethod("test4", DtoSample1.class, Integer.class);
+			}
+		};
+
+		private final String methodName;
+
+		private Call(String methodName) {
+			this.methodName = methodName;
+		}
+
+		abstract Object call(IService service, DtoSample1 dto);
+
+		abstract Method getMethod() throws NoSuchMethodException;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] threads = (args.length > 0 ? args[0] : "1,4,16,64").split(",");
+		int nbIterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int duration = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		int nbWarmUps = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+		if (LoggerFactory.getLogger(FilterService.class).isInfoEnabled())
+			System.err.println("WARNING: logs are on, run with -Dlogback.configurationFile=logback-benchmark.xml");
+		System.out.printf("%d warm up and %d measured iterations of %d ms%n", nbWarmUps, nbIterations, duration);
+		System.out.printf("%-8s %-6s %-8s %-6s %-7s %7s %17s %12s %10s%n", "proxy", "cache", "filters", "method",
+				"filter", "threads", "ops/s", "avg ns/op", "B/op");
+
+		for (Proxy proxy : Proxy.values())
+			for (boolean isCacheActive : new boolean[] { true, false })
+				for (boolean isFiltered : new boolean[] { true, false })
+					for (Call call : Call.values()) {
+						FilterService filterService = new FilterService("./src/test/resources/others_filters",
+								isCacheActive);
+						filterService.initFilters();
+						if (!isFiltered)
+							for (Filter<?> filter : filterService.getAllFilters())
+								filterService.setFilterActiveStatus(filter, false);
+						boolean hasFilter = filterService.findActiveFilter(ServiceImpl.class, true,
+								call.getMethod()) != null;
+						IService service = proxy.create(filterService, new ServiceImpl());
+
+						for (String nbThreads : threads) {
+							int n = Integer.parseInt(nbThreads.trim());
+							for (int i = 0; i < nbWarmUps; i++)
+								run(n, duration, service, call);
+							double[] throughputs = new double[nbIterations];
+							long ops = 0;
+							long bytes = 0;
+							for (int i = 0; i < nbIterations; i++) {
+								long[] result = run(n, duration, service, call);
+								throughputs[i] = result[0] * 1000.0 / duration;
+								ops += result[0];
+								bytes += result[1];
+							}
+							double mean = mean(throughputs);
+							String allocation = bytes < 0 ? "n/a" : String.format("%.1f", (double) bytes / ops);
+							System.out.printf("%-8s %-6s %-8s %-6s %-7s %7d %,10.0f +-%3.0f%% %12.1f %10s%n", proxy,
+									isCacheActive ? "on" : "off", isFiltered ? "active" : "off", call.methodName,
+									hasFilter ? "yes" : "no", n, mean, 100 * stdDev(throughputs, mean) / mean,
+									n * 1e9 / mean, allocation);
+						}
+					}
+	}
+
+	/**
+	 * Call a method on several threads during an iteration
+	 *
+	 * @return the number of calls and the bytes allocated (negative if
+	 *         unknown)
+	 */
+	private static long[] run(int nbThreads, int duration, final IService service, final Call call)
+			throws InterruptedException {
+		final long[][] results = new long[nbThreads][];
+		final CountDownLatch start = new CountDownLatch(1);
+		final long end = System.nanoTime() + duration * 1000000L;
+		final DtoSample1 dto = new DtoSample1(1, 1.0, "a", null);
+		Thread[] workers = new Thread[nbThreads];
+		for (int t = 0; t < nbThreads; t++) {
+			final int index = t;
+			workers[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					long allocated = getAllocatedBytes();
+					long count = 0;
+					Object sink = null;
+					while (System.nanoTime() < end) {
+						for (int i = 0; i < 100; i++)
+							sink = call.call(service, dto);
+						count += 100;
+					}
+					long allocatedAfter = getAllocatedBytes();
+					blackhole = sink;
+					results[index] = new long[] { count, allocated < 0 ? -1 : allocatedAfter - allocated };
+				}
+			};
+			workers[t].start();
+		}
+		start.countDown();
+		for (Thread worker : workers)
+			worker.join();
+
+		long[] total = new long[2];
+		for (long[] result : results) {
+			total[0] += result[0];
+			total[1] = total[1] < 0 || result[1] < 0 ? -1 : total[1] + result[1];
+		}
+		return total;
+	}
+
+	/**
+	 * Get the bytes allocated by the current thread
+	 *
+	 * @return the bytes allocated, -1 if the JVM can't count them
+	 */
+	static long getAllocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+		if (!sunThreads.isThreadAllocatedMemorySupported() || !sunThreads.isThreadAllocatedMemoryEnabled())
+			return -1;
+		return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static double mean(double[] values) {
+		double sum = 0;
+		for (double value : values)
+			sum += value;
+		return sum / values.length;
+	}
+
+	private static double stdDev(double[] values, double mean) {
+		double sum = 0;
+		for (double value : values)
+			sum += (value - mean) * (value - mean);
+		return values.length > 1 ? Math.sqrt(sum / (values.length - 1)) : 0;
+	}
+}
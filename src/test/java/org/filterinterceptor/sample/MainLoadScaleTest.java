@@ -0,0 +1,117 @@
+package org.filterinterceptor.sample;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.filterinterceptor.FilterService;
+import org.filterinterceptor.spi.Filter;
+
+/**
+ * Load benchmark with synthetic filter corpora (see {@link FilterCorpus})
+ * <p>
+ * For each number of filters, times:
+ * <ul>
+ * <li>cold start: first {@link FilterService#initFilters()} of a new service
+ * <li>rebuild: {@link FilterService#initFilters()} without JAR change, the
+ * JAR files are checked and all the access collections built again
+ * <li>reload: a JAR with 1% new filters added, then removed
+ * <li>priority change: {@link FilterService#setFilterPriority(Filter, int)},
+ * only the keys of the filter are updated
+ * </ul>
+ * Arguments: [numbers of filters (default 10,100,1000,10000)] [number of runs
+ * (default 5)]
+ */
+public final class MainLoadScaleTest {
+
+	public static void main(String[] args) throws Exception {
+		String[] sizes = (args.length > 0 ? args[0] : "10,100,1000,10000").split(",");
+		int nbRuns = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		System.out.printf("Median of %d runs, in ms%n", nbRuns);
+		System.out.printf("%8s %6s %10s %10s %10s %10s %10s%n", "filters", "JARs", "cold start", "rebuild",
+				"add JAR", "remove JAR", "priority");
+		for (String size : sizes)
+			run(Integer.parseInt(size.trim()), nbRuns);
+	}
+
+	private static void run(int nbFilters, int nbRuns) throws IOException {
+		int nbServices = Math.max(1, nbFilters / 10);
+		int nbJars = Math.max(1, nbFilters / 50);
+		File folder = createFolder("corpus");
+		File extraFolder = createFolder("extra");
+		try {
+			FilterCorpus.generate(folder, "corpus", nbServices, nbFilters, nbJars);
+			File extraJar = FilterCorpus.generate(extraFolder, "extra", nbServices, Math.max(1, nbFilters / 100), 1)
+					.get(0);
+			File addedJar = new File(folder, extraJar.getName());
+
+			long[] coldStart = new long[nbRuns];
+			long[] rebuild = new long[nbRuns];
+			long[] addJar = new long[nbRuns];
+			long[] removeJar = new long[nbRuns];
+			long[] priority = new long[nbRuns];
+			for (int run = 0; run < nbRuns; run++) {
+				FilterService filterService = new FilterService(folder.getPath());
+				long start = System.nanoTime();
+				filterService.initFilters();
+				coldStart[run] = System.nanoTime() - start;
+				check(filterService, nbFilters);
+
+				start = System.nanoTime();
+				filterService.initFilters();
+				rebuild[run] = System.nanoTime() - start;
+
+				if (!extraJar.renameTo(addedJar))
+					throw new IOException("Can't move " + extraJar);
+				start = System.nanoTime();
+				filterService.initFilters();
+				addJar[run] = System.nanoTime() - start;
+
+				if (!addedJar.renameTo(extraJar))
+					throw new IOException("Can't move " + addedJar);
+				start = System.nanoTime();
+				filterService.initFilters();
+				removeJar[run] = System.nanoTime() - start;
+				check(filterService, nbFilters);
+
+				Filter<?> filter = filterService.getAllFilters().get(run % nbFilters);
+				start = System.nanoTime();
+				filterService.setFilterPriority(filter, filter.getPriority() + nbFilters);
+				priority[run] = System.nanoTime() - start;
+			}
+			System.out.printf("%8d %6d %10.1f %10.1f %10.1f %10.1f %10.3f%n", nbFilters, nbJars, median(coldStart),
+					median(rebuild), median(addJar), median(removeJar), median(priority));
+		} finally {
+			delete(folder);
+			delete(extraFolder);
+		}
+	}
+
+	private static void check(FilterService filterService, int nbFilters) {
+		int nbLoaded = filterService.getAllFilters().size() - 2; // sample filters of the classpath
+		if (nbLoaded != nbFilters)
+			throw new IllegalStateException(nbLoaded + " filters loaded instead of " + nbFilters);
+	}
+
+	private static double median(long[] times) {
+		long[] sorted = times.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2] / 1000000.0;
+	}
+
+	private static File createFolder(String name) throws IOException {
+		File folder = File.createTempFile(name, "");
+		if (!folder.delete() || !folder.mkdir())
+			throw new IOException("Can't create folder " + folder);
+		return folder;
+	}
+
+	private static void delete(File folder) {
+		List<File> files = Arrays.asList(folder.listFiles());
+		for (File file : files)
+			file.delete();
+		folder.delete();
+	}
+}
@@ -0,0 +1,214 @@
+package org.filterinterceptor.sample;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.filterinterceptor.FilterService;
+import org.filterinterceptor.proxy.dynamic.ServiceProxyFactory;
+import org.filterinterceptor.sample.service.DtoSample1;
+import org.filterinterceptor.sample.service.DtoSample2;
+import org.filterinterceptor.sample.service.DtoSample3;
+import org.filterinterceptor.sample.service.IService;
+import org.filterinterceptor.sample.service.ServiceImpl;
+import org.filterinterceptor.spi.Filter;
+
+/**
+ * Stress test: latency of proxied calls while filters are changed
+ * <p>
+ * Many threads call the methods of a proxied {@link IService} (with a chosen
+ * mix of methods) while an operator thread calls, in turn,
+ * {@link FilterService#setFilterActiveStatus(Filter, boolean)},
+ * {@link FilterService#setFilterPriority(Filter, int)},
+ * {@link FilterService#clearCache()} and {@link FilterService#initFilters()}
+ * at a chosen rate. The latency of every call is recorded: percentiles of a
+ * run without operator are printed first, to compare.
+ * <p>
+ * Logs must be off: run with
+ * <code>-Dlogback.configurationFile=logback-benchmark.xml</code>
+ * <p>
+ * Arguments: [number of threads (default 16)] [duration of each run in
+ * seconds (default 10)] [operator changes by second (default 20)] [method mix
+ * (default test=40,test0=30,test1=20,test4=10)]
+ */
+public final class MainReloadStressTest {
+
+	/**
+	 * Written with call results so they are not optimized away
+	 */
+	static volatile Object blackhole;
+
+	private static final Integer IN2 = 2;
+
+	public static void main(String[] args) throws Exception {
+		int nbThreads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int duration = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int changeRate = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		String[] mix = parseMix(args.length > 3 ? args[3] : "test=40,test0=30,test1=20,test4=10");
+
+		final FilterService filterService = new FilterService("./src/test/resources/others_filters", true);
+		filterService.initFilters();
+		IService service = new ServiceProxyFactory(filterService).createProxy(new ServiceImpl(), true);
+
+		System.out.printf("%d threads, %ds by run, %d changes/s, mix %s%n", nbThreads, duration, changeRate,
+				args.length > 3 ? args[3] : "test=40,test0=30,test1=20,test4=10");
+		System.out.printf("%-12s %12s %9s %9s %9s %9s %9s%n", "run", "calls", "p50 us", "p99 us", "p99.9 us",
+				"max us", "changes");
+
+		// warm up
+		run("warm up", filterService, service, mix, nbThreads, 1, 0);
+
+		run("no change", filterService, service, mix, nbThreads, duration, 0);
+		run("changes", filterService, service, mix, nbThreads, duration, changeRate);
+	}
+
+	/**
+	 * Parse a method mix: method=weight,...
+	 *
+	 * @return the method of each percent
+	 */
+	private static String[] parseMix(String mix) {
+		List<String> methods = new ArrayList<String>();
+		List<Integer> weights = new ArrayList<Integer>();
+		int total = 0;
+		for (String entry : mix.split(",")) {
+			String[] methodWeight = entry.trim().split("=");
+			methods.add(methodWeight[0]);
+			weights.add(Integer.parseInt(methodWeight[1]));
+			total += weights.get(weights.size() - 1);
+		}
+		String[] slots = new String[100];
+		int slot = 0;
+		for (int i = 0; i < methods.size(); i++)
+			for (int end = (int) Math.round(100.0 * sumTo(weights, i + 1) / total); slot < end; slot++)
+				slots[slot] = methods.get(i);
+		return slots;
+	}
+
+	private static int sumTo(List<Integer> weights, int end) {
+		int sum = 0;
+		for (int i = 0; i < end; i++)
+			sum += weights.get(i);
+		return sum;
+	}
+
+	private static void run(String name, final FilterService filterService, final IService service, final String[] mix,
+			int nbThreads, int duration, final int changeRate) throws InterruptedException {
+		final LatencyHistogram[] histograms = new LatencyHistogram[nbThreads];
+		final CountDownLatch start = new CountDownLatch(1);
+		final long end = System.nanoTime() + duration * 1000000000L;
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < nbThreads; t++) {
+			final LatencyHistogram histogram = new LatencyHistogram();
+			histograms[t] = histogram;
+			final Random random = new Random(t);
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					DtoSample1 dto1 = new DtoSample1(1, 1.0, "a", null);
+					DtoSample2 dto2 = new DtoSample2(1, null, "a", null);
+					DtoSample3 dto3 = new DtoSample3(BigDecimal.ONE);
+					Object sink = null;
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					long now = System.nanoTime();
+					while (now < end) {
+						String method = mix[random.nextInt(mix.length)];
+						if ("test".equals(method))
+							sink = service.test(1);
+						else if ("test0".equals(method))
+							sink = service.test0(1);
+						else if ("test1".equals(method))
+							sink = service.test1(dto1);
+						else if ("test2".equals(method))
+							sink = service.test2(dto2);
+						else if ("test3".equals(method))
+							sink = service.test3(dto3);
+						else
+							sink = service.test4(dto1, IN2);
+						long after = System.nanoTime();
+						histogram.record(after - now);
+						now = after;
+					}
+					blackhole = sink;
+				}
+			});
+		}
+
+		final LatencyHistogram changes = new LatencyHistogram();
+		if (changeRate > 0)
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random();
+					try {
+						start.await();
+						long next = System.nanoTime();
+						for (int i = 0; next < end; i++) {
+							long wait = next - System.nanoTime();
+							if (wait > 0)
+								Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+							long before = System.nanoTime();
+							change(filterService, i % 4, random);
+							changes.record(System.nanoTime() - before);
+							next += 1000000000L / changeRate;
+						}
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			});
+
+		for (Thread thread : threads)
+			thread.start();
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+
+		LatencyHistogram calls = new LatencyHistogram();
+		for (LatencyHistogram histogram : histograms)
+			calls.add(histogram);
+		System.out.printf("%-12s %,12d %9.1f %9.1f %9.1f %9.1f %9d%n", name, calls.getCount(),
+				calls.getPercentile(50) / 1000.0, calls.getPercentile(99) / 1000.0, calls.getPercentile(99.9) / 1000.0,
+				calls.getMax() / 1000.0, changes.getCount());
+		if (changeRate > 0)
+			System.out.printf("%-12s %12s %9.1f %9.1f %9.1f %9.1f%n", "  operator", "", changes.getPercentile(50)
+					/ 1000.0, changes.getPercentile(99) / 1000.0, changes.getPercentile(99.9) / 1000.0,
+					changes.getMax() / 1000.0);
+	}
+
+	/**
+	 * Change the filters like an operator
+	 *
+	 * @param kind
+	 *            0: status, 1: priority, 2: cache clear, 3: reload
+	 */
+	private static void change(FilterService filterService, int kind, Random random) {
+		List<Filter<?>> filters = filterService.getAllFilters();
+		Filter<?> filter = filters.get(random.nextInt(filters.size()));
+		switch (kind) {
+		case 0:
+			filterService.setFilterActiveStatus(filter, !filter.isActive());
+			break;
+		case 1:
+			filterService.setFilterPriority(filter, random.nextInt(10));
+			break;
+		case 2:
+			filterService.clearCache();
+			break;
+		default:
+			try {
+				filterService.initFilters();
+			} catch (IOException e) {
+				throw new IllegalStateException("Can't reload filters: " + e.getMessage(), e);
+			}
+			break;
+		}
+	}
+}
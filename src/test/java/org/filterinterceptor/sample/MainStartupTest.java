@@ -0,0 +1,110 @@
+package org.filterinterceptor.sample;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.filterinterceptor.FilterService;
+
+/**
+ * Startup benchmark of the filters load of a big JAR folder
+ * <p>
+ * The sample JARs are copied many times in a temporary folder, then the first
+ * {@link FilterService#initFilters()} is timed with 1, 2, 4... threads up to
+ * the number of processors (see
+ * {@link FilterService#setLoadingParallelism(int)}). The loaded filters must
+ * be the same with any number of threads.
+ * <p>
+ * Arguments: [number of JAR files (default 400)] [number of runs by
+ * parallelism (default 5)]
+ */
+public final class MainStartupTest {
+
+	public static void main(String[] args) throws Exception {
+		int nbJars = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+		int nbRuns = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int nbProcessors = Runtime.getRuntime().availableProcessors();
+
+		File folder = createFolder(nbJars);
+		try {
+			System.out.printf("%d JAR files, %d processors, median of %d runs%n", nbJars, nbProcessors, nbRuns);
+
+			// warm up
+			load(folder, 1);
+			load(folder, nbProcessors);
+
+			String expected = null;
+			double sequential = 0;
+			for (int parallelism = 1;; parallelism = Math.min(parallelism * 2, nbProcessors)) {
+				long[] times = new long[nbRuns];
+				for (int run = 0; run < nbRuns; run++) {
+					long start = System.nanoTime();
+					String filters = load(folder, parallelism);
+					times[run] = System.nanoTime() - start;
+					if (expected == null)
+						expected = filters;
+					else if (!expected.equals(filters))
+						throw new IllegalStateException("Filters loaded with " + parallelism + " threads differ: "
+								+ filters);
+				}
+				Arrays.sort(times);
+				double median = times[nbRuns / 2] / 1000000.0;
+				if (parallelism == 1)
+					sequential = median;
+				System.out.printf("%3d threads: %8.1f ms (x%.2f)%n", parallelism, median, sequential / median);
+				if (parallelism == nbProcessors)
+					break;
+			}
+		} finally {
+			for (File jar : folder.listFiles())
+				jar.delete();
+			folder.delete();
+		}
+	}
+
+	/**
+	 * Load the filters of a folder with a new service
+	 *
+	 * @return the filters loaded
+	 */
+	private static String load(File folder, int parallelism) throws IOException {
+		FilterService filterService = new FilterService(folder.getPath());
+		filterService.setLoadingParallelism(parallelism);
+		filterService.initFilters();
+		return filterService.getAllFilters().toString();
+	}
+
+	/**
+	 * Create a folder with copies of the sample JARs
+	 */
+	private static File createFolder(int nbJars) throws IOException {
+		File folder = File.createTempFile("filters", "");
+		if (!folder.delete() || !folder.mkdir())
+			throw new IOException("Can't create folder " + folder);
+		String[] samples = { "sample.jar", "sample2.jar" };
+		for (int i = 0; i < nbJars; i++)
+			copy(new File("./src/test/resources/others_filters", samples[i % samples.length]), new File(folder,
+					String.format("filters%05d.jar", i)));
+		return folder;
+	}
+
+	private static void copy(File from, File to) throws IOException {
+		InputStream in = new FileInputStream(from);
+		try {
+			OutputStream out = new FileOutputStream(to);
+			try {
+				byte[] buffer = new byte[8192];
+				for (int read; (read = in.read(buffer)) >= 0;)
+					out.write(buffer, 0, read);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
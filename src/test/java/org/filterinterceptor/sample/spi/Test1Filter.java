@@ -7,7 +7,9 @@ import org.filterinterceptor.sample.service.IService;
 import org.filterinterceptor.sample.service.ServiceImpl;
 import org.filterinterceptor.spi.Filter;
 import org.filterinterceptor.spi.FilteredMethod;
+import org.filterinterceptor.spi.IndexedFilter;
 
+@IndexedFilter(description = "Service ServiceImpl Test 1", priority = 1)
 public class Test1Filter extends Filter<IService> {
 
 	public Test1Filter() {
@@ -0,0 +1,60 @@
+package org.filterinterceptor.spi;
+
+import java.util.Collections;
+
+import org.filterinterceptor.index.FilterIndex;
+import org.filterinterceptor.sample.service.DtoSample1;
+import org.filterinterceptor.sample.service.IService;
+import org.filterinterceptor.sample.service.ServiceImpl;
+import org.filterinterceptor.sample.spi.Test1Filter;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LazyFilterTest {
+
+	private static FilterIndex.Entry entry(String filterClassName) {
+		return new FilterIndex.Entry(filterClassName, "Service ServiceImpl Test 1", 1, ServiceImpl.class.getName(),
+				Test1Filter.class.getName() + "$ServiveFilter", Collections.singletonList("test1("
+						+ DtoSample1.class.getName() + ")"));
+	}
+
+	@Test
+	public void getFilterServiceImpl_instantiateOnFirstUse() {
+
+		// test
+		LazyFilter<IService> filter = new LazyFilter<IService>(entry(Test1Filter.class.getName()),
+				getClass().getClassLoader());
+
+		// check
+		assertEquals("Service ServiceImpl Test 1", filter.getDescription());
+		assertEquals(1, filter.getPriority());
+		assertSame(ServiceImpl.class, filter.getService());
+		assertFalse("Filter must not be instantiated before use", filter.isInstantiated());
+
+		IService service = new ServiceImpl();
+		IService filtered = filter.getFilterServiceImpl(service);
+		assertTrue("Filter must be instantiated on use", filter.isInstantiated());
+		DtoSample1 in = new DtoSample1(1, 1.0, "a", null);
+		filtered.test1(in);
+		assertEquals("Filter implementation must be called", 1000000, in.getA());
+	}
+
+	@Test
+	public void equals_filterRepresented() {
+
+		// test
+		Filter<?> filter = new LazyFilter<IService>(entry(Test1Filter.class.getName()), getClass().getClassLoader());
+
+		// check
+		assertEquals("Lazy filter must be equal to its filter", new Test1Filter(), filter);
+		assertEquals("Filter must be equal to its lazy filter", filter, new Test1Filter());
+		assertEquals(new Test1Filter().hashCode(), filter.hashCode());
+		assertFalse(filter.equals(new LazyFilter<IService>(entry("other.Filter"), getClass().getClassLoader())));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void getFilterServiceImpl_unknownClass() {
+		new LazyFilter<IService>(entry("unknown.Filter"), getClass().getClassLoader()).getFilterServiceImpl(null);
+	}
+}